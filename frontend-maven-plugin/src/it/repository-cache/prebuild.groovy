@@ -0,0 +1,19 @@
+// A file: mirror with a node archive for this platform, so the download does not depend on nodejs.org.
+// Without a SHASUMS256.txt the download is not verified, which is not what this test is about.
+String osName = System.getProperty('os.name')
+String os = osName.contains('Mac') ? 'darwin' : osName.contains('SunOS') ? 'sunos' : 'linux'
+String arch = System.getProperty('os.arch')
+arch = arch == 'ppc64le' ? 'ppc64le' : arch == 'aarch64' ? 'arm64' : arch.contains('64') ? 'x64' : 'x86'
+String name = 'node-v6.10.0-' + os + '-' + arch
+
+File mirror = new File(basedir, 'target/mirror/v6.10.0')
+File bin = new File(mirror, name + '/bin')
+bin.mkdirs()
+File node = new File(bin, 'node')
+node.text = '#!/bin/sh\necho v6.10.0\n'
+node.setExecutable(true)
+new File(mirror, name + '/lib/node_modules/npm/bin').mkdirs()
+
+Process tar = new ProcessBuilder('tar', 'czf', name + '.tar.gz', name).directory(mirror).start()
+assert tar.waitFor() == 0 : 'Could not create the node archive'
+return true
@@ -0,0 +1,13 @@
+import org.codehaus.plexus.util.FileUtils;
+
+assert new File(basedir, 'target/node').exists() : "Node was not installed in the custom install directory";
+
+File deployed = new File(basedir, 'target/deploy-repo/com/github/eirslett/node/6.10.0');
+assert deployed.isDirectory() && deployed.list().any { it.startsWith('node-6.10.0-') && !it.endsWith('.sha1') && !it.endsWith('.md5') } : "The node archive was not deployed";
+
+String buildLog = FileUtils.fileRead(new File(basedir, 'build.log'));
+
+// What an API of the repository system that the Maven running the build does not have ends in
+assert !buildLog.contains('NoSuchMethodError') : 'a method of the repository system is missing'
+assert !buildLog.contains('NoClassDefFoundError') : 'a class of the repository system is missing'
+assert buildLog.contains('BUILD SUCCESS') : 'build was not successful'
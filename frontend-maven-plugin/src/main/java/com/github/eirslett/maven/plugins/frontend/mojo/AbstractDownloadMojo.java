@@ -0,0 +1,179 @@
+package com.github.eirslett.maven.plugins.frontend.mojo;
+
+import com.github.eirslett.maven.plugins.frontend.lib.CacheResolver;
+import com.github.eirslett.maven.plugins.frontend.lib.DownloadConfig;
+import com.github.eirslett.maven.plugins.frontend.lib.ProxyConfig;
+import com.github.eirslett.maven.plugins.frontend.lib.TieredCacheResolver;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.settings.Server;
+import org.apache.maven.settings.crypto.SettingsDecrypter;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parameters of the goals that download node, npm and yarn archives.
+ */
+public abstract class AbstractDownloadMojo extends AbstractFrontendMojo {
+
+    /**
+     * Number of byte ranges to download in parallel for each archive, if the server supports range
+     * requests. 1 downloads each archive with a single request.
+     */
+    @Parameter(property = "downloadSegments", required = false, defaultValue = "1")
+    private int downloadSegments;
+
+    /**
+     * Smallest segment size in bytes for segmented downloads. Archives smaller than two segments are
+     * downloaded with a single request.
+     */
+    @Parameter(property = "minSegmentSize", required = false, defaultValue = "4194304")
+    private long minSegmentSize;
+
+    /**
+     * Milliseconds to wait for a download mirror to respond before the request is also sent to the next
+     * mirror in the download root list. 0 only moves on to the next mirror when one fails.
+     */
+    @Parameter(property = "downloadHedgeDelay", required = false, defaultValue = "3000")
+    private long downloadHedgeDelay;
+
+    /**
+     * The node archive to download on Linux and Mac: TAR_GZ or TAR_XZ. Versions without a tar.xz archive fall
+     * back to tar.gz.
+     */
+    @Parameter(property = "nodeArchiveFormat", required = false, defaultValue = "TAR_GZ")
+    private DownloadConfig.ArchiveFormat nodeArchiveFormat;
+
+    /**
+     * The HTTP client to download with: HTTPCLIENT (Apache HttpClient with pooled connections) or JDK (the
+     * JDK's HttpURLConnection). Both use HTTP/1.1.
+     */
+    @Parameter(property = "downloadBackend", required = false, defaultValue = "HTTPCLIENT")
+    private DownloadConfig.HttpBackend downloadBackend;
+
+    /**
+     * How many archives are downloaded from the same host at the same time, across all modules of a parallel
+     * build. Node is downloaded before npm and yarn when downloads have to wait. 0 does not limit them.
+     */
+    @Parameter(property = "maxDownloadsPerHost", required = false, defaultValue = "2")
+    private int maxDownloadsPerHost;
+
+    /**
+     * Bytes per second that all downloads of the build may use together. 0 does not limit them.
+     */
+    @Parameter(property = "maxDownloadBandwidth", required = false, defaultValue = "0")
+    private long maxDownloadBandwidth;
+
+    /**
+     * Look for node, npm and yarn archives in the remote repositories of the build, as
+     * com.github.eirslett:node|npm|yarn artifacts, before downloading them from the download roots.
+     */
+    @Parameter(property = "frontend.resolveFromRepositories", required = false, defaultValue = "false")
+    private boolean resolveFromRepositories;
+
+    /**
+     * Repository to deploy the node, npm and yarn archives to after they were downloaded from the download roots,
+     * as id::url. The credentials are those of the server with that id in settings.xml.
+     */
+    @Parameter(property = "frontend.deployRepository", required = false)
+    private String deployRepository;
+
+    /**
+     * Read-only directories with node, npm and yarn archives to use before the local repository, like a shared
+     * mount on every build machine. They are laid out like a local repository or like the cache directory of an
+     * install directory. Several can be given as a comma separated list, in order of preference.
+     */
+    @Parameter(property = "frontend.sharedCaches", required = false)
+    private List<File> sharedCaches;
+
+    /**
+     * Server Id for download username and password
+     */
+    @Parameter(property = "serverId", defaultValue = "")
+    private String serverId;
+
+    @Parameter(property = "session", defaultValue = "${session}", readonly = true)
+    protected MavenSession session;
+
+    @Component(role = SettingsDecrypter.class)
+    private SettingsDecrypter decrypter;
+
+    @Component
+    private RepositorySystem repositorySystem;
+
+    @Parameter(defaultValue = "${project.remoteProjectRepositories}", readonly = true)
+    private List<RemoteRepository> remoteRepositories;
+
+    /**
+     * Whether archives may only come from the cache. Maven running offline (-o) is.
+     */
+    protected boolean isOffline() {
+        return this.session.isOffline();
+    }
+
+    /**
+     * Offline, nothing connects anywhere, so there is no need to look at the proxies.
+     */
+    protected ProxyConfig getProxyConfig() {
+        return isOffline() ? MojoUtils.noProxies() : MojoUtils.getProxyConfig(this.session, this.decrypter);
+    }
+
+    protected DownloadConfig getDownloadConfig() {
+        return new DownloadConfig()
+            .setSegments(this.downloadSegments)
+            .setMinSegmentSize(this.minSegmentSize)
+            .setHedgeDelay(this.downloadHedgeDelay)
+            .setArchiveFormat(this.nodeArchiveFormat)
+            .setHttpBackend(this.downloadBackend)
+            .setMaxDownloadsPerHost(this.maxDownloadsPerHost)
+            .setMaxBandwidth(this.maxDownloadBandwidth)
+            .setOffline(isOffline());
+    }
+
+    /**
+     * Looks in the shared caches first. Resolves archives that are not in the local repository from the remote
+     * repositories, if enabled, and deploys the downloaded ones.
+     */
+    @Override
+    protected CacheResolver getCacheResolver() throws MojoFailureException {
+        List<RemoteRepository> repositories = this.resolveFromRepositories && this.remoteRepositories != null
+            ? this.remoteRepositories : Collections.<RemoteRepository>emptyList();
+        CacheResolver cacheResolver = new RepositoryCacheResolver(this.session.getRepositorySession(),
+            this.repositorySystem, repositories, getDeployRepository());
+        if (this.sharedCaches != null && !this.sharedCaches.isEmpty()) {
+            return new TieredCacheResolver(this.sharedCaches, cacheResolver);
+        }
+        return cacheResolver;
+    }
+
+    private RemoteRepository getDeployRepository() throws MojoFailureException {
+        if (this.deployRepository == null || this.deployRepository.trim().isEmpty()) {
+            return null;
+        }
+        String[] idAndUrl = this.deployRepository.trim().split("::");
+        if (idAndUrl.length != 2) {
+            throw new MojoFailureException("Invalid deployRepository '" + this.deployRepository
+                + "', expected id::url");
+        }
+        RepositorySystemSession repositorySession = this.session.getRepositorySession();
+        RemoteRepository repository = new RemoteRepository.Builder(idAndUrl[0], "default", idAndUrl[1]).build();
+        return new RemoteRepository.Builder(repository)
+            .setAuthentication(repositorySession.getAuthenticationSelector().getAuthentication(repository))
+            .setProxy(repositorySession.getProxySelector().getProxy(repository))
+            .build();
+    }
+
+    /**
+     * @return the server with the credentials for the downloads, or null if there is none
+     */
+    protected Server getServer() {
+        return MojoUtils.decryptServer(this.serverId, this.session, this.decrypter);
+    }
+}
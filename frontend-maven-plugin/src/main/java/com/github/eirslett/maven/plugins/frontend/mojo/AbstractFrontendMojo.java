@@ -1,8 +1,12 @@
 package com.github.eirslett.maven.plugins.frontend.mojo;
 
+import com.github.eirslett.maven.plugins.frontend.lib.CacheResolver;
+import com.github.eirslett.maven.plugins.frontend.lib.DownloadSession;
 import com.github.eirslett.maven.plugins.frontend.lib.FrontendException;
 import com.github.eirslett.maven.plugins.frontend.lib.FrontendPluginFactory;
 import com.github.eirslett.maven.plugins.frontend.lib.TaskRunnerException;
+import com.github.eirslett.maven.plugins.frontend.lib.TieredCacheResolver;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoFailureException;
@@ -57,6 +61,12 @@ public abstract class AbstractFrontendMojo extends AbstractMojo {
   )
   private RepositorySystemSession repositorySystemSession;
 
+  @Parameter(
+      defaultValue = "${session}",
+      readonly = true
+  )
+  private MavenSession mavenSession;
+
   /**
    * Determines if this execution should be skipped.
    */
@@ -72,6 +82,22 @@ public abstract class AbstractFrontendMojo extends AbstractMojo {
     return phase!=null && (phase.equals("test") || phase.equals("integration-test"));
   }
 
+  /**
+   * The machine-wide store of unpacked toolchains, next to the cached archives in the local repository.
+   */
+  protected File getToolchainStore() {
+    return new File(repositorySystemSession.getLocalRepository().getBasedir(),
+        "com/github/eirslett/frontend-toolchains");
+  }
+
+  /**
+   * Where the node, npm and yarn archives are cached. Only the goals that download them look for them in
+   * shared caches and remote repositories.
+   */
+  protected CacheResolver getCacheResolver() throws MojoFailureException {
+    return new RepositoryCacheResolver(repositorySystemSession);
+  }
+
   protected abstract void execute(FrontendPluginFactory factory) throws FrontendException;
 
   /**
@@ -85,16 +111,23 @@ public abstract class AbstractFrontendMojo extends AbstractMojo {
       if (installDirectory == null) {
         installDirectory = workingDirectory;
       }
+      CacheResolver cacheResolver = getCacheResolver();
+      DownloadSession downloadSession = DownloadSessions.get(mavenSession);
+      // Without a session for the whole build, the factory has one of its own that it closes
+      FrontendPluginFactory factory = downloadSession != null
+          ? new FrontendPluginFactory(workingDirectory, installDirectory, cacheResolver, downloadSession)
+          : new FrontendPluginFactory(workingDirectory, installDirectory, cacheResolver);
       try {
-        execute(new FrontendPluginFactory(
-            workingDirectory,
-            installDirectory,
-            new RepositoryCacheResolver(repositorySystemSession)
-        ));
+        execute(factory);
       } catch (TaskRunnerException e) {
         throw new MojoFailureException("Failed to run task", e);
       } catch (FrontendException e) {
         throw MojoUtils.toMojoFailureException(e);
+      } finally {
+        factory.close();
+        if (cacheResolver instanceof TieredCacheResolver) {
+          ((TieredCacheResolver) cacheResolver).logSummary();
+        }
       }
     } else {
       LoggerFactory.getLogger(AbstractFrontendMojo.class).info("Skipping test phase.");
@@ -0,0 +1,89 @@
+package com.github.eirslett.maven.plugins.frontend.mojo;
+
+import com.github.eirslett.maven.plugins.frontend.lib.DownloadConfig;
+import com.github.eirslett.maven.plugins.frontend.lib.FrontendPluginFactory;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+
+/**
+ * The parameters of the goals that install node, npm and yarn: how the archives are unpacked, and where.
+ */
+public abstract class AbstractInstallMojo extends AbstractDownloadMojo {
+
+    /**
+     * Unpack tar.gz archives while they are being downloaded, instead of after the download.
+     */
+    @Parameter(property = "streamingExtraction", required = false, defaultValue = "false")
+    private boolean streamingExtraction;
+
+    /**
+     * Number of threads that write the unpacked files of an archive. 1 unpacks with a single thread.
+     */
+    @Parameter(property = "extractionThreads", required = false, defaultValue = "1")
+    private int extractionThreads;
+
+    /**
+     * What unpacks the archives: JAVA (commons-compress), JDK_GZIP (the JDK's native zlib), SYSTEM (the tar and
+     * unzip commands) or AUTO (the fastest of these, measured once per build). Archives that fail are unpacked
+     * with JAVA.
+     */
+    @Parameter(property = "extractorBackend", required = false, defaultValue = "JAVA")
+    private DownloadConfig.ExtractorBackend extractorBackend;
+
+    /**
+     * Unpack node, npm and yarn once per machine, into a store in the local repository, and hard link them into
+     * the install directory instead of unpacking a copy for every module.
+     */
+    @Parameter(property = "frontend.sharedToolchains", required = false, defaultValue = "false")
+    private boolean sharedToolchains;
+
+    /**
+     * Days after their last use that toolchains are deleted from the shared store. 0 keeps them.
+     */
+    @Parameter(property = "frontend.sharedToolchainRetentionDays", required = false, defaultValue = "30")
+    private int sharedToolchainRetentionDays;
+
+    /**
+     * Bytes that the cached node, npm and yarn archives may take. At the start of the install, the archives
+     * that were used least recently are deleted until the cache fits. 0 does not limit them.
+     */
+    @Parameter(property = "frontend.cacheSizeLimit", required = false, defaultValue = "0")
+    private long cacheSizeLimit;
+
+    /**
+     * Directory to unpack into before the install is moved into the install directory in one step, like a RAM
+     * disk such as /dev/shm. By default installs are unpacked next to the install directory.
+     */
+    @Parameter(property = "frontend.stagingDirectory", required = false)
+    private File stagingDirectory;
+
+    /**
+     * Only install from the local cache, never download. Also enabled by running Maven offline (-o).
+     */
+    @Parameter(property = "frontend.offline", required = false, defaultValue = "false")
+    private boolean offline;
+
+    @Override
+    protected boolean isOffline() {
+        return this.offline || super.isOffline();
+    }
+
+    @Override
+    protected DownloadConfig getDownloadConfig() {
+        return super.getDownloadConfig()
+            .setStreamingExtraction(this.streamingExtraction)
+            .setExtractionThreads(this.extractionThreads)
+            .setExtractorBackend(this.extractorBackend)
+            .setToolchainStore(this.sharedToolchains ? getToolchainStore() : null)
+            .setToolchainRetentionDays(this.sharedToolchainRetentionDays)
+            .setStagingDirectory(this.stagingDirectory);
+    }
+
+    /**
+     * Keeps the archive cache within its size limit, before the install adds to it.
+     */
+    protected void evictCache(FrontendPluginFactory factory) {
+        factory.evictCache(this.cacheSizeLimit);
+    }
+}
@@ -0,0 +1,200 @@
+package com.github.eirslett.maven.plugins.frontend.mojo;
+
+import com.github.eirslett.maven.plugins.frontend.lib.DownloadSession;
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Hands out one {@link DownloadSession} per Maven build, so every module of a reactor shares the same
+ * pooled HTTP connections. The session is closed when Maven reports the end of the build.
+ */
+final class DownloadSessions {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DownloadSessions.class);
+
+    // Keyed by the execution request, which (unlike the MavenSession) is not cloned for parallel builds.
+    private static final Map<MavenExecutionRequest, DownloadSession> SESSIONS =
+        new IdentityHashMap<MavenExecutionRequest, DownloadSession>();
+
+    private DownloadSessions() {
+    }
+
+    /**
+     * @return null without a Maven session, whose end could close the download session
+     */
+    static DownloadSession get(MavenSession mavenSession) {
+        if (mavenSession == null || mavenSession.getRequest() == null) {
+            return null;
+        }
+        final MavenExecutionRequest request = mavenSession.getRequest();
+        synchronized (SESSIONS) {
+            DownloadSession downloadSession = SESSIONS.get(request);
+            if (downloadSession == null) {
+                downloadSession = new DownloadSession();
+                SESSIONS.put(request, downloadSession);
+                // Maven looks the listener up from the request for every event, so wrapping it is enough to
+                // be told when the build is over.
+                request.setExecutionListener(new SessionEndListener(request.getExecutionListener(), request));
+            }
+            return downloadSession;
+        }
+    }
+
+    private static void close(MavenExecutionRequest request) {
+        final DownloadSession downloadSession;
+        synchronized (SESSIONS) {
+            downloadSession = SESSIONS.remove(request);
+        }
+        if (downloadSession != null) {
+            try {
+                downloadSession.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close the download session", e);
+            }
+        }
+    }
+
+    private static final class SessionEndListener extends AbstractExecutionListener {
+
+        private final ExecutionListener delegate;
+
+        private final MavenExecutionRequest request;
+
+        SessionEndListener(ExecutionListener delegate, MavenExecutionRequest request) {
+            this.delegate = delegate;
+            this.request = request;
+        }
+
+        @Override
+        public void sessionEnded(ExecutionEvent event) {
+            try {
+                if (delegate != null) {
+                    delegate.sessionEnded(event);
+                }
+            } finally {
+                close(request);
+            }
+        }
+
+        @Override
+        public void projectDiscoveryStarted(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectDiscoveryStarted(event);
+            }
+        }
+
+        @Override
+        public void sessionStarted(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.sessionStarted(event);
+            }
+        }
+
+        @Override
+        public void projectSkipped(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectSkipped(event);
+            }
+        }
+
+        @Override
+        public void projectStarted(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectStarted(event);
+            }
+        }
+
+        @Override
+        public void projectSucceeded(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectSucceeded(event);
+            }
+        }
+
+        @Override
+        public void projectFailed(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectFailed(event);
+            }
+        }
+
+        @Override
+        public void forkStarted(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkStarted(event);
+            }
+        }
+
+        @Override
+        public void forkSucceeded(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkSucceeded(event);
+            }
+        }
+
+        @Override
+        public void forkFailed(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkFailed(event);
+            }
+        }
+
+        @Override
+        public void mojoSkipped(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.mojoSkipped(event);
+            }
+        }
+
+        @Override
+        public void mojoStarted(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.mojoStarted(event);
+            }
+        }
+
+        @Override
+        public void mojoSucceeded(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.mojoSucceeded(event);
+            }
+        }
+
+        @Override
+        public void mojoFailed(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.mojoFailed(event);
+            }
+        }
+
+        @Override
+        public void forkedProjectStarted(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkedProjectStarted(event);
+            }
+        }
+
+        @Override
+        public void forkedProjectSucceeded(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkedProjectSucceeded(event);
+            }
+        }
+
+        @Override
+        public void forkedProjectFailed(ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkedProjectFailed(event);
+            }
+        }
+    }
+}
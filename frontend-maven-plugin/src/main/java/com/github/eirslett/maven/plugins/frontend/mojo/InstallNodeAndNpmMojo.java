@@ -1,29 +1,31 @@
 package com.github.eirslett.maven.plugins.frontend.mojo;
 
+import com.github.eirslett.maven.plugins.frontend.lib.DownloadConfig;
 import com.github.eirslett.maven.plugins.frontend.lib.FrontendPluginFactory;
+import com.github.eirslett.maven.plugins.frontend.lib.InstallPipeline;
 import com.github.eirslett.maven.plugins.frontend.lib.InstallationException;
 import com.github.eirslett.maven.plugins.frontend.lib.NPMInstaller;
 import com.github.eirslett.maven.plugins.frontend.lib.NodeInstaller;
 import com.github.eirslett.maven.plugins.frontend.lib.ProxyConfig;
-import org.apache.maven.execution.MavenSession;
-import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.settings.crypto.SettingsDecrypter;
 import org.apache.maven.settings.Server;
 
+
 @Mojo(name="install-node-and-npm", defaultPhase = LifecyclePhase.GENERATE_RESOURCES, threadSafe = true)
-public final class InstallNodeAndNpmMojo extends AbstractFrontendMojo {
+public final class InstallNodeAndNpmMojo extends AbstractInstallMojo {
 
     /**
      * Where to download Node.js binary from. Defaults to http://nodejs.org/dist/
+     * Several mirrors can be given as a comma separated list, in order of preference.
      */
     @Parameter(property = "nodeDownloadRoot", required = false, defaultValue = NodeInstaller.DEFAULT_NODEJS_DOWNLOAD_ROOT)
     private String nodeDownloadRoot;
 
     /**
      * Where to download NPM binary from. Defaults to http://registry.npmjs.org/npm/-/
+     * Several mirrors can be given as a comma separated list, in order of preference.
      */
     @Parameter(property = "npmDownloadRoot", required = false, defaultValue = NPMInstaller.DEFAULT_NPM_DOWNLOAD_ROOT)
     private String npmDownloadRoot;
@@ -49,24 +51,12 @@ public final class InstallNodeAndNpmMojo extends AbstractFrontendMojo {
     @Parameter(property = "npmVersion", required = false, defaultValue = "provided")
     private String npmVersion;
 
-    /**
-     * Server Id for download username and password
-     */
-    @Parameter(property = "serverId", defaultValue = "")
-    private String serverId;
-
-    @Parameter(property = "session", defaultValue = "${session}", readonly = true)
-    private MavenSession session;
-
     /**
      * Skips execution of this mojo.
      */
     @Parameter(property = "skip.installnodenpm", defaultValue = "false")
     private Boolean skip;
 
-    @Component(role = SettingsDecrypter.class)
-    private SettingsDecrypter decrypter;
-
     @Override
     protected boolean skipExecution() {
         return this.skip;
@@ -74,36 +64,37 @@ public final class InstallNodeAndNpmMojo extends AbstractFrontendMojo {
 
     @Override
     public void execute(FrontendPluginFactory factory) throws InstallationException {
-        ProxyConfig proxyConfig = MojoUtils.getProxyConfig(session, decrypter);
+        ProxyConfig proxyConfig = getProxyConfig();
+        DownloadConfig downloadConfig = getDownloadConfig();
+        evictCache(factory);
         String nodeDownloadRoot = getNodeDownloadRoot();
         String npmDownloadRoot = getNpmDownloadRoot();
-        Server server = MojoUtils.decryptServer(serverId, session, decrypter);
+        Server server = getServer();
+        // npm does not need node to be installed, so both are installed at the same time
         if (null != server) {
-            factory.getNodeInstaller(proxyConfig)
-                .setNodeVersion(nodeVersion)
-                .setNodeDownloadRoot(nodeDownloadRoot)
-                .setNpmVersion(npmVersion)
-                .setUserName(server.getUsername())
-                .setPassword(server.getPassword())
-                .install();
-            factory.getNPMInstaller(proxyConfig)
-                .setNodeVersion(nodeVersion)
-                .setNpmVersion(npmVersion)
-                .setNpmDownloadRoot(npmDownloadRoot)
-                .setUserName(server.getUsername())
-                .setPassword(server.getPassword())
-                .install();
+            InstallPipeline.install(
+                factory.getNodeInstaller(proxyConfig, downloadConfig)
+                    .setNodeVersion(nodeVersion)
+                    .setNodeDownloadRoot(nodeDownloadRoot)
+                    .setNpmVersion(npmVersion)
+                    .setUserName(server.getUsername())
+                    .setPassword(server.getPassword()),
+                factory.getNPMInstaller(proxyConfig, downloadConfig)
+                    .setNodeVersion(nodeVersion)
+                    .setNpmVersion(npmVersion)
+                    .setNpmDownloadRoot(npmDownloadRoot)
+                    .setUserName(server.getUsername())
+                    .setPassword(server.getPassword()));
         } else {
-            factory.getNodeInstaller(proxyConfig)
-                .setNodeVersion(nodeVersion)
-                .setNodeDownloadRoot(nodeDownloadRoot)
-                .setNpmVersion(npmVersion)
-                .install();
-            factory.getNPMInstaller(proxyConfig)
-                .setNodeVersion(this.nodeVersion)
-                .setNpmVersion(this.npmVersion)
-                .setNpmDownloadRoot(npmDownloadRoot)
-                .install();
+            InstallPipeline.install(
+                factory.getNodeInstaller(proxyConfig, downloadConfig)
+                    .setNodeVersion(nodeVersion)
+                    .setNodeDownloadRoot(nodeDownloadRoot)
+                    .setNpmVersion(npmVersion),
+                factory.getNPMInstaller(proxyConfig, downloadConfig)
+                    .setNodeVersion(this.nodeVersion)
+                    .setNpmVersion(this.npmVersion)
+                    .setNpmDownloadRoot(npmDownloadRoot));
         }
     }
 
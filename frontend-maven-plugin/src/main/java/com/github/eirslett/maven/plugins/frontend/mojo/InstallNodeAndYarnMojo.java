@@ -1,24 +1,25 @@
 package com.github.eirslett.maven.plugins.frontend.mojo;
 
-import org.apache.maven.execution.MavenSession;
-import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.settings.Server;
-import org.apache.maven.settings.crypto.SettingsDecrypter;
 
+import com.github.eirslett.maven.plugins.frontend.lib.DownloadConfig;
 import com.github.eirslett.maven.plugins.frontend.lib.FrontendPluginFactory;
+import com.github.eirslett.maven.plugins.frontend.lib.InstallPipeline;
 import com.github.eirslett.maven.plugins.frontend.lib.InstallationException;
 import com.github.eirslett.maven.plugins.frontend.lib.NodeInstaller;
 import com.github.eirslett.maven.plugins.frontend.lib.ProxyConfig;
 import com.github.eirslett.maven.plugins.frontend.lib.YarnInstaller;
 
+
 @Mojo(name = "install-node-and-yarn", defaultPhase = LifecyclePhase.GENERATE_RESOURCES, threadSafe = true)
-public final class InstallNodeAndYarnMojo extends AbstractFrontendMojo {
+public final class InstallNodeAndYarnMojo extends AbstractInstallMojo {
 
     /**
      * Where to download Node.js binary from. Defaults to http://nodejs.org/dist/
+     * Several mirrors can be given as a comma separated list, in order of preference.
      */
     @Parameter(property = "nodeDownloadRoot", required = false,
         defaultValue = NodeInstaller.DEFAULT_NODEJS_DOWNLOAD_ROOT)
@@ -26,6 +27,7 @@ public final class InstallNodeAndYarnMojo extends AbstractFrontendMojo {
 
     /**
      * Where to download Yarn binary from. Defaults to https://github.com/yarnpkg/yarn/releases/download/...
+     * Several mirrors can be given as a comma separated list, in order of preference.
      */
     @Parameter(property = "yarnDownloadRoot", required = false,
         defaultValue = YarnInstaller.DEFAULT_YARN_DOWNLOAD_ROOT)
@@ -44,24 +46,12 @@ public final class InstallNodeAndYarnMojo extends AbstractFrontendMojo {
     @Parameter(property = "yarnVersion", required = true)
     private String yarnVersion;
 
-    /**
-     * Server Id for download username and password
-     */
-    @Parameter(property = "serverId", defaultValue = "")
-    private String serverId;
-
-    @Parameter(property = "session", defaultValue = "${session}", readonly = true)
-    private MavenSession session;
-
     /**
      * Skips execution of this mojo.
      */
     @Parameter(property = "skip.installyarn", alias = "skip.installyarn", defaultValue = "false")
     private Boolean skip;
 
-    @Component(role = SettingsDecrypter.class)
-    private SettingsDecrypter decrypter;
-
     @Override
     protected boolean skipExecution() {
         return this.skip;
@@ -69,20 +59,25 @@ public final class InstallNodeAndYarnMojo extends AbstractFrontendMojo {
 
     @Override
     public void execute(FrontendPluginFactory factory) throws InstallationException {
-        ProxyConfig proxyConfig = MojoUtils.getProxyConfig(this.session, this.decrypter);
-        Server server = MojoUtils.decryptServer(this.serverId, this.session, this.decrypter);
+        ProxyConfig proxyConfig = getProxyConfig();
+        DownloadConfig downloadConfig = getDownloadConfig();
+        evictCache(factory);
+        Server server = getServer();
+        // Yarn is downloaded and unpacked while node is installed
         if (null != server) {
-            factory.getNodeInstaller(proxyConfig).setNodeDownloadRoot(this.nodeDownloadRoot)
-                .setNodeVersion(this.nodeVersion).setPassword(server.getPassword())
-                .setUserName(server.getUsername()).install();
-            factory.getYarnInstaller(proxyConfig).setYarnDownloadRoot(this.yarnDownloadRoot)
-                .setYarnVersion(this.yarnVersion).setUserName(server.getUsername())
-                .setPassword(server.getPassword()).install();
+            InstallPipeline.install(
+                factory.getNodeInstaller(proxyConfig, downloadConfig).setNodeDownloadRoot(this.nodeDownloadRoot)
+                    .setNodeVersion(this.nodeVersion).setPassword(server.getPassword())
+                    .setUserName(server.getUsername()),
+                factory.getYarnInstaller(proxyConfig, downloadConfig).setYarnDownloadRoot(this.yarnDownloadRoot)
+                    .setYarnVersion(this.yarnVersion).setUserName(server.getUsername())
+                    .setPassword(server.getPassword()));
         } else {
-            factory.getNodeInstaller(proxyConfig).setNodeDownloadRoot(this.nodeDownloadRoot)
-                .setNodeVersion(this.nodeVersion).install();
-            factory.getYarnInstaller(proxyConfig).setYarnDownloadRoot(this.yarnDownloadRoot)
-                .setYarnVersion(this.yarnVersion).install();
+            InstallPipeline.install(
+                factory.getNodeInstaller(proxyConfig, downloadConfig).setNodeDownloadRoot(this.nodeDownloadRoot)
+                    .setNodeVersion(this.nodeVersion),
+                factory.getYarnInstaller(proxyConfig, downloadConfig).setYarnDownloadRoot(this.yarnDownloadRoot)
+                    .setYarnVersion(this.yarnVersion));
         }
     }
 
@@ -33,7 +33,7 @@ class MojoUtils {
                 mavenSession.getSettings() == null ||
                 mavenSession.getSettings().getProxies() == null ||
                 mavenSession.getSettings().getProxies().isEmpty()) {
-            return new ProxyConfig(Collections.<ProxyConfig.Proxy>emptyList());
+            return noProxies();
         } else {
             final List<Proxy> mavenProxies = mavenSession.getSettings().getProxies();
 
@@ -52,6 +52,10 @@ class MojoUtils {
         }
     }
 
+    static ProxyConfig noProxies() {
+        return new ProxyConfig(Collections.<ProxyConfig.Proxy>emptyList());
+    }
+
     private static Proxy decryptProxy(Proxy proxy, SettingsDecrypter decrypter) {
         final DefaultSettingsDecryptionRequest decryptionRequest = new DefaultSettingsDecryptionRequest(proxy);
         SettingsDecryptionResult decryptedResult = decrypter.decrypt(decryptionRequest);
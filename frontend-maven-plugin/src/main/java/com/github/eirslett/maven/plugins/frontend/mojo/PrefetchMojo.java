@@ -0,0 +1,100 @@
+package com.github.eirslett.maven.plugins.frontend.mojo;
+
+import com.github.eirslett.maven.plugins.frontend.lib.FrontendPluginFactory;
+import com.github.eirslett.maven.plugins.frontend.lib.InstallationException;
+import com.github.eirslett.maven.plugins.frontend.lib.NPMInstaller;
+import com.github.eirslett.maven.plugins.frontend.lib.NodeInstaller;
+import com.github.eirslett.maven.plugins.frontend.lib.Prefetcher;
+import com.github.eirslett.maven.plugins.frontend.lib.YarnInstaller;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.settings.Server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Downloads node, npm and yarn archives into the local repository without installing them, for several versions
+ * and platforms at once, so that builds without a connection can install from it.
+ */
+@Mojo(name = "prefetch", requiresProject = false, threadSafe = true)
+public final class PrefetchMojo extends AbstractDownloadMojo {
+
+    /**
+     * The Node.js versions to download, like v6.9.1. Several can be given as a comma separated list.
+     */
+    @Parameter(property = "nodeVersions", required = false)
+    private List<String> nodeVersions = new ArrayList<String>();
+
+    /**
+     * The npm versions to download.
+     */
+    @Parameter(property = "npmVersions", required = false)
+    private List<String> npmVersions = new ArrayList<String>();
+
+    /**
+     * The Yarn versions to download, like v0.24.5.
+     */
+    @Parameter(property = "yarnVersions", required = false)
+    private List<String> yarnVersions = new ArrayList<String>();
+
+    /**
+     * The platforms to download Node.js for, like linux-x64, linux-arm64, darwin-x64 or win-x64. Defaults to the
+     * platform Maven runs on.
+     */
+    @Parameter(property = "platforms", required = false)
+    private List<String> platforms = new ArrayList<String>();
+
+    /**
+     * Where to download Node.js binary from. Defaults to http://nodejs.org/dist/
+     * Several mirrors can be given as a comma separated list, in order of preference.
+     */
+    @Parameter(property = "nodeDownloadRoot", required = false,
+        defaultValue = NodeInstaller.DEFAULT_NODEJS_DOWNLOAD_ROOT)
+    private String nodeDownloadRoot;
+
+    /**
+     * Where to download NPM binary from. Defaults to http://registry.npmjs.org/npm/-/
+     * Several mirrors can be given as a comma separated list, in order of preference.
+     */
+    @Parameter(property = "npmDownloadRoot", required = false,
+        defaultValue = NPMInstaller.DEFAULT_NPM_DOWNLOAD_ROOT)
+    private String npmDownloadRoot;
+
+    /**
+     * Where to download Yarn binary from. Defaults to https://github.com/yarnpkg/yarn/releases/download/...
+     * Several mirrors can be given as a comma separated list, in order of preference.
+     */
+    @Parameter(property = "yarnDownloadRoot", required = false,
+        defaultValue = YarnInstaller.DEFAULT_YARN_DOWNLOAD_ROOT)
+    private String yarnDownloadRoot;
+
+    /**
+     * Skips execution of this mojo.
+     */
+    @Parameter(property = "skip.prefetch", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    protected boolean skipExecution() {
+        return this.skip;
+    }
+
+    @Override
+    public void execute(FrontendPluginFactory factory) throws InstallationException {
+        // Offline, the archives that are missing from the cache are reported
+        Prefetcher prefetcher = factory.getPrefetcher(getProxyConfig(), getDownloadConfig())
+            .setNodeVersions(this.nodeVersions)
+            .setNpmVersions(this.npmVersions)
+            .setYarnVersions(this.yarnVersions)
+            .setPlatforms(this.platforms)
+            .setNodeDownloadRoot(this.nodeDownloadRoot)
+            .setNpmDownloadRoot(this.npmDownloadRoot)
+            .setYarnDownloadRoot(this.yarnDownloadRoot);
+        Server server = getServer();
+        if (null != server) {
+            prefetcher.setUserName(server.getUsername()).setPassword(server.getPassword());
+        }
+        prefetcher.prefetch();
+    }
+}
@@ -1,32 +1,142 @@
 package com.github.eirslett.maven.plugins.frontend.mojo;
 
 import com.github.eirslett.maven.plugins.frontend.lib.CacheDescriptor;
-import com.github.eirslett.maven.plugins.frontend.lib.CacheResolver;
+import com.github.eirslett.maven.plugins.frontend.lib.CacheEviction;
+import com.github.eirslett.maven.plugins.frontend.lib.CacheStamps;
+import com.github.eirslett.maven.plugins.frontend.lib.EvictingCacheResolver;
+import com.github.eirslett.maven.plugins.frontend.lib.PublishingCacheResolver;
+import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.deployment.DeployRequest;
+import org.eclipse.aether.deployment.DeploymentException;
+import org.eclipse.aether.repository.LocalArtifactRegistration;
 import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class RepositoryCacheResolver implements CacheResolver {
+/**
+ * Caches the archives in the local repository, as com.github.eirslett:node|npm|yarn artifacts.
+ *
+ * With a repository system, archives that are not in the local repository are resolved from the remote
+ * repositories first, like a Nexus that proxies or hosts them, with the mirrors, proxies and credentials of
+ * settings.xml. Archives that are not there either are downloaded from the download roots, straight to their
+ * place in the local repository, and then registered as installed there, and deployed to the deploy repository
+ * if there is one.
+ */
+public class RepositoryCacheResolver implements EvictingCacheResolver, PublishingCacheResolver {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RepositoryCacheResolver.class);
 
   private static final String GROUP_ID = "com.github.eirslett";
+  private static final String[] ARTIFACT_IDS = { "node", "npm", "yarn" };
   private final RepositorySystemSession repositorySystemSession;
+  private final RepositorySystem repositorySystem;
+  private final List<RemoteRepository> remoteRepositories;
+  private final RemoteRepository deployRepository;
+
+  // The archives that were not in any repository, by the file they are downloaded to
+  private final Map<File, Artifact> missing = new ConcurrentHashMap<File, Artifact>();
 
   public RepositoryCacheResolver(RepositorySystemSession repositorySystemSession) {
+    this(repositorySystemSession, null, Collections.<RemoteRepository>emptyList(), null);
+  }
+
+  /**
+   * @param remoteRepositories where to look for archives before they are downloaded; none to always download
+   * @param deployRepository   where to deploy downloaded archives to, or null to only install them
+   */
+  public RepositoryCacheResolver(RepositorySystemSession repositorySystemSession, RepositorySystem repositorySystem,
+      List<RemoteRepository> remoteRepositories, RemoteRepository deployRepository) {
     this.repositorySystemSession = repositorySystemSession;
+    this.repositorySystem = repositorySystem;
+    this.remoteRepositories = remoteRepositories;
+    this.deployRepository = deployRepository;
   }
 
   @Override
   public File resolve(CacheDescriptor cacheDescriptor) {
     LocalRepositoryManager manager = repositorySystemSession.getLocalRepositoryManager();
+    Artifact artifact = createArtifact(cacheDescriptor);
     File localArtifact = new File(
         manager.getRepository().getBasedir(),
-        manager.getPathForLocalArtifact(createArtifact(cacheDescriptor))
+        manager.getPathForLocalArtifact(artifact)
     );
+    if (!localArtifact.isFile() && repositorySystem != null
+        && !missing.containsKey(localArtifact.getAbsoluteFile())) {
+      File resolved = resolveRemotely(artifact);
+      if (resolved != null) {
+        localArtifact = resolved;
+      } else {
+        missing.put(localArtifact.getAbsoluteFile(), artifact);
+      }
+    }
+    CacheEviction.touch(localArtifact);
     return localArtifact;
   }
 
+  private File resolveRemotely(Artifact artifact) {
+    if (remoteRepositories.isEmpty()) {
+      return null;
+    }
+    try {
+      ArtifactResult result = repositorySystem.resolveArtifact(repositorySystemSession,
+          new ArtifactRequest(artifact, remoteRepositories, null));
+      LOGGER.info("Resolved {} from {}", artifact, result.getRepository());
+      File file = result.getArtifact().getFile();
+      // The installers download archives without a stamp again
+      CacheStamps.stampResolved(file);
+      return file;
+    } catch (ArtifactResolutionException e) {
+      LOGGER.debug("Could not resolve {} from the remote repositories: {}", artifact, e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public void downloaded(File archive) {
+    Artifact artifact = missing.remove(archive.getAbsoluteFile());
+    if (artifact == null) {
+      return;
+    }
+    artifact = artifact.setFile(archive);
+    // Installing would copy the archive onto itself, which newer repository systems refuse
+    repositorySystemSession.getLocalRepositoryManager().add(repositorySystemSession,
+        new LocalArtifactRegistration(artifact));
+    if (deployRepository != null) {
+      LOGGER.info("Deploying {} to {}", artifact, deployRepository.getUrl());
+      try {
+        repositorySystem.deploy(repositorySystemSession,
+            new DeployRequest().addArtifact(artifact).setRepository(deployRepository));
+      } catch (DeploymentException e) {
+        // The archive is in the local repository anyway, so the install goes on
+        LOGGER.warn("Could not deploy {} to {}: {}", artifact, deployRepository.getUrl(), e.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public void evict(long maxBytes) {
+    File groupDirectory = new File(repositorySystemSession.getLocalRepository().getBasedir(),
+        GROUP_ID.replace('.', '/'));
+    File[] artifactDirectories = new File[ARTIFACT_IDS.length];
+    for (int i = 0; i < ARTIFACT_IDS.length; i++) {
+      artifactDirectories[i] = new File(groupDirectory, ARTIFACT_IDS[i]);
+    }
+    CacheEviction.evict(maxBytes, artifactDirectories);
+  }
+
   private DefaultArtifact createArtifact(CacheDescriptor cacheDescriptor) {
     String version = cacheDescriptor.getVersion().replaceAll("^v", "");
 
@@ -1,18 +1,25 @@
 package com.github.eirslett.maven.plugins.frontend.lib;
 
-import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.AccessDeniedException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipFile;
 
 import org.apache.commons.io.IOUtils;
@@ -31,14 +38,198 @@ class ArchiveExtractionException extends Exception {
     }
 }
 
+/**
+ * Decides which entries of an archive are extracted. Entries that are not accepted are skipped without being
+ * written, and zip entries are not even opened. Directories are created for the accepted files either way.
+ */
+interface ArchiveEntryFilter {
+
+    ArchiveEntryFilter ALL = new ArchiveEntryFilter() {
+        @Override
+        public boolean accept(String entryName) {
+            return true;
+        }
+    };
+
+    /**
+     * @param entryName the path of the entry inside the archive, with '/' as separator and without a leading
+     *                  "./"
+     */
+    boolean accept(String entryName);
+}
+
+/**
+ * Accepts the given paths of an archive, and everything below them.
+ */
+final class PathEntryFilter implements ArchiveEntryFilter {
+
+    private final List<String> paths;
+
+    PathEntryFilter(String... paths) {
+        this.paths = Arrays.asList(paths);
+    }
+
+    List<String> getPaths() {
+        return this.paths;
+    }
+
+    @Override
+    public boolean accept(String entryName) {
+        for (String path : this.paths) {
+            if (entryName.equals(path) || entryName.startsWith(path + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean accept(ArchiveEntryFilter filter, String entryName) {
+        return filter.accept(normalize(entryName));
+    }
+
+    static String normalize(String entryName) {
+        String name = entryName.replace('\\', '/');
+        if (name.startsWith("./")) {
+            name = name.substring(2);
+        }
+        return name;
+    }
+}
+
+/**
+ * Where the entries of an archive are written, relative to the destination directory. Leading path components
+ * are stripped first, like tar's {@code --strip-components}, and then the first prefix that matches is
+ * rewritten. Lets an installer unpack straight into the final layout instead of moving files afterwards.
+ * Relative symbolic links are created as they are, so they only work if their target is moved along. The
+ * mapped paths are checked like the entry names, see {@link ArchivePaths}.
+ */
+final class PathMapping {
+
+    static final PathMapping IDENTITY = new PathMapping();
+
+    private final int stripComponents;
+
+    private final Map<String, String> rewrites;
+
+    PathMapping() {
+        this(0, Collections.<String, String>emptyMap());
+    }
+
+    private PathMapping(int stripComponents, Map<String, String> rewrites) {
+        this.stripComponents = stripComponents;
+        this.rewrites = rewrites;
+    }
+
+    PathMapping withStripComponents(int stripComponents) {
+        return new PathMapping(stripComponents, this.rewrites);
+    }
+
+    /**
+     * Writes the entry {@code prefix}, and everything below it, to {@code replacement} instead. An empty
+     * replacement moves the content of the prefix up into the destination directory.
+     */
+    PathMapping withRewrite(String prefix, String replacement) {
+        Map<String, String> rewrites = new LinkedHashMap<String, String>(this.rewrites);
+        rewrites.put(prefix, replacement);
+        return new PathMapping(this.stripComponents, rewrites);
+    }
+
+    boolean isIdentity() {
+        return this.stripComponents == 0 && this.rewrites.isEmpty();
+    }
+
+    int getStripComponents() {
+        return this.stripComponents;
+    }
+
+    Map<String, String> getRewrites() {
+        return this.rewrites;
+    }
+
+    /**
+     * @return the path to write the entry to, or null if nothing is left of it
+     */
+    String map(String entryName) {
+        String name = PathEntryFilter.normalize(entryName);
+        for (int i = 0; i < this.stripComponents; i++) {
+            int slash = name.indexOf('/');
+            if (slash == -1) {
+                return null;
+            }
+            name = name.substring(slash + 1);
+        }
+        for (Map.Entry<String, String> rewrite : this.rewrites.entrySet()) {
+            String prefix = rewrite.getKey();
+            if (name.equals(prefix) || name.startsWith(prefix + "/")) {
+                String rest = name.substring(prefix.length());
+                name = rewrite.getValue().isEmpty() && rest.startsWith("/")
+                    ? rest.substring(1)
+                    : rewrite.getValue() + rest;
+                break;
+            }
+        }
+        return name.isEmpty() || name.equals("/") ? null : name;
+    }
+}
+
 interface ArchiveExtractor {
+    /**
+     * Extracts a zip, tar.gz or tar.xz archive, or installs an msi package, depending on the file name.
+     */
     public void extract(String archive, String destinationDirectory) throws ArchiveExtractionException;
+
+    /**
+     * Extracts only the entries that the filter accepts. Msi packages are always installed completely.
+     */
+    public void extract(String archive, String destinationDirectory, ArchiveEntryFilter filter)
+        throws ArchiveExtractionException;
+
+    /**
+     * Extracts only the entries that the filter accepts, to the paths the mapping gives them. The filter sees
+     * the entry names of the archive. Msi packages are always installed completely and as they are.
+     */
+    public void extract(String archive, String destinationDirectory, ArchiveEntryFilter filter, PathMapping mapping)
+        throws ArchiveExtractionException;
+
+    /**
+     * Extracts a tar.gz archive from a stream, for example while it is still being downloaded. The stream is
+     * not read to its end, and not closed.
+     */
+    public void extractTarGz(InputStream archive, String destinationDirectory) throws ArchiveExtractionException;
+
+    public void extractTarGz(InputStream archive, String destinationDirectory, ArchiveEntryFilter filter)
+        throws ArchiveExtractionException;
+
+    public void extractTarGz(InputStream archive, String destinationDirectory, ArchiveEntryFilter filter,
+                             PathMapping mapping) throws ArchiveExtractionException;
 }
 
 final class DefaultArchiveExtractor implements ArchiveExtractor {
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultArchiveExtractor.class);
 
+    private final int threads;
+
+    private final boolean jdkGzip;
+
+    DefaultArchiveExtractor() {
+        this(1);
+    }
+
+    DefaultArchiveExtractor(int threads) {
+        this(threads, false);
+    }
+
+    /**
+     * @param threads number of threads that write the extracted files; 1 extracts on the calling thread
+     * @param jdkGzip whether gzip is decompressed by the JDK's {@link GZIPInputStream}, which uses the native
+     *                zlib, instead of by commons-compress
+     */
+    DefaultArchiveExtractor(int threads, boolean jdkGzip) {
+        this.threads = threads;
+        this.jdkGzip = jdkGzip;
+    }
+
     private void prepDestination(File path, boolean directory) throws IOException {
         if (directory) {
             path.mkdirs();
@@ -55,6 +246,18 @@ final class DefaultArchiveExtractor implements ArchiveExtractor {
 
     @Override
     public void extract(String archive, String destinationDirectory) throws ArchiveExtractionException {
+        extract(archive, destinationDirectory, ArchiveEntryFilter.ALL);
+    }
+
+    @Override
+    public void extract(String archive, String destinationDirectory, ArchiveEntryFilter filter)
+        throws ArchiveExtractionException {
+        extract(archive, destinationDirectory, filter, PathMapping.IDENTITY);
+    }
+
+    @Override
+    public void extract(String archive, String destinationDirectory, ArchiveEntryFilter filter, PathMapping mapping)
+        throws ArchiveExtractionException {
         final File archiveFile = new File(archive);
 
         try (FileInputStream fis = new FileInputStream(archiveFile)) {
@@ -75,10 +278,20 @@ final class DefaultArchiveExtractor implements ArchiveExtractor {
             } else if ("zip".equals(FileUtils.getExtension(archiveFile.getAbsolutePath()))) {
                 ZipFile zipFile = new ZipFile(archiveFile);
                 try {
+                    if (this.threads > 1) {
+                        ParallelExtraction.extractZip(zipFile, new File(destinationDirectory), filter, mapping,
+                            this.threads);
+                        return;
+                    }
                     Enumeration<? extends ZipEntry> entries = zipFile.entries();
                     while (entries.hasMoreElements()) {
                         ZipEntry entry = entries.nextElement();
-                        final File destPath = new File(destinationDirectory + File.separator + entry.getName());
+                        String path = mapping.map(entry.getName());
+                        if (path == null || !PathEntryFilter.accept(filter, entry.getName())) {
+                            continue;
+                        }
+                        final File destPath = ArchivePaths.resolve(new File(destinationDirectory).toPath(), path)
+                            .toFile();
                         prepDestination(destPath, entry.isDirectory());
                         if(!entry.isDirectory()){
 		                        InputStream in = null;
@@ -96,36 +309,10 @@ final class DefaultArchiveExtractor implements ArchiveExtractor {
                 } finally {
                     zipFile.close();
                 }
+            } else if (archive.endsWith(".tar.xz")) {
+                extractTarStream(new XZCompressorInputStream(fis), destinationDirectory, filter, mapping);
             } else {
-		            // TarArchiveInputStream can be constructed with a normal FileInputStream if
-		            // we ever need to extract regular '.tar' files.
-                TarArchiveInputStream tarIn = null;
-                try {
-				            tarIn = new TarArchiveInputStream(new GzipCompressorInputStream(fis));
-
-				            TarArchiveEntry tarEntry = tarIn.getNextTarEntry();
-				            while (tarEntry != null) {
-				                // Create a file for this tarEntry
-				                final File destPath = new File(destinationDirectory + File.separator + tarEntry.getName());
-		                    prepDestination(destPath, tarEntry.isDirectory());
-				                if (!tarEntry.isDirectory()) {
-				                    destPath.createNewFile();
-				                    boolean isExecutable = (tarEntry.getMode() & 0100) > 0;
-				                    destPath.setExecutable(isExecutable);
-
-		                        OutputStream out = null;
-		                        try {
-		                            out = new FileOutputStream(destPath);
-		                            IOUtils.copy(tarIn, out);
-		                        } finally {
-		                            IOUtils.closeQuietly(out);
-		                        }
-				                }
-				                tarEntry = tarIn.getNextTarEntry();
-				            }
-                } finally {
-                    IOUtils.closeQuietly(tarIn);
-                }
+                extractTarStream(gunzip(fis), destinationDirectory, filter, mapping);
             }
         } catch (IOException e) {
             throw new ArchiveExtractionException("Could not extract archive: '"
@@ -133,4 +320,52 @@ final class DefaultArchiveExtractor implements ArchiveExtractor {
                     + "'", e);
         }
     }
+
+    @Override
+    public void extractTarGz(InputStream archive, String destinationDirectory) throws ArchiveExtractionException {
+        extractTarGz(archive, destinationDirectory, ArchiveEntryFilter.ALL);
+    }
+
+    @Override
+    public void extractTarGz(InputStream archive, String destinationDirectory, ArchiveEntryFilter filter)
+        throws ArchiveExtractionException {
+        extractTarGz(archive, destinationDirectory, filter, PathMapping.IDENTITY);
+    }
+
+    @Override
+    public void extractTarGz(InputStream archive, String destinationDirectory, ArchiveEntryFilter filter,
+                             PathMapping mapping) throws ArchiveExtractionException {
+        try {
+            // Closing the decompressor releases its native Inflater, but the caller may still read on
+            InputStream unclosed = new FilterInputStream(archive) {
+                @Override
+                public void close() {
+                }
+            };
+            extractTarStream(gunzip(unclosed), destinationDirectory, filter, mapping);
+        } catch (IOException e) {
+            throw new ArchiveExtractionException("Could not extract archive stream into '"
+                    + destinationDirectory
+                    + "'", e);
+        }
+    }
+
+    private InputStream gunzip(InputStream in) throws IOException {
+        return this.jdkGzip
+            ? new GZIPInputStream(in, NioTarExtractor.BUFFER_SIZE)
+            : new GzipCompressorInputStream(in);
+    }
+
+    private void extractTarStream(InputStream decompressed, String destinationDirectory, ArchiveEntryFilter filter,
+                                  PathMapping mapping) throws IOException {
+        // TarArchiveInputStream can be constructed with a normal FileInputStream if
+        // we ever need to extract regular '.tar' files.
+        try (TarArchiveInputStream tarIn = new TarArchiveInputStream(decompressed)) {
+            if (this.threads > 1) {
+                ParallelExtraction.extractTar(tarIn, new File(destinationDirectory), filter, mapping, this.threads);
+            } else {
+                new NioTarExtractor(new File(destinationDirectory), mapping).extract(tarIn, filter);
+            }
+        }
+    }
 }
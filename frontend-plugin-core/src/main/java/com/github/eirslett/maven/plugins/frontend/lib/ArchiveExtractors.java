@@ -0,0 +1,196 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.eirslett.maven.plugins.frontend.lib.DownloadConfig.ExtractorBackend;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.codehaus.plexus.util.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the {@link ArchiveExtractor} for an {@link ExtractorBackend}. For {@link ExtractorBackend#AUTO} the
+ * available backends unpack a small generated tar.gz, about the size of the npm archive's largest directory,
+ * and the fastest one is used for the rest of the build. This happens when the first archive is unpacked, so
+ * builds that find everything installed already do not pay for it; since the others still pay a little, it has to
+ * be asked for. Every backend falls back to commons-compress.
+ */
+final class ArchiveExtractors {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArchiveExtractors.class);
+
+    private static final int CALIBRATION_FILES = 300;
+
+    private static final int CALIBRATION_FILE_SIZE = 8 * 1024;
+
+    private static final Platform PLATFORM = Platform.guess();
+
+    // Detected and calibrated once per JVM
+    private static Boolean tar;
+    private static Boolean unzip;
+    private static ExtractorBackend calibrated;
+
+    private ArchiveExtractors() {
+    }
+
+    static ArchiveExtractor create(ExtractorBackend backend, int threads) {
+        switch (backend) {
+            case AUTO:
+                return new CalibratedArchiveExtractor(threads);
+            case JDK_GZIP:
+                return new DefaultArchiveExtractor(threads, true);
+            case SYSTEM:
+                return new SystemArchiveExtractor(PLATFORM, hasTar(), hasUnzip(), new DefaultArchiveExtractor(threads));
+            default:
+                return new DefaultArchiveExtractor(threads);
+        }
+    }
+
+    private static synchronized boolean hasTar() {
+        if (tar == null) {
+            // The tar of Windows 10 cannot be relied on to be there
+            tar = !PLATFORM.isWindows() && SystemArchiveExtractor.isInstalled(PLATFORM, "tar", "--version");
+        }
+        return tar;
+    }
+
+    private static synchronized boolean hasUnzip() {
+        if (unzip == null) {
+            unzip = !PLATFORM.isWindows() && SystemArchiveExtractor.isInstalled(PLATFORM, "unzip", "-v");
+        }
+        return unzip;
+    }
+
+    private static synchronized ExtractorBackend calibrate(int threads) {
+        if (calibrated != null) {
+            return calibrated;
+        }
+        calibrated = ExtractorBackend.JAVA;
+        File directory = null;
+        try {
+            directory = File.createTempFile("frontend-extractor", "");
+            directory.delete();
+            File archive = new File(directory, "calibration.tar.gz");
+            directory.mkdirs();
+            writeCalibrationArchive(archive);
+
+            Map<ExtractorBackend, Long> millis = new EnumMap<ExtractorBackend, Long>(ExtractorBackend.class);
+            for (ExtractorBackend backend : ExtractorBackend.values()) {
+                if (backend == ExtractorBackend.AUTO || (backend == ExtractorBackend.SYSTEM && !hasTar())) {
+                    continue;
+                }
+                ArchiveExtractor extractor = create(backend, threads);
+                // The first run only loads the classes
+                extractor.extract(archive.getPath(), new File(directory, backend + "-warmup").getPath());
+                long start = System.nanoTime();
+                extractor.extract(archive.getPath(), new File(directory, backend.toString()).getPath());
+                millis.put(backend, (System.nanoTime() - start) / 1000000);
+                if (millis.get(backend) < millis.get(calibrated)) {
+                    calibrated = backend;
+                }
+            }
+            LOG.info("Extracting archives with the {} extractor (calibration in ms: {})", calibrated, millis);
+        } catch (IOException | ArchiveExtractionException e) {
+            LOG.debug("Could not calibrate the archive extractors, using {}", calibrated, e);
+        } finally {
+            if (directory != null) {
+                try {
+                    FileUtils.deleteDirectory(directory);
+                } catch (IOException e) {
+                    LOG.debug("Could not delete {}", directory, e);
+                }
+            }
+        }
+        return calibrated;
+    }
+
+    /**
+     * Writes files of text, which compress about as well as the JavaScript of npm and yarn.
+     */
+    private static void writeCalibrationArchive(File archive) throws IOException {
+        String[] words = { "function", "return", "var ", "this.", "require(", "});\n", "  ", "if (", "null", "= " };
+        Random random = new Random(42);
+        byte[] content = new byte[CALIBRATION_FILE_SIZE];
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(archive));
+             TarArchiveOutputStream tarOut = new TarArchiveOutputStream(out)) {
+            for (int i = 0; i < CALIBRATION_FILES; i++) {
+                int length = 0;
+                while (length < content.length) {
+                    byte[] word = (random.nextInt(4) == 0 ? Integer.toString(random.nextInt(1000))
+                        : words[random.nextInt(words.length)]).getBytes("UTF-8");
+                    int n = Math.min(word.length, content.length - length);
+                    System.arraycopy(word, 0, content, length, n);
+                    length += n;
+                }
+                TarArchiveEntry entry = new TarArchiveEntry("package/lib/" + (i % 10) + "/file" + i + ".js");
+                entry.setSize(content.length);
+                entry.setMode(0644);
+                tarOut.putArchiveEntry(entry);
+                tarOut.write(content);
+                tarOut.closeArchiveEntry();
+            }
+        }
+    }
+
+    private static final class CalibratedArchiveExtractor implements ArchiveExtractor {
+
+        private final int threads;
+
+        private ArchiveExtractor delegate;
+
+        private CalibratedArchiveExtractor(int threads) {
+            this.threads = threads;
+        }
+
+        private synchronized ArchiveExtractor delegate() {
+            if (this.delegate == null) {
+                this.delegate = create(calibrate(this.threads), this.threads);
+            }
+            return this.delegate;
+        }
+
+        @Override
+        public void extract(String archive, String destinationDirectory) throws ArchiveExtractionException {
+            delegate().extract(archive, destinationDirectory);
+        }
+
+        @Override
+        public void extract(String archive, String destinationDirectory, ArchiveEntryFilter filter)
+            throws ArchiveExtractionException {
+            delegate().extract(archive, destinationDirectory, filter);
+        }
+
+        @Override
+        public void extract(String archive, String destinationDirectory, ArchiveEntryFilter filter,
+                            PathMapping mapping) throws ArchiveExtractionException {
+            delegate().extract(archive, destinationDirectory, filter, mapping);
+        }
+
+        @Override
+        public void extractTarGz(InputStream archive, String destinationDirectory)
+            throws ArchiveExtractionException {
+            delegate().extractTarGz(archive, destinationDirectory);
+        }
+
+        @Override
+        public void extractTarGz(InputStream archive, String destinationDirectory, ArchiveEntryFilter filter)
+            throws ArchiveExtractionException {
+            delegate().extractTarGz(archive, destinationDirectory, filter);
+        }
+
+        @Override
+        public void extractTarGz(InputStream archive, String destinationDirectory, ArchiveEntryFilter filter,
+                                 PathMapping mapping) throws ArchiveExtractionException {
+            delegate().extractTarGz(archive, destinationDirectory, filter, mapping);
+        }
+    }
+}
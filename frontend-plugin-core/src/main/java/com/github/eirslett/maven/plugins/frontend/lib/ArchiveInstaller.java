@@ -0,0 +1,260 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * What the node, npm and yarn installers do with their archives: download an archive into the cache unless it is
+ * there already, verified against its published checksum and under the lock of its cache entry, and unpack it, or
+ * link it from the toolchain store. An archive that turns out to be corrupt when it is unpacked is downloaded once
+ * more.
+ */
+final class ArchiveInstaller {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveInstaller.class);
+
+    /**
+     * Looks up the published checksum of an archive. Only done when the archive has to be downloaded or verified,
+     * since it is a download itself.
+     */
+    interface ChecksumLookup {
+        /**
+         * @param downloadRoots the mirrors to look on
+         * @return the checksum, or null if none is published
+         */
+        Checksum lookup(List<String> downloadRoots);
+    }
+
+    static final ChecksumLookup UNPUBLISHED = new ChecksumLookup() {
+        @Override
+        public Checksum lookup(List<String> downloadRoots) {
+            return null;
+        }
+    };
+
+    /**
+     * One archive of a tool: how it is cached, and where it is downloaded from.
+     */
+    static final class Download {
+
+        private final String description;
+
+        private final CacheDescriptor cacheDescriptor;
+
+        private final List<String> downloadRoots;
+
+        private final String downloadFilename;
+
+        private final String userName, password;
+
+        private final ChecksumLookup checksumLookup;
+
+        /**
+         * @param description      names the archive in messages, like "Node.js v6.9.1"
+         * @param downloadFilename the path of the archive below the download roots
+         */
+        Download(String description, CacheDescriptor cacheDescriptor, List<String> downloadRoots,
+                 String downloadFilename, String userName, String password, ChecksumLookup checksumLookup) {
+            this.description = description;
+            this.cacheDescriptor = cacheDescriptor;
+            this.downloadRoots = downloadRoots;
+            this.downloadFilename = downloadFilename;
+            this.userName = userName;
+            this.password = password;
+            this.checksumLookup = checksumLookup;
+        }
+
+        @Override
+        public String toString() {
+            return this.description;
+        }
+    }
+
+    private final CacheResolver cacheResolver;
+
+    private final ArchiveExtractor archiveExtractor;
+
+    private final FileDownloader fileDownloader;
+
+    private final DownloadConfig downloadConfig;
+
+    private final ToolchainStore toolchainStore;
+
+    ArchiveInstaller(InstallConfig config, ArchiveExtractor archiveExtractor, FileDownloader fileDownloader,
+                     DownloadConfig downloadConfig) {
+        this.cacheResolver = config.getCacheResolver();
+        this.archiveExtractor = archiveExtractor;
+        this.fileDownloader = fileDownloader;
+        this.downloadConfig = downloadConfig;
+        this.toolchainStore = ToolchainStore.forConfig(downloadConfig);
+    }
+
+    /**
+     * Installs linked from the toolchain store are staged next to the install directory, where the links can
+     * be created.
+     *
+     * @return the directory to stage installs in, or null to stage them next to the install directory
+     */
+    File getStagingDirectory() {
+        return this.toolchainStore == null ? this.downloadConfig.getStagingDirectory() : null;
+    }
+
+    /**
+     * @return where the archive is cached
+     */
+    File resolve(Download download) {
+        return this.cacheResolver.resolve(download.cacheDescriptor);
+    }
+
+    /**
+     * Gets the archive into the cache, and unpacks it into the destination directory, or links it there from the
+     * toolchain store.
+     *
+     * @param layout tells the store's entries for the same archive apart
+     * @param copies the files that are changed after the install, which the store must not link
+     */
+    void install(final Download download, final File archive, File destinationDirectory,
+                 final ArchiveEntryFilter filter, final PathMapping mapping, String layout, String... copies)
+        throws DownloadException, ArchiveExtractionException, IOException {
+        // Archives for the toolchain store are unpacked into the store, not while downloading
+        if (downloadIfMissing(download, archive, this.toolchainStore == null ? destinationDirectory : null, filter,
+            mapping)) {
+            return;
+        }
+        if (this.toolchainStore == null) {
+            extract(download, archive, destinationDirectory, filter, mapping);
+            return;
+        }
+        this.toolchainStore.install(archive, layout, destinationDirectory, new ToolchainStore.Extraction() {
+            @Override
+            public void extractInto(File directory) throws ArchiveExtractionException, DownloadException {
+                extract(download, archive, directory, filter, mapping);
+            }
+        }, copies);
+    }
+
+    /**
+     * Downloads the archive if it is not in the cache yet.
+     */
+    void downloadIfMissing(Download download, File archive) throws DownloadException {
+        downloadIfMissing(download, archive, null, ArchiveEntryFilter.ALL, PathMapping.IDENTITY);
+    }
+
+    /**
+     * Downloads the archive if it is not in the cache yet. With streaming extraction, a tar.gz archive is
+     * extracted into {@code extractDirectory} while it is being downloaded.
+     *
+     * @param extractDirectory where to extract the archive while it is being downloaded, or null to only
+     *                         download it
+     * @return true if the archive has been extracted already
+     */
+    private boolean downloadIfMissing(Download download, File archive, File extractDirectory,
+                                      ArchiveEntryFilter filter, PathMapping mapping) throws DownloadException {
+        if (Utils.isCached(this.cacheResolver, archive)) {
+            return false;
+        }
+        if (Utils.isShared(this.cacheResolver, archive)) {
+            // Only intact archives are resolved in a shared cache, so this one changed since
+            throw new DownloadException(archive + " in a shared cache has changed since it was resolved");
+        }
+        if (this.downloadConfig.isOffline() && (!archive.isFile() || Checksum.hasStamp(archive))) {
+            throw new DownloadException(download + " is not in the cache, or not verified (" + archive
+                + "), and cannot be downloaded in offline mode");
+        }
+        CacheEntryLock lock = CacheEntryLock.acquire(archive);
+        try {
+            // Another build may have downloaded it while we were waiting for the lock
+            if (archive.exists() && Checksum.isIntact(archive)) {
+                return false;
+            }
+            if (this.downloadConfig.isOffline()) {
+                useUnstamped(archive, download.downloadRoots, download.checksumLookup);
+                return false;
+            }
+            Checksum checksum = download.checksumLookup.lookup(download.downloadRoots);
+            if (Checksum.verifyUnstamped(archive, checksum)) {
+                return false;
+            }
+            List<String> downloadUrls = Utils.downloadUrls(download.downloadRoots, download.downloadFilename);
+            LOGGER.info("Downloading {} to {}", downloadUrls.get(0), archive);
+            if (extractDirectory != null && this.downloadConfig.isStreamingExtraction()
+                && archive.getName().endsWith(".tar.gz")) {
+                return PipelinedExtraction.downloadAndExtract(this.fileDownloader, this.archiveExtractor,
+                    downloadUrls, archive, download.userName, download.password, checksum, extractDirectory,
+                    filter, mapping);
+            }
+            this.fileDownloader.download(downloadUrls, archive.getPath(), download.userName, download.password,
+                checksum);
+            return false;
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Uses an archive without a stamp in offline mode, where it cannot be downloaded again. It may have been cached
+     * by an older version of the plugin, or put into the local repository by hand. It is verified if a local
+     * mirror publishes its checksum, and used as it is otherwise.
+     */
+    static void useUnstamped(File archive, List<String> downloadRoots, ChecksumLookup checksumLookup)
+        throws DownloadException {
+        List<String> localRoots = new ArrayList<String>();
+        for (String downloadRoot : downloadRoots) {
+            if (downloadRoot.regionMatches(true, 0, "file:", 0, 5)) {
+                localRoots.add(downloadRoot);
+            }
+        }
+        Checksum checksum = localRoots.isEmpty() ? null : checksumLookup.lookup(localRoots);
+        if (checksum == null) {
+            LOGGER.warn("Using {} as it is in offline mode, it has not been verified", archive);
+        } else if (!Checksum.verifyUnstamped(archive, checksum)) {
+            throw new DownloadException(archive + " does not match its published checksum " + checksum
+                + ", and cannot be downloaded again in offline mode");
+        }
+    }
+
+    /**
+     * Extracts the archive, and if that fails because the cached archive is corrupt, downloads it once
+     * more and tries again. An archive from a read-only shared cache is left alone, and downloaded into the
+     * local cache instead.
+     */
+    private void extract(Download download, File archive, File destinationDirectory, ArchiveEntryFilter filter,
+                         PathMapping mapping) throws ArchiveExtractionException, DownloadException {
+        try {
+            extract(archive, destinationDirectory, filter, mapping);
+        } catch (ArchiveExtractionException e) {
+            if (this.downloadConfig.isOffline()) {
+                // Keeps the archive, it cannot be replaced without a download
+                throw e;
+            }
+            File replacement = Utils.writableArchive(this.cacheResolver, download.cacheDescriptor, archive);
+            if (replacement.equals(archive)) {
+                LOGGER.warn("Could not extract {}, downloading it again: {}", archive, e.getMessage());
+                CacheEntryLock lock = CacheEntryLock.acquire(archive);
+                try {
+                    archive.delete();
+                    Checksum.deleteStamp(archive);
+                    downloadIfMissing(download, archive);
+                } finally {
+                    lock.close();
+                }
+            } else {
+                LOGGER.warn("Could not extract {} from a shared cache, using {} instead: {}", archive, replacement,
+                    e.getMessage());
+                downloadIfMissing(download, replacement);
+            }
+            extract(replacement, destinationDirectory, filter, mapping);
+        }
+    }
+
+    private void extract(File archive, File destinationDirectory, ArchiveEntryFilter filter, PathMapping mapping)
+        throws ArchiveExtractionException {
+        LOGGER.info("Unpacking {} into {}", archive, destinationDirectory);
+        this.archiveExtractor.extract(archive.getPath(), destinationDirectory.getPath(), filter, mapping);
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Keeps what an archive extracts inside the destination directory. Entry names and hard link targets must be
+ * relative and must not contain {@code ..}. Symbolic links may point up, like node's {@code bin/npm} does, but
+ * only with leading {@code ..} components, no more of them than the link is deep inside the real path of the
+ * destination directory. A {@code ..} after a name is rejected: {@code d/..} goes wherever the parent of
+ * {@code d}'s target is once {@code d} is a link, which text normalization cannot see. Links are created after
+ * every file has been written, so no file is ever written through a link from the archive.
+ */
+final class ArchivePaths {
+
+    private ArchivePaths() {
+    }
+
+    /**
+     * @param name a path from the archive, after the {@link PathMapping}
+     * @return where to write it
+     * @throws IOException if the path is absolute or goes up
+     */
+    static Path resolve(Path destinationDirectory, String name) throws IOException {
+        String normalized = name.replace('\\', '/');
+        if (normalized.startsWith("/") || Paths.get(name).isAbsolute() || hasDriveLetter(normalized)) {
+            throw new IOException("Archive entry '" + name + "' has an absolute path");
+        }
+        for (String component : normalized.split("/")) {
+            if (component.equals("..")) {
+                throw new IOException("Archive entry '" + name + "' would be written outside of "
+                    + destinationDirectory);
+            }
+        }
+        Path path = destinationDirectory.resolve(normalized).normalize();
+        if (!path.startsWith(destinationDirectory.normalize())) {
+            throw new IOException("Archive entry '" + name + "' would be written outside of "
+                + destinationDirectory);
+        }
+        return path;
+    }
+
+    /**
+     * Checks that a symbolic link at {@code link}, whose parent directory exists, stays inside the destination
+     * directory and points to somewhere inside it, whatever the links on the way point to.
+     *
+     * @param target the target as the archive gives it
+     */
+    static void checkSymbolicLink(Path destinationDirectory, Path link, String target) throws IOException {
+        String normalized = target.replace('\\', '/');
+        if (normalized.startsWith("/") || Paths.get(target).isAbsolute() || hasDriveLetter(normalized)) {
+            throw new IOException("Symbolic link " + link + " points to the absolute path '" + target + "'");
+        }
+        Path root = destinationDirectory.toRealPath();
+        Path parent = checkParent(root, link);
+        int depth = parent.equals(root) ? 0 : root.relativize(parent).getNameCount();
+        boolean descended = false;
+        for (String component : normalized.split("/")) {
+            if (component.isEmpty() || component.equals(".")) {
+                continue;
+            }
+            if (!component.equals("..")) {
+                descended = true;
+            } else if (descended || --depth < 0) {
+                throw new IOException("Symbolic link " + link + " points outside of " + destinationDirectory
+                    + ": '" + target + "'");
+            }
+        }
+    }
+
+    /**
+     * Checks every symbolic link below the destination directory, for archives that were unpacked by something
+     * else, like the system's {@code tar}. A link that fails the check is deleted.
+     */
+    static void checkSymbolicLinks(final Path destinationDirectory) throws IOException {
+        Files.walkFileTree(destinationDirectory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (attributes.isSymbolicLink()) {
+                    try {
+                        checkSymbolicLink(destinationDirectory, file, Files.readSymbolicLink(file).toString());
+                    } catch (IOException e) {
+                        Files.delete(file);
+                        throw e;
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Checks that a hard link at {@code link}, whose parent directory exists, stays inside the destination
+     * directory. The target has been resolved with {@link #resolve} already.
+     */
+    static void checkHardLink(Path destinationDirectory, Path link, Path target) throws IOException {
+        Path root = destinationDirectory.toRealPath();
+        checkParent(root, link);
+        if (!target.toRealPath().startsWith(root)) {
+            throw new IOException("Hard link " + link + " points outside of " + destinationDirectory);
+        }
+    }
+
+    private static Path checkParent(Path root, Path link) throws IOException {
+        // An earlier link may have turned a directory on the way into a link to somewhere else
+        Path parent = link.getParent().toRealPath();
+        if (!parent.startsWith(root)) {
+            throw new IOException("Link " + link + " would be created outside of " + root);
+        }
+        return parent;
+    }
+
+    private static boolean hasDriveLetter(String path) {
+        return path.length() >= 2 && path.charAt(1) == ':' && Character.isLetter(path.charAt(0));
+    }
+}
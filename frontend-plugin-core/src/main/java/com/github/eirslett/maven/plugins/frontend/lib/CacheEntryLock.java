@@ -0,0 +1,243 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An exclusive lock on a cache entry that holds across processes, so builds that share a local repository
+ * download each archive only once. The others wait and then use the finished file.
+ *
+ * The lock is an OS level lock on a {@code .lock} file next to the entry. File locks are held by the whole
+ * JVM, so threads of the same build are serialized with an in-memory lock first. The lock is reentrant for
+ * the thread that holds it. Plugins in other class loaders of the same JVM have in-memory locks of their own,
+ * so a file lock they hold is polled for. Lock files are left in place; deleting them would race with other
+ * processes.
+ */
+final class CacheEntryLock implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheEntryLock.class);
+
+    static final String LOCK_SUFFIX = ".lock";
+
+    private static final Map<String, ThreadLock> THREAD_LOCKS = new HashMap<String, ThreadLock>();
+
+    private static final Map<String, FileLock> FILE_LOCKS = new HashMap<String, FileLock>();
+
+    private static final long POLL_MILLIS = 100;
+
+    private final String path;
+
+    private final ThreadLock threadLock;
+
+    private CacheEntryLock(String path, ThreadLock threadLock) {
+        this.path = path;
+        this.threadLock = threadLock;
+    }
+
+    /**
+     * Blocks until this process holds the lock on the cache entry.
+     */
+    static CacheEntryLock acquire(File entry) throws DownloadException {
+        try {
+            return lock(entry);
+        } catch (IOException e) {
+            throw new DownloadException("Could not lock " + entry, e);
+        }
+    }
+
+    /**
+     * Takes the lock on the cache entry if nobody holds it, in this process or another one.
+     *
+     * @return the lock, or null if somebody else holds it, or if the current thread holds it already
+     */
+    static CacheEntryLock tryAcquire(File entry) throws IOException {
+        final File lockFile = new File(entry.getPath() + LOCK_SUFFIX);
+        final String path = lockFile.getCanonicalPath();
+        final ThreadLock threadLock = threadLock(path);
+        if (!threadLock.lock.tryLock()) {
+            release(path, threadLock, false);
+            return null;
+        }
+        if (threadLock.lock.getHoldCount() > 1) {
+            release(path, threadLock, true);
+            return null;
+        }
+        try {
+            RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+            try {
+                FileLock fileLock = tryLock(file);
+                if (fileLock == null) {
+                    file.close();
+                    release(path, threadLock, true);
+                    return null;
+                }
+                synchronized (FILE_LOCKS) {
+                    FILE_LOCKS.put(path, fileLock);
+                }
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            release(path, threadLock, true);
+            throw e;
+        } catch (RuntimeException e) {
+            release(path, threadLock, true);
+            throw e;
+        }
+        return new CacheEntryLock(path, threadLock);
+    }
+
+    /**
+     * @return the in-memory lock of the path, counted as used until it is released
+     */
+    private static ThreadLock threadLock(String path) {
+        synchronized (THREAD_LOCKS) {
+            ThreadLock lock = THREAD_LOCKS.get(path);
+            if (lock == null) {
+                lock = new ThreadLock();
+                THREAD_LOCKS.put(path, lock);
+            }
+            lock.users++;
+            return lock;
+        }
+    }
+
+    /**
+     * Gives up one use of the in-memory lock, and forgets the lock once nobody holds it or waits for it.
+     */
+    private static void release(String path, ThreadLock threadLock, boolean locked) {
+        if (locked) {
+            threadLock.lock.unlock();
+        }
+        synchronized (THREAD_LOCKS) {
+            if (--threadLock.users == 0) {
+                THREAD_LOCKS.remove(path);
+            }
+        }
+    }
+
+    /**
+     * @return the lock, or null if another process holds it, or another class loader of this process. Plugins
+     * in different class loaders, like two versions of this plugin in one build, each have their own in-memory
+     * locks, so only the JVM notices that they lock the same file.
+     */
+    private static FileLock tryLock(RandomAccessFile file) throws IOException {
+        try {
+            return file.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static CacheEntryLock lock(File entry) throws IOException {
+        final File lockFile = new File(entry.getPath() + LOCK_SUFFIX);
+        lockFile.getParentFile().mkdirs();
+        final String path = lockFile.getCanonicalPath();
+        final ThreadLock threadLock = threadLock(path);
+
+        final long start = System.currentTimeMillis();
+        boolean waited = false;
+        if (!threadLock.lock.tryLock()) {
+            LOGGER.info("Waiting for another thread of this build to release {}", entry);
+            threadLock.lock.lock();
+            waited = true;
+        }
+        if (threadLock.lock.getHoldCount() > 1) {
+            return new CacheEntryLock(path, threadLock);
+        }
+        try {
+            RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+            try {
+                FileLock fileLock = tryLock(file);
+                if (fileLock == null) {
+                    LOGGER.info("Waiting for another build to release {}", entry);
+                    fileLock = waitForLock(file);
+                    waited = true;
+                }
+                synchronized (FILE_LOCKS) {
+                    FILE_LOCKS.put(path, fileLock);
+                }
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            release(path, threadLock, true);
+            throw e;
+        } catch (RuntimeException e) {
+            release(path, threadLock, true);
+            throw e;
+        }
+        if (waited) {
+            LOGGER.info("Waited {} ms for the lock on {}", System.currentTimeMillis() - start, entry);
+        }
+        return new CacheEntryLock(path, threadLock);
+    }
+
+    /**
+     * Blocks until the lock is free. A lock that another class loader of this process holds cannot be waited
+     * for, so it is polled.
+     */
+    private static FileLock waitForLock(RandomAccessFile file) throws IOException {
+        while (true) {
+            try {
+                return file.getChannel().lock();
+            } catch (OverlappingFileLockException e) {
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the lock");
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (this.threadLock.lock.getHoldCount() == 1) {
+                final FileLock fileLock;
+                synchronized (FILE_LOCKS) {
+                    fileLock = FILE_LOCKS.remove(this.path);
+                }
+                if (fileLock != null) {
+                    // Closing the channel releases the lock
+                    fileLock.channel().close();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not release the lock {}", this.path, e);
+        } finally {
+            release(this.path, this.threadLock, true);
+        }
+    }
+
+    static int threadLockCount() {
+        synchronized (THREAD_LOCKS) {
+            return THREAD_LOCKS.size();
+        }
+    }
+
+    /**
+     * The in-memory lock of a lock file, with the number of threads that hold it or wait for it.
+     */
+    private static final class ThreadLock {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private int users;
+    }
+}
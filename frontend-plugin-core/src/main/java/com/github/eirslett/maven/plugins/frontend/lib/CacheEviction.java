@@ -0,0 +1,221 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps archive caches under a size by deleting the archives that were resolved least recently.
+ *
+ * Cache resolvers {@link #touch(File) touch} an {@code .accessed} file next to every archive they resolve; its
+ * modification time is the last access. The archive's own modification time cannot be used, since its checksum
+ * stamp depends on it. An archive is deleted together with its checksum stamp, access stamp and partial
+ * downloads, and only while this process holds its {@link CacheEntryLock}, so archives that another build is
+ * downloading are left alone. Builds read an archive right after resolving it, without the lock, so archives
+ * that were resolved within the last hour are left alone too. The cap is soft: when only those are left, the
+ * cache stays above it until the next build.
+ *
+ * A build that finds the cache under the cap only lists the cache directories, so eviction can run at the start
+ * of every build.
+ */
+public final class CacheEviction {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheEviction.class);
+
+    static final String ACCESS_SUFFIX = ".accessed";
+
+    private static final long IN_USE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    // Failed lookups in remote repositories
+    private static final String LAST_UPDATED_SUFFIX = ".lastUpdated";
+
+    private static final String[] SIDECAR_SUFFIXES = { ACCESS_SUFFIX, Checksum.STAMP_SUFFIX,
+        DefaultFileDownloader.VALIDATOR_SUFFIX, DefaultFileDownloader.PART_SUFFIX, LAST_UPDATED_SUFFIX };
+
+    private CacheEviction() {
+    }
+
+    /**
+     * Records that the archive was resolved now, if it is in the cache.
+     */
+    public static void touch(File archive) {
+        if (!archive.isFile()) {
+            return;
+        }
+        File stamp = new File(archive.getPath() + ACCESS_SUFFIX);
+        try {
+            if (!stamp.setLastModified(System.currentTimeMillis()) && !stamp.createNewFile()) {
+                LOGGER.debug("Could not update the access stamp {}", stamp);
+            }
+        } catch (IOException e) {
+            // Read-only caches are used without access stamps
+            LOGGER.debug("Could not create the access stamp {}", stamp, e);
+        }
+    }
+
+    /**
+     * Deletes the least recently resolved archives under the directories until they take at most maxBytes
+     * together.
+     *
+     * @param maxBytes 0 or less for no limit
+     */
+    public static void evict(long maxBytes, File... directories) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        for (File directory : directories) {
+            collect(directory, entries);
+        }
+        long size = 0;
+        for (Entry entry : entries.values()) {
+            size += entry.size;
+        }
+        if (size <= maxBytes) {
+            LOGGER.debug("The archive cache takes {} of {} bytes", size, maxBytes);
+            return;
+        }
+
+        List<Entry> leastRecentFirst = new ArrayList<Entry>(entries.values());
+        Collections.sort(leastRecentFirst, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.lastAccess < b.lastAccess ? -1 : a.lastAccess == b.lastAccess ? 0 : 1;
+            }
+        });
+        final long inUseAfter = start - IN_USE_MILLIS;
+        int evicted = 0;
+        long evictedBytes = 0;
+        for (Entry entry : leastRecentFirst) {
+            if (size <= maxBytes || entry.lastAccess > inUseAfter) {
+                break;
+            }
+            long deleted = delete(entry, inUseAfter);
+            if (deleted > 0) {
+                evicted++;
+                evictedBytes += deleted;
+                size -= deleted;
+            }
+        }
+        LOGGER.info("Evicted {} archives ({} bytes) from the cache in {} ms", evicted, evictedBytes,
+            System.currentTimeMillis() - start);
+        if (size > maxBytes) {
+            LOGGER.warn("The archive cache takes {} bytes, more than the {} allowed, because the other archives "
+                + "are in use", size, maxBytes);
+        }
+    }
+
+    private static void collect(File directory, Map<String, Entry> entries) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collect(file, entries);
+                continue;
+            }
+            if (file.getName().endsWith(CacheEntryLock.LOCK_SUFFIX) || isRepositoryMetadata(file.getName())) {
+                // Left in place, see CacheEntryLock; the local repository keeps its own records
+                continue;
+            }
+            String path = entryPath(file.getPath());
+            Entry entry = entries.get(path);
+            if (entry == null) {
+                entry = new Entry(new File(path));
+                entries.put(path, entry);
+            }
+            // Any file of the entry that changed counts as an access, like an archive that was just downloaded
+            entry.lastAccess = Math.max(entry.lastAccess, file.lastModified());
+            entry.size += file.length();
+        }
+    }
+
+    private static boolean isRepositoryMetadata(String name) {
+        return name.equals("_remote.repositories") || name.startsWith("maven-metadata")
+            || name.equals("resolver-status.properties");
+    }
+
+    /**
+     * The path of the archive a file belongs to.
+     */
+    private static String entryPath(String path) {
+        for (boolean stripped = true; stripped; ) {
+            stripped = false;
+            for (String suffix : SIDECAR_SUFFIXES) {
+                if (path.endsWith(suffix)) {
+                    path = path.substring(0, path.length() - suffix.length());
+                    stripped = true;
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * @return the bytes deleted, 0 if the entry is in use
+     */
+    private static long delete(Entry entry, long inUseAfter) {
+        final CacheEntryLock lock;
+        try {
+            lock = CacheEntryLock.tryAcquire(entry.archive);
+        } catch (IOException e) {
+            LOGGER.debug("Could not lock {}", entry.archive, e);
+            return 0;
+        }
+        if (lock == null) {
+            LOGGER.debug("Not evicting {}, another build holds it", entry.archive);
+            return 0;
+        }
+        try {
+            long deleted = 0;
+            List<File> files = new ArrayList<File>();
+            for (String suffix : new String[] { "", DefaultFileDownloader.PART_SUFFIX,
+                DefaultFileDownloader.PART_SUFFIX + DefaultFileDownloader.VALIDATOR_SUFFIX, Checksum.STAMP_SUFFIX,
+                ACCESS_SUFFIX, LAST_UPDATED_SUFFIX }) {
+                File file = new File(entry.archive.getPath() + suffix);
+                // Resolved again since the cache was listed
+                if (file.lastModified() > inUseAfter) {
+                    return 0;
+                }
+                files.add(file);
+            }
+            for (File file : files) {
+                long length = file.length();
+                if (file.delete()) {
+                    deleted += length;
+                } else if (file.exists()) {
+                    // Open on Windows; the rest goes at the next eviction
+                    LOGGER.debug("Could not delete {}", file);
+                }
+            }
+            LOGGER.debug("Evicted {}", entry.archive);
+            return deleted;
+        } finally {
+            lock.close();
+        }
+    }
+
+    private static final class Entry {
+
+        private final File archive;
+
+        private long lastAccess;
+
+        private long size;
+
+        Entry(File archive) {
+            this.archive = archive;
+        }
+    }
+}
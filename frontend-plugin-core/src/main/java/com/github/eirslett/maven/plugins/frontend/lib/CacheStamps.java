@@ -0,0 +1,51 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stamps archives that a cache resolver fetched itself, like one that resolves them from a Maven repository. The
+ * installers only use archives with a stamp, and download the others again.
+ */
+public final class CacheStamps {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheStamps.class);
+
+    // What Maven repositories keep next to every artifact
+    private static final String SHA1_SUFFIX = ".sha1";
+
+    private CacheStamps() {
+    }
+
+    /**
+     * Stamps an archive that was resolved from a repository. It is verified against the SHA-1 the repository
+     * keeps next to it, if there is one, and otherwise stamped as it is, since the repository system has
+     * checked it on the way already.
+     */
+    public static void stampResolved(File archive) {
+        if (!archive.isFile() || Checksum.isIntact(archive)) {
+            return;
+        }
+        // A stamp that no longer matches is left from an archive that was replaced since
+        Checksum.deleteStamp(archive);
+        File sha1 = new File(archive.getPath() + SHA1_SUFFIX);
+        try {
+            if (sha1.isFile()) {
+                Checksum checksum = Checksum.sha1(FileUtils.readFileToString(sha1, "UTF-8").trim().split("\\s+")[0]);
+                if (!Checksum.verifyUnstamped(archive, checksum)) {
+                    LOGGER.warn("{} does not match {}, it will be downloaded again", archive, sha1);
+                }
+                return;
+            }
+            Checksum.writeUnverifiedStamp(archive);
+        } catch (IOException e) {
+            LOGGER.warn("Could not stamp {}, it will be downloaded again: {}", archive, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid checksum in {}, {} will be downloaded again: {}", sha1, archive, e.getMessage());
+        }
+    }
+}
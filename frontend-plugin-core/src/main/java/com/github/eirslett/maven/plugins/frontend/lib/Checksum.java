@@ -0,0 +1,230 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The expected digest of a downloaded archive.
+ *
+ * Once an archive has been verified, its digest is stored in a stamp file next to it together with the size
+ * and modification time of the archive, so later builds can trust the cached file without hashing it again.
+ * Archives without a published checksum get a stamp without a digest once they are downloaded completely.
+ */
+final class Checksum {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Checksum.class);
+
+    static final String STAMP_SUFFIX = ".checksum";
+
+    private static final String UNVERIFIED = "NONE";
+
+    private final String algorithm;
+
+    private final byte[] value;
+
+    private Checksum(String algorithm, byte[] value) {
+        this.algorithm = algorithm;
+        this.value = value;
+    }
+
+    static Checksum sha256(String hex) {
+        return fromHex("SHA-256", hex);
+    }
+
+    static Checksum sha1(String hex) {
+        return fromHex("SHA-1", hex);
+    }
+
+    /**
+     * Parses a subresource integrity string like the {@code dist.integrity} of the npm registry, for example
+     * {@code sha512-<base64>}. Returns null if none of the listed hashes uses a supported algorithm.
+     */
+    static Checksum fromIntegrity(String integrity) {
+        Checksum best = null;
+        for (String entry : integrity.trim().split("\\s+")) {
+            int separator = entry.indexOf('-');
+            if (separator <= 0) {
+                continue;
+            }
+            String algorithm = entry.substring(0, separator).toLowerCase(Locale.ENGLISH);
+            byte[] value = Base64.decodeBase64(entry.substring(separator + 1));
+            if ("sha512".equals(algorithm)) {
+                return new Checksum("SHA-512", value);
+            } else if ("sha384".equals(algorithm)) {
+                best = new Checksum("SHA-384", value);
+            } else if ("sha256".equals(algorithm) && best == null) {
+                best = new Checksum("SHA-256", value);
+            } else if ("sha1".equals(algorithm) && best == null) {
+                best = new Checksum("SHA-1", value);
+            }
+        }
+        return best;
+    }
+
+    private static Checksum fromHex(String algorithm, String hex) {
+        try {
+            return new Checksum(algorithm, Hex.decodeHex(hex.trim().toCharArray()));
+        } catch (org.apache.commons.codec.DecoderException e) {
+            throw new IllegalArgumentException("Invalid " + algorithm + " checksum: " + hex, e);
+        }
+    }
+
+    String getAlgorithm() {
+        return algorithm;
+    }
+
+    MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The JVM does not support " + algorithm, e);
+        }
+    }
+
+    boolean matches(byte[] digest) {
+        return MessageDigest.isEqual(value, digest);
+    }
+
+    String toHex() {
+        return Hex.encodeHexString(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Checksum)) {
+            return false;
+        }
+        Checksum other = (Checksum) o;
+        return algorithm.equals(other.algorithm) && Arrays.equals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * algorithm.hashCode() + Arrays.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+        return algorithm + ":" + toHex();
+    }
+
+    /**
+     * Records that the archive has been verified against this checksum.
+     */
+    void writeStamp(File archive) throws IOException {
+        FileUtils.writeStringToFile(stampFile(archive),
+            algorithm + " " + toHex() + " " + archive.length() + " " + archive.lastModified(), "UTF-8");
+    }
+
+    /**
+     * Records that the archive has been downloaded completely, for archives without a published checksum.
+     */
+    static void writeUnverifiedStamp(File archive) throws IOException {
+        FileUtils.writeStringToFile(stampFile(archive),
+            UNVERIFIED + " " + archive.length() + " " + archive.lastModified(), "UTF-8");
+    }
+
+    /**
+     * @return the checksum the archive was verified against, or null if it has not been verified or has
+     * changed since.
+     */
+    static Checksum readStamp(File archive) {
+        String[] fields = readStampFields(archive);
+        if (fields == null || fields.length != 4) {
+            return null;
+        }
+        try {
+            return fromHex(fields[0], fields[1]);
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Invalid checksum stamp {}", stampFile(archive), e);
+            return null;
+        }
+    }
+
+    /**
+     * A cached archive can be used as is if it is unchanged since it was verified, or since it was downloaded
+     * if there was nothing to verify it against. An archive without a stamp, like one that a build before
+     * stamps left behind, or one from a Maven repository, has to be verified with
+     * {@link #verifyUnstamped(File, Checksum)} first.
+     */
+    static boolean isIntact(File archive) {
+        return readStampFields(archive) != null;
+    }
+
+    /**
+     * Verifies a cached archive that has no stamp against its published checksum, and stamps it if it matches.
+     *
+     * @param checksum the published checksum, or null if there is none
+     * @return whether the archive can be used; if not, it has to be downloaded again
+     */
+    static boolean verifyUnstamped(File archive, Checksum checksum) {
+        if (checksum == null || !archive.isFile() || hasStamp(archive)) {
+            return false;
+        }
+        MessageDigest digest = checksum.newDigest();
+        try (InputStream in = new FileInputStream(archive)) {
+            byte[] buffer = new byte[65536];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+            if (!checksum.matches(digest.digest())) {
+                LOGGER.warn("{} does not match its published checksum {}", archive, checksum);
+                return false;
+            }
+            checksum.writeStamp(archive);
+        } catch (IOException e) {
+            LOGGER.warn("Could not verify {}: {}", archive, e.getMessage());
+            return false;
+        }
+        LOGGER.info("Verified {} checksum of {}", checksum.getAlgorithm(), archive);
+        return true;
+    }
+
+    /**
+     * @return the fields of the stamp, or null if there is none or the archive has changed since
+     */
+    private static String[] readStampFields(File archive) {
+        File stamp = stampFile(archive);
+        if (!stamp.isFile()) {
+            return null;
+        }
+        try {
+            String[] fields = FileUtils.readFileToString(stamp, "UTF-8").trim().split(" ");
+            int size = fields.length - 2;
+            if ((fields.length == 4 || (fields.length == 3 && UNVERIFIED.equals(fields[0])))
+                && Long.parseLong(fields[size]) == archive.length()
+                && Long.parseLong(fields[size + 1]) == archive.lastModified()) {
+                return fields;
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not read checksum stamp {}", stamp, e);
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Invalid checksum stamp {}", stamp, e);
+        }
+        return null;
+    }
+
+    static boolean hasStamp(File archive) {
+        return stampFile(archive).exists();
+    }
+
+    static void deleteStamp(File archive) {
+        stampFile(archive).delete();
+    }
+
+    private static File stampFile(File archive) {
+        return new File(archive.getPath() + STAMP_SUFFIX);
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Looks up the published checksums of node and npm archives.
+ */
+final class Checksums {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Checksums.class);
+
+    private static final String NODE_CHECKSUMS_FILE = "SHASUMS256.txt";
+
+    private static final String NPM_ARCHIVE_PATH = "-/";
+
+    private Checksums() {
+    }
+
+    /**
+     * Reads the checksum of a node download from the SHASUMS256.txt that nodejs.org publishes next to every
+     * release.
+     *
+     * @param downloadFilename path of the download relative to the download root, as returned by
+     *                         {@link Platform#getNodeDownloadFilename(String, boolean)}
+     * @return the checksum, or null if none is published for the download
+     */
+    static Checksum forNodeDownload(FileDownloader fileDownloader, List<String> nodeDownloadRoots,
+                                    String nodeVersion, String downloadFilename, String userName,
+                                    String password) {
+        List<String> checksumsUrls =
+            Utils.downloadUrls(nodeDownloadRoots, nodeVersion + "/" + NODE_CHECKSUMS_FILE);
+        String checksumsUrl = checksumsUrls.get(0);
+        String name = downloadFilename.substring(downloadFilename.indexOf('/') + 1);
+        try {
+            for (String line : fetch(fileDownloader, checksumsUrls, userName, password).split("\n")) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length == 2 && fields[1].equals(name)) {
+                    return Checksum.sha256(fields[0]);
+                }
+            }
+            LOGGER.warn("{} does not list {}, the download will not be verified", checksumsUrl, name);
+        } catch (DownloadException e) {
+            LOGGER.warn("Could not download {}, the download will not be verified: {}", checksumsUrl,
+                e.getMessage());
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid checksum in {}, the download will not be verified: {}", checksumsUrl,
+                e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Reads the {@code dist.integrity} (or the older {@code dist.shasum}) of an npm release from the
+     * registry. Only works for download roots that follow the registry layout, like the default
+     * {@link NPMInstaller#DEFAULT_NPM_DOWNLOAD_ROOT}.
+     *
+     * @return the checksum, or null if it can't be found
+     */
+    static Checksum forNpmDownload(FileDownloader fileDownloader, List<String> npmDownloadRoots,
+                                   String npmVersion, String userName, String password) {
+        List<String> metadataUrls = new ArrayList<String>();
+        for (String npmDownloadRoot : npmDownloadRoots) {
+            if (npmDownloadRoot.endsWith(NPM_ARCHIVE_PATH)) {
+                metadataUrls.add(npmDownloadRoot.substring(0, npmDownloadRoot.length() - NPM_ARCHIVE_PATH.length())
+                    + npmVersion);
+            }
+        }
+        if (metadataUrls.isEmpty()) {
+            LOGGER.info("{} is not an npm registry, the download will not be verified", npmDownloadRoots.get(0));
+            return null;
+        }
+        String metadataUrl = metadataUrls.get(0);
+        try {
+            JsonNode dist = new ObjectMapper()
+                .readTree(fetch(fileDownloader, metadataUrls, userName, password))
+                .path("dist");
+            if (dist.path("integrity").isTextual()) {
+                Checksum checksum = Checksum.fromIntegrity(dist.get("integrity").getTextValue());
+                if (checksum != null) {
+                    return checksum;
+                }
+            }
+            if (dist.path("shasum").isTextual()) {
+                return Checksum.sha1(dist.get("shasum").getTextValue());
+            }
+            LOGGER.warn("{} has no checksum, the download will not be verified", metadataUrl);
+        } catch (DownloadException e) {
+            LOGGER.warn("Could not download {}, the download will not be verified: {}", metadataUrl,
+                e.getMessage());
+        } catch (IOException e) {
+            LOGGER.warn("Could not read {}, the download will not be verified: {}", metadataUrl, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid checksum in {}, the download will not be verified: {}", metadataUrl,
+                e.getMessage());
+        }
+        return null;
+    }
+
+    private static String fetch(FileDownloader fileDownloader, List<String> urls, String userName,
+                                String password) throws DownloadException {
+        File file = null;
+        try {
+            file = File.createTempFile("frontend", ".txt");
+            fileDownloader.download(urls, file.getPath(), userName, password, null);
+            return FileUtils.readFileToString(file, "UTF-8");
+        } catch (IOException e) {
+            throw new DownloadException("Could not read " + urls.get(0), e);
+        } finally {
+            if (file != null) {
+                file.delete();
+                Checksum.deleteStamp(file);
+            }
+        }
+    }
+}
@@ -2,7 +2,7 @@ package com.github.eirslett.maven.plugins.frontend.lib;
 
 import java.io.File;
 
-public class DirectoryCacheResolver implements CacheResolver {
+public class DirectoryCacheResolver implements EvictingCacheResolver {
 
   private final File cacheDirectory;
 
@@ -16,6 +16,17 @@ public class DirectoryCacheResolver implements CacheResolver {
       cacheDirectory.mkdirs();
     }
 
+    File archive = new File(cacheDirectory, filename(cacheDescriptor));
+    CacheEviction.touch(archive);
+    return archive;
+  }
+
+  @Override
+  public void evict(long maxBytes) {
+    CacheEviction.evict(maxBytes, cacheDirectory);
+  }
+
+  static String filename(CacheDescriptor cacheDescriptor) {
     StringBuilder filename = new StringBuilder()
         .append(cacheDescriptor.getName())
         .append("-")
@@ -24,7 +35,7 @@ public class DirectoryCacheResolver implements CacheResolver {
       filename.append("-").append(cacheDescriptor.getClassifier());
     }
     filename.append(".").append(cacheDescriptor.getExtension());
-    return new File(cacheDirectory, filename.toString());
+    return filename.toString();
   }
 
 }
@@ -0,0 +1,265 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+
+/**
+ * Options for how node, npm and yarn archives are downloaded and unpacked.
+ */
+public final class DownloadConfig {
+
+    /**
+     * The HTTP client that downloads are made with. Both speak HTTP/1.1 only; HttpDownloadBenchmark in the tests
+     * compares them against a mirror.
+     */
+    public enum HttpBackend {
+        /** Apache HttpClient with a connection pool shared by the whole build */
+        HTTPCLIENT,
+        /** The JDK's own HttpURLConnection, with the JDK's keep-alive cache instead of a pool of its own */
+        JDK
+    }
+
+    /**
+     * The kind of node archive to download on Linux and Mac. Windows always uses zip archives.
+     */
+    public enum ArchiveFormat {
+        /** Available for every node version */
+        TAR_GZ("tar.gz"),
+        /** About a third smaller; versions without one fall back to tar.gz */
+        TAR_XZ("tar.xz");
+
+        private final String extension;
+
+        ArchiveFormat(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /**
+     * What unpacks tar.gz, tar.xz and zip archives.
+     */
+    public enum ExtractorBackend {
+        /**
+         * Picks the fastest of the others that is available, by unpacking a small archive with each of them once
+         * per build
+         */
+        AUTO,
+        /** commons-compress, which works everywhere; the default */
+        JAVA,
+        /** The JDK's GZIPInputStream, which decompresses with the native zlib */
+        JDK_GZIP,
+        /** The system's tar and unzip commands, where they are installed */
+        SYSTEM
+    }
+
+    public static final int DEFAULT_SEGMENTS = 1;
+
+    public static final long DEFAULT_MIN_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    public static final long DEFAULT_HEDGE_DELAY = 3000;
+
+    public static final int DEFAULT_MAX_DOWNLOADS_PER_HOST = 2;
+
+    public static final int DEFAULT_TOOLCHAIN_RETENTION_DAYS = 30;
+
+    private int segments = DEFAULT_SEGMENTS;
+
+    private long minSegmentSize = DEFAULT_MIN_SEGMENT_SIZE;
+
+    private long hedgeDelay = DEFAULT_HEDGE_DELAY;
+
+    private boolean streamingExtraction;
+
+    private HttpBackend httpBackend = HttpBackend.HTTPCLIENT;
+
+    private int maxDownloadsPerHost = DEFAULT_MAX_DOWNLOADS_PER_HOST;
+
+    private long maxBandwidth;
+
+    private boolean offline;
+
+    private int extractionThreads = 1;
+
+    private ArchiveFormat archiveFormat = ArchiveFormat.TAR_GZ;
+
+    private ExtractorBackend extractorBackend = ExtractorBackend.JAVA;
+
+    private File toolchainStore;
+
+    private int toolchainRetentionDays = DEFAULT_TOOLCHAIN_RETENTION_DAYS;
+
+    private File stagingDirectory;
+
+    /**
+     * Number of byte ranges that are fetched in parallel for one archive. 1 downloads every archive with a
+     * single request.
+     */
+    public DownloadConfig setSegments(int segments) {
+        this.segments = Math.max(1, segments);
+        return this;
+    }
+
+    /**
+     * Smallest number of bytes a segment may have; smaller archives are split into fewer segments.
+     */
+    public DownloadConfig setMinSegmentSize(long minSegmentSize) {
+        this.minSegmentSize = Math.max(1, minSegmentSize);
+        return this;
+    }
+
+    /**
+     * Milliseconds to wait for a mirror to respond before the same request is also sent to the next mirror;
+     * whichever responds first is used. 0 or less only moves on to the next mirror when one fails.
+     */
+    public DownloadConfig setHedgeDelay(long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+        return this;
+    }
+
+    /**
+     * Whether tar.gz archives are extracted while they are being downloaded, instead of after the download.
+     * Segmented downloads are not used for archives that are extracted this way.
+     */
+    public DownloadConfig setStreamingExtraction(boolean streamingExtraction) {
+        this.streamingExtraction = streamingExtraction;
+        return this;
+    }
+
+    public DownloadConfig setHttpBackend(HttpBackend httpBackend) {
+        this.httpBackend = httpBackend != null ? httpBackend : HttpBackend.HTTPCLIENT;
+        return this;
+    }
+
+    /**
+     * Number of archives that are downloaded from the same host at the same time, across all modules of a
+     * parallel build. 0 or less does not limit them.
+     */
+    public DownloadConfig setMaxDownloadsPerHost(int maxDownloadsPerHost) {
+        this.maxDownloadsPerHost = maxDownloadsPerHost;
+        return this;
+    }
+
+    /**
+     * Bytes per second that all downloads of the build may transfer together. 0 or less does not limit them.
+     */
+    public DownloadConfig setMaxBandwidth(long maxBandwidth) {
+        this.maxBandwidth = maxBandwidth;
+        return this;
+    }
+
+    /**
+     * Whether archives may only come from the cache. Installers then fail right away when an archive is
+     * missing, instead of trying to reach the download servers.
+     */
+    public DownloadConfig setOffline(boolean offline) {
+        this.offline = offline;
+        return this;
+    }
+
+    /**
+     * Number of threads that write the files of an archive while it is unpacked. 1 unpacks on the thread of
+     * the installer.
+     */
+    public DownloadConfig setExtractionThreads(int extractionThreads) {
+        this.extractionThreads = Math.max(1, extractionThreads);
+        return this;
+    }
+
+    public DownloadConfig setArchiveFormat(ArchiveFormat archiveFormat) {
+        this.archiveFormat = archiveFormat != null ? archiveFormat : ArchiveFormat.TAR_GZ;
+        return this;
+    }
+
+    /**
+     * Archives that a backend fails to unpack are unpacked again with commons-compress.
+     */
+    public DownloadConfig setExtractorBackend(ExtractorBackend extractorBackend) {
+        this.extractorBackend = extractorBackend != null ? extractorBackend : ExtractorBackend.JAVA;
+        return this;
+    }
+
+    /**
+     * Directory that node, npm and yarn are unpacked into once per machine, and linked into the install
+     * directories from. Null unpacks them into every install directory.
+     */
+    public DownloadConfig setToolchainStore(File toolchainStore) {
+        this.toolchainStore = toolchainStore;
+        return this;
+    }
+
+    /**
+     * Days after their last use that toolchains are deleted from the store. 0 or less keeps them.
+     */
+    public DownloadConfig setToolchainRetentionDays(int toolchainRetentionDays) {
+        this.toolchainRetentionDays = toolchainRetentionDays;
+        return this;
+    }
+
+    /**
+     * Directory that installs are unpacked into before they are moved into the install directory, like a
+     * RAM disk. Null unpacks them next to the install directory.
+     */
+    public DownloadConfig setStagingDirectory(File stagingDirectory) {
+        this.stagingDirectory = stagingDirectory;
+        return this;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public long getMinSegmentSize() {
+        return minSegmentSize;
+    }
+
+    public long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    public boolean isStreamingExtraction() {
+        return streamingExtraction;
+    }
+
+    public HttpBackend getHttpBackend() {
+        return httpBackend;
+    }
+
+    public int getMaxDownloadsPerHost() {
+        return maxDownloadsPerHost;
+    }
+
+    public long getMaxBandwidth() {
+        return maxBandwidth;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    public int getExtractionThreads() {
+        return extractionThreads;
+    }
+
+    public ArchiveFormat getArchiveFormat() {
+        return archiveFormat;
+    }
+
+    public ExtractorBackend getExtractorBackend() {
+        return extractorBackend;
+    }
+
+    public File getToolchainStore() {
+        return toolchainStore;
+    }
+
+    public int getToolchainRetentionDays() {
+        return toolchainRetentionDays;
+    }
+
+    public File getStagingDirectory() {
+        return stagingDirectory;
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the downloads of a build: how many run at the same time against one host, and how many bytes per
+ * second all of them may transfer together. Downloads that wait for a slot are started by priority, and in
+ * the order they arrived within the same priority.
+ */
+final class DownloadScheduler {
+
+    /**
+     * The order in which waiting downloads are started. Downloads that more mojos depend on go first.
+     */
+    enum Priority {
+        /** Node itself, which every later install and execution needs */
+        NODE,
+        /** npm and yarn, and anything else */
+        PACKAGE_MANAGER
+    }
+
+    private final Map<String, Integer> active = new HashMap<String, Integer>();
+
+    private final List<Waiter> waiting = new ArrayList<Waiter>();
+
+    private long sequence;
+
+    // Time at which the shared bandwidth is free again
+    private long bandwidthFreeAtNanos = System.nanoTime();
+
+    /**
+     * Waits until fewer than {@code maxPerHost} downloads from the host are running and no download with a
+     * higher priority, or the same priority that arrived earlier, is waiting for the host.
+     *
+     * @param maxPerHost 0 or less for no limit
+     */
+    synchronized Slot acquire(String host, Priority priority, int maxPerHost) throws InterruptedException {
+        final long start = System.currentTimeMillis();
+        if (maxPerHost > 0) {
+            final Waiter waiter = new Waiter(host, priority, this.sequence++);
+            this.waiting.add(waiter);
+            try {
+                while (count(host) >= maxPerHost || isQueuedBehind(waiter)) {
+                    wait();
+                }
+            } finally {
+                this.waiting.remove(waiter);
+                notifyAll();
+            }
+        }
+        this.active.put(host, count(host) + 1);
+        return new Slot(host, System.currentTimeMillis() - start);
+    }
+
+    private synchronized void release(String host) {
+        int count = count(host) - 1;
+        if (count > 0) {
+            this.active.put(host, count);
+        } else {
+            this.active.remove(host);
+        }
+        notifyAll();
+    }
+
+    private int count(String host) {
+        Integer count = this.active.get(host);
+        return count != null ? count : 0;
+    }
+
+    private boolean isQueuedBehind(Waiter waiter) {
+        for (Waiter other : this.waiting) {
+            if (other != waiter && other.host.equals(waiter.host) && other.isBefore(waiter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Blocks as long as needed to keep all downloads together at or below the given rate.
+     *
+     * @param bytesPerSecond 0 or less for no limit
+     */
+    void throttle(long bytes, long bytesPerSecond) throws InterruptedIOException {
+        if (bytesPerSecond <= 0 || bytes <= 0) {
+            return;
+        }
+        final long delayNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (this.bandwidthFreeAtNanos < now) {
+                this.bandwidthFreeAtNanos = now;
+            }
+            delayNanos = this.bandwidthFreeAtNanos - now;
+            this.bandwidthFreeAtNanos += TimeUnit.SECONDS.toNanos(bytes) / bytesPerSecond;
+        }
+        if (delayNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delayNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling the download");
+            }
+        }
+    }
+
+    /**
+     * A running download. Release it when the download is over.
+     */
+    final class Slot {
+
+        private final String host;
+
+        private final long waitedMillis;
+
+        private final long startedMillis = System.currentTimeMillis();
+
+        private boolean released;
+
+        private Slot(String host, long waitedMillis) {
+            this.host = host;
+            this.waitedMillis = waitedMillis;
+        }
+
+        long getWaitedMillis() {
+            return this.waitedMillis;
+        }
+
+        long getStartedMillis() {
+            return this.startedMillis;
+        }
+
+        void release() {
+            if (!this.released) {
+                this.released = true;
+                DownloadScheduler.this.release(this.host);
+            }
+        }
+    }
+
+    private static final class Waiter {
+
+        private final String host;
+
+        private final Priority priority;
+
+        private final long sequence;
+
+        private Waiter(String host, Priority priority, long sequence) {
+            this.host = host;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        private boolean isBefore(Waiter other) {
+            int byPriority = this.priority.compareTo(other.priority);
+            return byPriority < 0 || (byPriority == 0 && this.sequence < other.sequence);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.auth.ChallengeState;
+import org.apache.http.client.AuthCache;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Network resources shared by every download in a build: one pooled HTTP client (keep-alive connections,
+ * a single SSL context so TLS sessions are resumed) and an auth cache that lets proxy and server
+ * credentials be sent preemptively once a host is known to need them. It also keeps track of how the
+ * download mirrors perform, so the fastest one is tried first, and schedules the downloads of parallel
+ * builds so they share hosts and bandwidth. The requests to the mirrors and the segments of the downloads run
+ * on one thread pool.
+ *
+ * The session is meant to live as long as the build. Close it when the build ends to release the pooled
+ * connections and threads. The pool allows {@value #MAX_CONNECTIONS_PER_ROUTE} connections to a host, or more if the
+ * downloaders need them for their segments, see {@link #reserveConnectionsPerRoute}.
+ */
+public final class DownloadSession implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DownloadSession.class);
+
+    private static final int MAX_CONNECTIONS_TOTAL = 20;
+
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 4;
+
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+    private static final long CONNECTION_TIME_TO_LIVE_SECONDS = 60;
+
+    private final AuthCache authCache = new BasicAuthCache();
+
+    private final MirrorStatistics mirrorStatistics = new MirrorStatistics();
+
+    private final DownloadScheduler downloadScheduler = new DownloadScheduler();
+
+    private PoolingHttpClientConnectionManager connectionManager;
+
+    private CloseableHttpClient httpClient;
+
+    private ExecutorService executor;
+
+    private int maxConnectionsPerRoute = MAX_CONNECTIONS_PER_ROUTE;
+
+    private boolean closed;
+
+    synchronized CloseableHttpClient getHttpClient() {
+        if (this.closed) {
+            throw new IllegalStateException("The download session has already been closed");
+        }
+        if (this.httpClient == null) {
+            Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSystemSocketFactory())
+                .build();
+            this.connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry, null, null, null,
+                CONNECTION_TIME_TO_LIVE_SECONDS, TimeUnit.SECONDS);
+            this.connectionManager.setMaxTotal(Math.max(MAX_CONNECTIONS_TOTAL, this.maxConnectionsPerRoute));
+            this.connectionManager.setDefaultMaxPerRoute(this.maxConnectionsPerRoute);
+            this.connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+            // Connection state is only needed for NTLM; without it connections that were opened with an SSL
+            // client certificate can be handed to the next request as well.
+            this.httpClient = HttpClients.custom()
+                .disableContentCompression()
+                .disableConnectionState()
+                .useSystemProperties()
+                .setConnectionManager(this.connectionManager)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .build();
+            LOGGER.debug("Created pooled HTTP client for downloads");
+        }
+        return this.httpClient;
+    }
+
+    /**
+     * The threads that send the requests to the mirrors and download the segments. They are created as needed
+     * and kept for a minute, so the downloads of a build reuse them.
+     */
+    synchronized ExecutorService getExecutor() {
+        if (this.closed) {
+            throw new IllegalStateException("The download session has already been closed");
+        }
+        if (this.executor == null) {
+            this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "frontend-download-" + this.count.incrementAndGet());
+                    // A session that is never closed must not keep the JVM alive
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.executor;
+    }
+
+    /**
+     * Makes room in the pool for the given number of connections to one host, like the segments of the
+     * segmented downloads that may run against it at the same time. Without it, the segments beyond the pool's
+     * limit would only wait for a connection instead of running in parallel.
+     */
+    synchronized void reserveConnectionsPerRoute(int connections) {
+        if (connections <= this.maxConnectionsPerRoute) {
+            return;
+        }
+        this.maxConnectionsPerRoute = connections;
+        if (this.connectionManager != null) {
+            this.connectionManager.setMaxTotal(Math.max(this.connectionManager.getMaxTotal(), connections));
+            this.connectionManager.setDefaultMaxPerRoute(connections);
+        }
+    }
+
+    synchronized int getMaxConnectionsPerRoute() {
+        return this.maxConnectionsPerRoute;
+    }
+
+    /**
+     * Registers basic authentication for the given host so the credentials are sent with the first request
+     * instead of waiting for a 401 or 407 challenge.
+     */
+    @SuppressWarnings("deprecation")
+    void authenticatePreemptively(HttpHost host, boolean proxy) {
+        if (this.authCache.get(host) == null) {
+            this.authCache.put(host, new BasicScheme(proxy ? ChallengeState.PROXY : ChallengeState.TARGET));
+        }
+    }
+
+    AuthCache getAuthCache() {
+        return this.authCache;
+    }
+
+    MirrorStatistics getMirrorStatistics() {
+        return this.mirrorStatistics;
+    }
+
+    DownloadScheduler getDownloadScheduler() {
+        return this.downloadScheduler;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.mirrorStatistics.logSummary();
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+            this.executor = null;
+        }
+        if (this.httpClient != null) {
+            LOGGER.debug("Closing pooled HTTP client for downloads");
+            this.httpClient.close();
+            this.httpClient = null;
+            this.connectionManager = null;
+        }
+    }
+}
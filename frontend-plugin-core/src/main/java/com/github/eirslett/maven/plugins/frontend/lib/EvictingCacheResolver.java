@@ -0,0 +1,13 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+/**
+ * A cache that can be kept under a size by deleting the archives that were resolved least recently.
+ */
+public interface EvictingCacheResolver extends CacheResolver {
+
+  /**
+   * Deletes the least recently resolved archives until the cache takes at most maxBytes, leaving the ones
+   * that other builds are using.
+   */
+  void evict(long maxBytes);
+}
@@ -1,30 +1,41 @@
 package com.github.eirslett.maven.plugins.frontend.lib;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.AuthCache;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.BasicAuthCache;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.http.HttpHeaders;
 import org.codehaus.plexus.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,37 +52,164 @@ final class DownloadException extends Exception {
 }
 
 interface FileDownloader {
-    void download(String downloadUrl, String destination, String userName, String password) throws DownloadException;
+    /**
+     * @param checksum the expected checksum of the download, or null if it is not known. A download that
+     *                 does not match it is fetched once more before giving up.
+     */
+    void download(String downloadUrl, String destination, String userName, String password, Checksum checksum)
+        throws DownloadException;
+
+    /**
+     * Downloads one file that is available from several mirrors.
+     *
+     * @param downloadUrls the URLs of the file on each mirror, in order of preference
+     */
+    void download(List<String> downloadUrls, String destination, String userName, String password,
+                  Checksum checksum) throws DownloadException;
+
+    /**
+     * Downloads one file and writes every byte to {@code tee} as it arrives, exactly once and in order. If
+     * that cannot be done, because the download has to start over or does not match the checksum, the
+     * download fails; a later download without a tee resumes from what has been written so far.
+     *
+     * @param tee receives a copy of the file while it is downloaded; it is not closed
+     */
+    void download(List<String> downloadUrls, String destination, String userName, String password,
+                  Checksum checksum, OutputStream tee) throws DownloadException;
+}
+
+/**
+ * Tells the cache about every file that was downloaded into it.
+ */
+final class PublishingFileDownloader implements FileDownloader {
+
+    private final FileDownloader delegate;
+
+    private final PublishingCacheResolver cacheResolver;
+
+    PublishingFileDownloader(FileDownloader delegate, PublishingCacheResolver cacheResolver) {
+        this.delegate = delegate;
+        this.cacheResolver = cacheResolver;
+    }
+
+    @Override
+    public void download(String downloadUrl, String destination, String userName, String password,
+                         Checksum checksum) throws DownloadException {
+        this.delegate.download(downloadUrl, destination, userName, password, checksum);
+        this.cacheResolver.downloaded(new File(destination));
+    }
+
+    @Override
+    public void download(List<String> downloadUrls, String destination, String userName, String password,
+                         Checksum checksum) throws DownloadException {
+        this.delegate.download(downloadUrls, destination, userName, password, checksum);
+        this.cacheResolver.downloaded(new File(destination));
+    }
+
+    @Override
+    public void download(List<String> downloadUrls, String destination, String userName, String password,
+                         Checksum checksum, OutputStream tee) throws DownloadException {
+        this.delegate.download(downloadUrls, destination, userName, password, checksum, tee);
+        this.cacheResolver.downloaded(new File(destination));
+    }
 }
 
 final class DefaultFileDownloader implements FileDownloader {
     private static final Logger LOGGER = LoggerFactory.getLogger(FileDownloader.class);
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static final String PART_SUFFIX = ".part";
+
+    static final String VALIDATOR_SUFFIX = ".validator";
+
+    private static final int MAX_ATTEMPTS = 3;
+
     private final ProxyConfig proxyConfig;
 
-    public DefaultFileDownloader(ProxyConfig proxyConfig){
+    private final DownloadConfig downloadConfig;
+
+    private final DownloadSession downloadSession;
+
+    private final DownloadScheduler.Priority priority;
+
+    private final HttpTransport transport;
+
+    public DefaultFileDownloader(ProxyConfig proxyConfig, DownloadConfig downloadConfig, DownloadSession downloadSession,
+                                 DownloadScheduler.Priority priority){
         this.proxyConfig = proxyConfig;
+        this.downloadConfig = downloadConfig;
+        this.downloadSession = downloadSession;
+        this.priority = priority;
+        if (downloadConfig.getHttpBackend() == DownloadConfig.HttpBackend.JDK) {
+            this.transport = new JdkHttpTransport(proxyConfig);
+        } else {
+            this.transport = new ApacheHttpTransport(proxyConfig, downloadSession);
+            // Every download that may run against a host at the same time can be segmented
+            downloadSession.reserveConnectionsPerRoute(
+                downloadConfig.getSegments() * Math.max(1, downloadConfig.getMaxDownloadsPerHost()));
+        }
+    }
+
+    public void download(String downloadUrl, String destination, String userName, String password,
+                         Checksum checksum) throws DownloadException {
+        download(Collections.singletonList(downloadUrl), destination, userName, password, checksum);
     }
 
-    public void download(String downloadUrl, String destination, String userName, String password) throws DownloadException {
-        String fixedDownloadUrl = downloadUrl;
+    public void download(List<String> downloadUrls, String destination, String userName, String password,
+                         Checksum checksum) throws DownloadException {
+        download(downloadUrls, destination, userName, password, checksum, null);
+    }
+
+    public void download(List<String> downloadUrls, String destination, String userName, String password,
+                         Checksum checksum, OutputStream tee) throws DownloadException {
+        final List<String> fixedDownloadUrls = new ArrayList<String>(downloadUrls.size());
+        for (String downloadUrl : downloadUrls) {
+            fixedDownloadUrls.add(FilenameUtils.separatorsToUnix(downloadUrl));
+        }
+        // Error messages name the preferred mirror, the others are mentioned in the log
+        String fixedDownloadUrl = fixedDownloadUrls.get(0);
+        for (String url : fixedDownloadUrls) {
+            this.transport.checkSupported(url);
+        }
         try {
-            fixedDownloadUrl = FilenameUtils.separatorsToUnix(fixedDownloadUrl);
             URI downloadURI = new URI(fixedDownloadUrl);
-            if ("file".equalsIgnoreCase(downloadURI.getScheme())) {
-                FileUtils.copyFile(new File(downloadURI), new File(destination));
+            final File destinationFile = new File(destination);
+            final File partFile = new File(destination + PART_SUFFIX);
+            new File(FilenameUtils.getFullPathNoEndSeparator(destination)).mkdirs();
+            if (!"file".equalsIgnoreCase(downloadURI.getScheme())) {
+                Proxy proxy = proxyConfig.getProxyForUrl(fixedDownloadUrl);
+                if (proxy != null) {
+                    LOGGER.info("Downloading via proxy " + proxy.toString());
+                } else {
+                    LOGGER.info("No proxy was configured, downloading directly");
+                }
+                if (StringUtils.isNotEmpty(userName) && StringUtils.isNotEmpty(password)) {
+                    LOGGER.info("Using credentials (" + userName + ") from settings.xml");
+                }
             }
-            else {
-                CloseableHttpResponse response = execute(fixedDownloadUrl, userName, password);
-                int statusCode = response.getStatusLine().getStatusCode();
-                if(statusCode != 200){
-                    throw new DownloadException("Got error code "+ statusCode +" from the server.");
+            CountingOutputStream countingTee = null;
+            if (tee != null) {
+                // The tee has to see the file from its first byte
+                discardPartFile(partFile);
+                countingTee = new CountingOutputStream(tee);
+            }
+            if (!downloadAndVerify(fixedDownloadUrls, partFile, userName, password, checksum, countingTee)) {
+                if (tee != null) {
+                    throw new DownloadException("The download of " + fixedDownloadUrl
+                        + " does not match its published checksum " + checksum);
+                }
+                LOGGER.warn("Downloading {} again", fixedDownloadUrl);
+                if (!downloadAndVerify(fixedDownloadUrls, partFile, userName, password, checksum, null)) {
+                    throw new DownloadException("The download of " + fixedDownloadUrl
+                        + " does not match its published checksum " + checksum);
                 }
-                new File(FilenameUtils.getFullPathNoEndSeparator(destination)).mkdirs();
-                ReadableByteChannel rbc = Channels.newChannel(response.getEntity().getContent());
-                FileOutputStream fos = new FileOutputStream(destination);
-                fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
-                fos.close();
+            }
+            moveIntoPlace(partFile, destinationFile);
+            if (checksum != null) {
+                checksum.writeStamp(destinationFile);
+            } else {
+                Checksum.writeUnverifiedStamp(destinationFile);
             }
         } catch (IOException e) {
             throw new DownloadException("Could not download "+fixedDownloadUrl, e);
@@ -81,78 +219,657 @@ final class DefaultFileDownloader implements FileDownloader {
         }
     }
 
-    private CloseableHttpResponse execute(String requestUrl, String userName, String password) throws IOException {
-        CloseableHttpResponse response;
-        Proxy proxy = proxyConfig.getProxyForUrl(requestUrl);
-        if (proxy != null) {
-            LOGGER.info("Downloading via proxy " + proxy.toString());
-            return executeViaProxy(proxy, requestUrl);
+    /**
+     * Waits until a download from the mirror may start, so parallel builds don't overload a host.
+     */
+    private DownloadScheduler.Slot acquireSlot(String downloadUrl) throws InterruptedException {
+        return this.downloadSession.getDownloadScheduler().acquire(String.valueOf(URI.create(downloadUrl).getHost()),
+            this.priority, downloadConfig.getMaxDownloadsPerHost());
+    }
+
+    private static void logTransfer(String downloadUrl, long bytes, DownloadScheduler.Slot slot) {
+        long millis = Math.max(1, System.currentTimeMillis() - slot.getStartedMillis());
+        LOGGER.info("Downloaded {} ({} KB) in {} ms at {} KB/s, after {} ms in the download queue", downloadUrl,
+            bytes / 1024, millis, bytes * 1000 / 1024 / millis, slot.getWaitedMillis());
+    }
+
+    /**
+     * Downloads into the part file, hashing the bytes as they are written.
+     *
+     * @return false if the result does not match the checksum; the part file has been removed then
+     */
+    private boolean downloadAndVerify(List<String> downloadUrls, File partFile, String userName,
+                                      String password, Checksum checksum, CountingOutputStream tee)
+        throws IOException, DownloadException, URISyntaxException {
+        final MessageDigest digest = checksum != null ? checksum.newDigest() : null;
+        final List<String> remoteUrls = new ArrayList<String>(downloadUrls.size());
+        boolean digested = false;
+        if (copyFromLocalMirrors(downloadUrls, partFile, remoteUrls)) {
+            if (tee != null) {
+                InputStream in = new FileInputStream(partFile);
+                try {
+                    IOUtils.copy(in, tee);
+                } finally {
+                    in.close();
+                }
+            }
         } else {
-            LOGGER.info("No proxy was configured, downloading directly");
-            if (StringUtils.isNotEmpty(userName) && StringUtils.isNotEmpty(password)) {
-                LOGGER.info("Using credentials (" + userName + ") from settings.xml");
-                // Auth target host
-                URL aURL = new URL(requestUrl);
-                HttpClientContext localContext = makeLocalContext(aURL);
-                CredentialsProvider credentialsProvider = makeCredentialsProvider(
-                    aURL.getHost(),
-                    aURL.getPort(),
-                    userName,
-                    password);
-                response = buildHttpClient(credentialsProvider).execute(new HttpGet(requestUrl),localContext);
+            // A part file with a validator was left by an interrupted single stream download and can be
+            // resumed; segmented downloads are only tried for a fresh start, from the fastest mirror.
+            // Segments arrive out of order, so they can't be streamed to a tee.
+            boolean resumable = partFile.exists() && validatorFile(partFile).exists();
+            if (resumable || tee != null || downloadConfig.getSegments() < 2 || !downloadSegmented(
+                    mirrorStatistics().order(remoteUrls).get(0), partFile, userName, password)) {
+                downloadSingleStream(remoteUrls, partFile, userName, password, digest, tee);
+                digested = true;
+            }
+        }
+        if (checksum == null) {
+            return true;
+        }
+        if (!digested) {
+            // Copies and segments are not written in order, so they are hashed afterwards
+            digestFile(partFile, partFile.length(), digest);
+        }
+        byte[] actual = digest.digest();
+        if (!checksum.matches(actual)) {
+            LOGGER.warn("Checksum mismatch for {}: expected {} but got {}", downloadUrls.get(0), checksum.toHex(),
+                Hex.encodeHexString(actual));
+            discardPartFile(partFile);
+            return false;
+        }
+        LOGGER.info("Verified {} checksum of {}", checksum.getAlgorithm(), downloadUrls.get(0));
+        return true;
+    }
+
+    /**
+     * Copies the file from the first local (file:) mirror that has it into the part file. Local mirrors are
+     * tried before the others, which are collected for a download if none of them has the file.
+     *
+     * @return whether the file was copied
+     * @throws IOException if no local mirror has the file and there are no other mirrors
+     */
+    private static boolean copyFromLocalMirrors(List<String> downloadUrls, File partFile, List<String> remoteUrls)
+        throws IOException, URISyntaxException {
+        IOException failure = null;
+        for (String downloadUrl : downloadUrls) {
+            URI downloadURI = new URI(downloadUrl);
+            if (!"file".equalsIgnoreCase(downloadURI.getScheme())) {
+                remoteUrls.add(downloadUrl);
             } else {
-                response = buildHttpClient(null).execute(new HttpGet(requestUrl));
+                try {
+                    FileUtils.copyFile(new File(downloadURI), partFile);
+                    return true;
+                } catch (IOException e) {
+                    LOGGER.warn("Could not copy {} ({}), trying the next mirror", downloadUrl, e.getMessage());
+                    discardPartFile(partFile);
+                    failure = e;
+                }
             }
         }
-        return response;
+        if (remoteUrls.isEmpty()) {
+            throw failure;
+        }
+        return false;
     }
 
-    private CloseableHttpResponse executeViaProxy(Proxy proxy, String requestUrl) throws IOException {
-        final CloseableHttpClient proxyClient;
-        if (proxy.useAuthentication()){
-            proxyClient = buildHttpClient(makeCredentialsProvider(proxy.host,proxy.port,proxy.username,proxy.password));
-        } else {
-            proxyClient = buildHttpClient(null);
+    /**
+     * Downloads into the part file with a single request per attempt. If the connection drops, the next
+     * attempt (or the next build) continues where the previous one stopped, using a range request that is
+     * only honoured if the file on the server has not changed.
+     */
+    private void downloadSingleStream(List<String> downloadUrls, File partFile, String userName, String password,
+                                      MessageDigest digest, CountingOutputStream tee)
+        throws IOException, DownloadException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                downloadSingleStreamAttempt(downloadUrls, partFile, userName, password, digest, tee);
+                return;
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                if (validatorFile(partFile).exists()) {
+                    LOGGER.warn("Download of {} was interrupted after {} bytes ({}), resuming", downloadUrls.get(0),
+                        partFile.length(), e.getMessage());
+                } else {
+                    LOGGER.warn("Download of {} failed ({}), retrying", downloadUrls.get(0), e.getMessage());
+                }
+            }
         }
+    }
 
-        final HttpHost proxyHttpHost = new HttpHost(proxy.host, proxy.port);
+    private void downloadSingleStreamAttempt(List<String> downloadUrls, File partFile, String userName,
+                                             String password, MessageDigest digest, CountingOutputStream tee)
+        throws IOException, DownloadException {
+        final File validatorFile = validatorFile(partFile);
+        final Map<String, String> headers = new HashMap<String, String>();
+        long offset = 0;
+        if (partFile.exists() && validatorFile.exists() && partFile.length() > 0) {
+            offset = partFile.length();
+            // Mirrors serve the same bytes, but the validator only matches on the mirror that produced it;
+            // the others answer with the whole file, which is handled below.
+            headers.put(HttpHeaders.RANGE, "bytes=" + offset + "-");
+            headers.put(HttpHeaders.IF_RANGE, FileUtils.readFileToString(validatorFile, "UTF-8"));
+        }
+        MirrorResponse mirrorResponse = executeOnMirrors(mirrorStatistics().order(downloadUrls), headers,
+            userName, password);
+        final String downloadUrl = mirrorResponse.url;
+        final HttpTransport.Exchange response = mirrorResponse.exchange;
+        try {
+            int statusCode = response.getStatusCode();
+            if (statusCode == 206 && offset > 0 && startsAt(response, offset)) {
+                LOGGER.info("Resuming download of {} at byte {}", downloadUrl, offset);
+            } else if (statusCode == 200) {
+                // Either a fresh download, or the server ignored the range because the file has changed
+                offset = 0;
+            } else {
+                response.discard();
+                if (offset > 0) {
+                    // The part file cannot be continued (e.g. 416), start over with the next attempt
+                    discardPartFile(partFile);
+                    throw new IOException("Could not resume download, got status code " + statusCode);
+                }
+                throw new DownloadException("Got error code "+ statusCode +" from the server.");
+            }
+            if (tee != null && tee.getByteCount() != offset) {
+                throw new DownloadException("Could not continue the download of " + downloadUrl
+                    + ", it has to start over");
+            }
 
-        final RequestConfig requestConfig = RequestConfig.custom().setProxy(proxyHttpHost).build();
+            String validator = getValidator(response);
+            if (validator != null) {
+                FileUtils.writeStringToFile(validatorFile, validator, "UTF-8");
+            } else {
+                validatorFile.delete();
+            }
+
+            if (digest != null) {
+                digest.reset();
+                if (offset > 0) {
+                    digestFile(partFile, offset, digest);
+                }
+            }
+            ReadableByteChannel in = Channels.newChannel(response.getBody());
+            RandomAccessFile out = new RandomAccessFile(partFile, "rw");
+            final long started = System.currentTimeMillis();
+            try {
+                out.setLength(offset);
+                long position = copy(in, out.getChannel(), offset, digest, tee);
+                // Not every client notices a connection that was closed before the announced length
+                long expected = getContentLength(response);
+                if (expected >= 0 && position - offset != expected) {
+                    throw new IOException("Connection closed after " + (position - offset) + " of " + expected
+                        + " bytes");
+                }
+                mirrorStatistics().recordTransfer(downloadUrl, position - offset,
+                    System.currentTimeMillis() - started);
+                logTransfer(downloadUrl, position - offset, mirrorResponse.getSlot());
+            } catch (IOException e) {
+                mirrorStatistics().recordFailure(downloadUrl, e.getMessage());
+                throw e;
+            } finally {
+                out.close();
+            }
+        } finally {
+            // Releases the connection back to the pool; the body has been consumed completely unless
+            // something went wrong, in which case the connection is discarded. Also releases the host slot.
+            mirrorResponse.close();
+        }
+    }
 
-        final HttpGet request = new HttpGet(requestUrl);
-        request.setConfig(requestConfig);
+    private MirrorStatistics mirrorStatistics() {
+        return this.downloadSession.getMirrorStatistics();
+    }
 
-        return proxyClient.execute(request);
+    /**
+     * Sends the request to the first mirror. If it has not responded within the hedge delay, or it fails, the
+     * request is also sent to the next mirror, and so on. The first successful response wins, the requests
+     * that are still running are aborted. Each request waits for a slot of its mirror's host first, which the
+     * winner holds until its response is closed.
+     *
+     * @return the successful response, or the last error response if no mirror succeeded; close it when done
+     * @throws IOException if no mirror responded at all
+     */
+    private MirrorResponse executeOnMirrors(List<String> downloadUrls, Map<String, String> headers,
+                                            String userName, String password) throws IOException {
+        final long hedgeDelay = downloadConfig.getHedgeDelay();
+        final CompletionService<MirrorResponse> completionService =
+            new ExecutorCompletionService<MirrorResponse>(this.downloadSession.getExecutor());
+        final List<MirrorResponse> started = new ArrayList<MirrorResponse>(downloadUrls.size());
+        MirrorResponse winner = null;
+        MirrorResponse lastError = null;
+        try {
+            int running = 0;
+            while (winner == null && (running > 0 || started.size() < downloadUrls.size())) {
+                if (running == 0) {
+                    running++;
+                    submit(completionService, started, downloadUrls.get(started.size()), headers, userName,
+                        password);
+                    continue;
+                }
+                Future<MirrorResponse> done;
+                if (hedgeDelay > 0 && started.size() < downloadUrls.size()) {
+                    done = completionService.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+                    if (done == null) {
+                        String next = downloadUrls.get(started.size());
+                        LOGGER.info("{} has not responded within {} ms, also trying {}",
+                            MirrorStatistics.mirrorName(started.get(started.size() - 1).url), hedgeDelay,
+                            MirrorStatistics.mirrorName(next));
+                        running++;
+                        submit(completionService, started, next, headers, userName, password);
+                        continue;
+                    }
+                } else {
+                    done = completionService.take();
+                }
+                running--;
+                MirrorResponse mirrorResponse = getQuietly(done);
+                if (mirrorResponse.isSuccessful()) {
+                    winner = mirrorResponse;
+                } else {
+                    if (lastError != null) {
+                        lastError.close();
+                    }
+                    // The next mirror may be on the same host
+                    mirrorResponse.releaseSlot();
+                    lastError = mirrorResponse;
+                    if (started.size() < downloadUrls.size()) {
+                        LOGGER.warn("Could not download from {} ({}), trying the next mirror",
+                            MirrorStatistics.mirrorName(mirrorResponse.url), mirrorResponse.describeFailure());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading " + downloadUrls.get(0), e);
+        } finally {
+            for (MirrorResponse mirrorResponse : started) {
+                if (mirrorResponse != winner && mirrorResponse != lastError) {
+                    mirrorResponse.abort();
+                }
+            }
+        }
+        if (winner != null) {
+            if (lastError != null) {
+                lastError.close();
+            }
+            return winner;
+        }
+        if (lastError.responded) {
+            return lastError;
+        }
+        throw lastError.error;
     }
 
-    private CloseableHttpClient buildHttpClient(CredentialsProvider credentialsProvider) {
-    	return HttpClients.custom()
-    			.disableContentCompression()
-    			.useSystemProperties()
-    			.setDefaultCredentialsProvider(credentialsProvider)
-    			.build();
+    private void submit(CompletionService<MirrorResponse> completionService, List<MirrorResponse> started,
+                        String downloadUrl, Map<String, String> headers, final String userName,
+                        final String password) {
+        final MirrorResponse mirrorResponse =
+            new MirrorResponse(downloadUrl, this.transport.open("GET", downloadUrl, headers));
+        started.add(mirrorResponse);
+        mirrorResponse.setFuture(completionService.submit(new Callable<MirrorResponse>() {
+            @Override
+            public MirrorResponse call() {
+                try {
+                    mirrorResponse.setSlot(acquireSlot(mirrorResponse.url));
+                } catch (InterruptedException e) {
+                    mirrorResponse.error = new InterruptedIOException("Aborted while waiting to download "
+                        + mirrorResponse.url);
+                    return mirrorResponse;
+                } catch (IOException e) {
+                    mirrorResponse.error = e;
+                    return mirrorResponse;
+                }
+                final long start = System.currentTimeMillis();
+                try {
+                    mirrorResponse.exchange.execute(userName, password);
+                    mirrorResponse.setResponded();
+                    if (mirrorResponse.isSuccessful()) {
+                        mirrorStatistics().recordResponse(mirrorResponse.url, System.currentTimeMillis() - start);
+                    } else if (mirrorResponse.isServerError()) {
+                        // A mirror that lacks a file (404) is fine, one that is broken is not
+                        mirrorStatistics().recordFailure(mirrorResponse.url, mirrorResponse.describeFailure());
+                    }
+                } catch (IOException e) {
+                    if (!mirrorResponse.isAborted()) {
+                        mirrorStatistics().recordFailure(mirrorResponse.url, e.getMessage());
+                    }
+                    mirrorResponse.error = e;
+                }
+                return mirrorResponse;
+            }
+        }));
     }
 
-    private CredentialsProvider makeCredentialsProvider(String host, int port, String username, String password) {
-        CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-        credentialsProvider.setCredentials(
-                new AuthScope(host, port),
-                new UsernamePasswordCredentials(username, password)
-        );
-        return credentialsProvider;
+    private static MirrorResponse getQuietly(Future<MirrorResponse> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // The task catches everything it expects, so this is a bug
+            throw new IllegalStateException(e.getCause());
+        }
     }
 
-    private HttpClientContext makeLocalContext(URL requestUrl) {
-        // Auth target host
-        HttpHost target = new HttpHost (requestUrl.getHost(), requestUrl.getPort(), requestUrl.getProtocol());
-        // Create AuthCache instance
-        AuthCache authCache = new BasicAuthCache();
-        // Generate BASIC scheme object and add it to the local auth cache
-        BasicScheme basicAuth = new BasicScheme();
-        authCache.put(target, basicAuth);
-        // Add AuthCache to the execution context
-        HttpClientContext localContext = HttpClientContext.create();
-        localContext.setAuthCache(authCache);
-        return localContext;
+    /**
+     * A request that was sent to one mirror. Losing requests are aborted, which also releases a response
+     * that arrives after the race has been decided, and the host slot of the mirror.
+     */
+    private static final class MirrorResponse {
+
+        private final String url;
+
+        private final HttpTransport.Exchange exchange;
+
+        private Future<MirrorResponse> future;
+
+        private DownloadScheduler.Slot slot;
+
+        private boolean responded;
+
+        private IOException error;
+
+        private boolean aborted;
+
+        private MirrorResponse(String url, HttpTransport.Exchange exchange) {
+            this.url = url;
+            this.exchange = exchange;
+        }
+
+        private synchronized void setFuture(Future<MirrorResponse> future) {
+            this.future = future;
+            if (this.aborted) {
+                future.cancel(true);
+            }
+        }
+
+        private synchronized void setSlot(DownloadScheduler.Slot slot) throws IOException {
+            this.slot = slot;
+            if (this.aborted) {
+                slot.release();
+                throw new IOException("Aborted, another mirror responded first");
+            }
+        }
+
+        private synchronized DownloadScheduler.Slot getSlot() {
+            return this.slot;
+        }
+
+        private synchronized void setResponded() throws IOException {
+            if (this.aborted) {
+                this.exchange.close();
+                throw new IOException("Aborted, another mirror responded first");
+            }
+            this.responded = true;
+        }
+
+        private synchronized boolean isAborted() {
+            return this.aborted;
+        }
+
+        private synchronized boolean isSuccessful() {
+            if (!this.responded) {
+                return false;
+            }
+            int statusCode = this.exchange.getStatusCode();
+            return statusCode == 200 || statusCode == 206;
+        }
+
+        private synchronized boolean isServerError() {
+            return this.responded && this.exchange.getStatusCode() >= 500;
+        }
+
+        private synchronized String describeFailure() {
+            if (this.responded) {
+                return "status code " + this.exchange.getStatusCode();
+            }
+            return this.error != null ? this.error.getMessage() : "no response";
+        }
+
+        private synchronized void abort() {
+            this.aborted = true;
+            if (this.future != null) {
+                // Stops the wait for a slot
+                this.future.cancel(true);
+            }
+            this.exchange.abort();
+            close();
+        }
+
+        private synchronized void close() {
+            if (this.responded) {
+                this.exchange.close();
+                this.responded = false;
+            }
+            releaseSlot();
+        }
+
+        private synchronized void releaseSlot() {
+            if (this.slot != null) {
+                this.slot.release();
+            }
+        }
+    }
+
+    private static boolean startsAt(HttpTransport.Exchange response, long offset) {
+        String contentRange = response.getHeader(HttpHeaders.CONTENT_RANGE);
+        return contentRange != null && contentRange.trim().startsWith("bytes " + offset + "-");
+    }
+
+    /**
+     * Publishes a completed download. The rename is atomic where the file system supports it, so other
+     * builds never see a half written archive in the cache.
+     */
+    private static void moveIntoPlace(File partFile, File destination) throws IOException {
+        try {
+            Files.move(partFile.toPath(), destination.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partFile.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        validatorFile(partFile).delete();
+    }
+
+    private static void discardPartFile(File partFile) {
+        partFile.delete();
+        validatorFile(partFile).delete();
+    }
+
+    private static File validatorFile(File partFile) {
+        return new File(partFile.getPath() + VALIDATOR_SUFFIX);
+    }
+
+    /**
+     * Writes everything from the channel into the file, starting at the given position.
+     *
+     * @param digest updated with the bytes written, may be null
+     * @param tee receives a copy of the bytes written, may be null
+     * @return the position after the last byte written
+     */
+    private long copy(ReadableByteChannel in, FileChannel out, long position, MessageDigest digest,
+                      OutputStream tee) throws IOException {
+        final DownloadScheduler scheduler = this.downloadSession.getDownloadScheduler();
+        final long maxBandwidth = downloadConfig.getMaxBandwidth();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (in.read(buffer) != -1) {
+            buffer.flip();
+            scheduler.throttle(buffer.limit(), maxBandwidth);
+            if (digest != null) {
+                digest.update(buffer.array(), 0, buffer.limit());
+            }
+            if (tee != null) {
+                tee.write(buffer.array(), 0, buffer.limit());
+                tee.flush();
+            }
+            while (buffer.hasRemaining()) {
+                position += out.write(buffer, position);
+            }
+            buffer.clear();
+        }
+        return position;
+    }
+
+    /**
+     * Downloads the file as several byte ranges at once, each written straight to its position in a
+     * preallocated file, so there is nothing to join afterwards.
+     *
+     * @return false if the server does not support ranges, the file is too small to split or one of the
+     * segments failed. Nothing is left at the destination then, and the caller should use a single request.
+     */
+    private boolean downloadSegmented(String downloadUrl, File partFile, String userName, String password)
+        throws IOException {
+        final DownloadScheduler.Slot slot;
+        try {
+            slot = acquireSlot(downloadUrl);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to download " + downloadUrl);
+        }
+        try {
+            return downloadSegmented(downloadUrl, partFile, userName, password, slot);
+        } finally {
+            slot.release();
+        }
+    }
+
+    private boolean downloadSegmented(final String downloadUrl, final File partFile, final String userName,
+                                      final String password, DownloadScheduler.Slot slot) throws IOException {
+        final long contentLength;
+        final String validator;
+        HttpTransport.Exchange head =
+            this.transport.open("HEAD", downloadUrl, Collections.<String, String>emptyMap());
+        try {
+            head.execute(userName, password);
+            int statusCode = head.getStatusCode();
+            String acceptRanges = head.getHeader(HttpHeaders.ACCEPT_RANGES);
+            String length = head.getHeader(HttpHeaders.CONTENT_LENGTH);
+            if (statusCode != 200 || acceptRanges == null || !"bytes".equalsIgnoreCase(acceptRanges)
+                || length == null) {
+                LOGGER.debug("{} does not support range requests, using a single connection", downloadUrl);
+                return false;
+            }
+            contentLength = Long.parseLong(length.trim());
+            validator = getValidator(head);
+        } catch (NumberFormatException e) {
+            return false;
+        } finally {
+            head.close();
+        }
+
+        final int segments = (int) Math.min(downloadConfig.getSegments(),
+            contentLength / downloadConfig.getMinSegmentSize());
+        if (segments < 2) {
+            return false;
+        }
+
+        LOGGER.info("Downloading {} bytes in {} segments", contentLength, segments);
+        final long segmentSize = (contentLength + segments - 1) / segments;
+        // Segments are not tracked individually, so an interrupted segmented download has no validator and
+        // will be started over instead of being resumed.
+        discardPartFile(partFile);
+        final RandomAccessFile file = new RandomAccessFile(partFile, "rw");
+        final ExecutorService executor = this.downloadSession.getExecutor();
+        final List<Future<Void>> results = new ArrayList<Future<Void>>(segments);
+        boolean completed = false;
+        try {
+            file.setLength(contentLength);
+            final FileChannel channel = file.getChannel();
+            for (int i = 0; i < segments; i++) {
+                final long start = i * segmentSize;
+                final long end = Math.min(contentLength, start + segmentSize) - 1;
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        downloadRange(downloadUrl, validator, start, end, channel, userName, password);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    LOGGER.warn("Segmented download failed ({}), retrying with a single connection",
+                        e.getCause().getMessage());
+                    return false;
+                }
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading " + downloadUrl, e);
+        } finally {
+            for (Future<Void> result : results) {
+                result.cancel(true);
+            }
+            file.close();
+            if (!completed) {
+                partFile.delete();
+            }
+        }
+        logTransfer(downloadUrl, contentLength, slot);
+        return true;
+    }
+
+    private void downloadRange(String downloadUrl, String validator, long start, long end, FileChannel channel,
+                               String userName, String password) throws IOException, DownloadException {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(HttpHeaders.RANGE, "bytes=" + start + "-" + end);
+        if (validator != null) {
+            // Makes the server answer with the whole file instead of a range if it changed in the meantime
+            headers.put(HttpHeaders.IF_RANGE, validator);
+        }
+        HttpTransport.Exchange response = this.transport.open("GET", downloadUrl, headers);
+        try {
+            response.execute(userName, password);
+            int statusCode = response.getStatusCode();
+            if (statusCode != 206) {
+                response.discard();
+                throw new DownloadException("Got status code " + statusCode + " instead of 206 for bytes "
+                    + start + "-" + end + " of " + downloadUrl);
+            }
+            long position = copy(Channels.newChannel(response.getBody()), channel, start, null, null);
+            if (position != end + 1) {
+                throw new DownloadException("Got " + (position - start) + " bytes instead of " + (end + 1 - start)
+                    + " for bytes " + start + "-" + end + " of " + downloadUrl);
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    private static void digestFile(File file, long length, MessageDigest digest) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = length;
+            int read;
+            while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                digest.update(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the Content-Length of the response, or -1 if it is not known
+     */
+    private static long getContentLength(HttpTransport.Exchange response) {
+        String length = response.getHeader(HttpHeaders.CONTENT_LENGTH);
+        try {
+            return length != null ? Long.parseLong(length.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String getValidator(HttpTransport.Exchange response) {
+        String etag = response.getHeader(HttpHeaders.ETAG);
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return response.getHeader(HttpHeaders.LAST_MODIFIED);
     }
 }
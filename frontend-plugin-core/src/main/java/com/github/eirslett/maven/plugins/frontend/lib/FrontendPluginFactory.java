@@ -1,8 +1,16 @@
 package com.github.eirslett.maven.plugins.frontend.lib;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 
-public final class FrontendPluginFactory {
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the installers and runners. A factory that created its own {@link DownloadSession} closes it in
+ * {@link #close()}; one that was given a session leaves it to the caller.
+ */
+public final class FrontendPluginFactory implements Closeable {
     
     private static final Platform defaultPlatform = Platform.guess();
     private static final String DEFAULT_CACHE_PATH = "cache";
@@ -10,29 +18,104 @@ public final class FrontendPluginFactory {
     private final File workingDirectory;
     private final File installDirectory;
     private final CacheResolver cacheResolver;
+    private final DownloadSession downloadSession;
+    private final boolean ownsDownloadSession;
 
     public FrontendPluginFactory(File workingDirectory, File installDirectory){
         this(workingDirectory, installDirectory, getDefaultCacheResolver(installDirectory));
     }
 
+    /**
+     * The factory has a download session of its own; {@link #close()} it when the installers are done.
+     */
     public FrontendPluginFactory(File workingDirectory, File installDirectory, CacheResolver cacheResolver){
+        this(workingDirectory, installDirectory, cacheResolver, new DownloadSession(), true);
+    }
+
+    /**
+     * @param downloadSession shared by all installers created by this factory; the caller owns it and is
+     *                        responsible for closing it.
+     */
+    public FrontendPluginFactory(File workingDirectory, File installDirectory, CacheResolver cacheResolver,
+                                 DownloadSession downloadSession){
+        this(workingDirectory, installDirectory, cacheResolver, downloadSession, false);
+    }
+
+    private FrontendPluginFactory(File workingDirectory, File installDirectory, CacheResolver cacheResolver,
+                                  DownloadSession downloadSession, boolean ownsDownloadSession){
         this.workingDirectory = workingDirectory;
         this.installDirectory = installDirectory;
         this.cacheResolver = cacheResolver;
+        this.downloadSession = downloadSession;
+        this.ownsDownloadSession = ownsDownloadSession;
     }
 
     public NodeInstaller getNodeInstaller(ProxyConfig proxy) {
-        return new NodeInstaller(getInstallConfig(), new DefaultArchiveExtractor(), new DefaultFileDownloader(proxy));
+        return getNodeInstaller(proxy, new DownloadConfig());
+    }
+
+    public NodeInstaller getNodeInstaller(ProxyConfig proxy, DownloadConfig downloadConfig) {
+        return new NodeInstaller(getInstallConfig(downloadConfig.getArchiveFormat()),
+            getArchiveExtractor(downloadConfig),
+            getFileDownloader(proxy, downloadConfig, DownloadScheduler.Priority.NODE),
+            downloadConfig);
     }
 
     public NPMInstaller getNPMInstaller(ProxyConfig proxy) {
-        return new NPMInstaller(getInstallConfig(), new DefaultArchiveExtractor(), new DefaultFileDownloader(proxy));
+        return getNPMInstaller(proxy, new DownloadConfig());
+    }
+
+    public NPMInstaller getNPMInstaller(ProxyConfig proxy, DownloadConfig downloadConfig) {
+        return new NPMInstaller(getInstallConfig(),
+            getArchiveExtractor(downloadConfig),
+            getFileDownloader(proxy, downloadConfig, DownloadScheduler.Priority.PACKAGE_MANAGER),
+            downloadConfig);
     }
 
     public YarnInstaller getYarnInstaller(ProxyConfig proxy) {
-        return new YarnInstaller(getInstallConfig(), new DefaultArchiveExtractor(), new DefaultFileDownloader(proxy));
+        return getYarnInstaller(proxy, new DownloadConfig());
+    }
+
+    public YarnInstaller getYarnInstaller(ProxyConfig proxy, DownloadConfig downloadConfig) {
+        return new YarnInstaller(getInstallConfig(),
+            getArchiveExtractor(downloadConfig),
+            getFileDownloader(proxy, downloadConfig, DownloadScheduler.Priority.PACKAGE_MANAGER),
+            downloadConfig);
     }
     
+    public Prefetcher getPrefetcher(ProxyConfig proxy, DownloadConfig downloadConfig) {
+        return new Prefetcher(cacheResolver,
+            getFileDownloader(proxy, downloadConfig, DownloadScheduler.Priority.NODE),
+            getFileDownloader(proxy, downloadConfig, DownloadScheduler.Priority.PACKAGE_MANAGER),
+            downloadConfig);
+    }
+
+    /**
+     * Deletes the least recently used archives from the cache until it takes at most maxBytes, if the cache
+     * supports eviction.
+     *
+     * @param maxBytes 0 or less for no limit
+     */
+    public void evictCache(long maxBytes) {
+        if (maxBytes > 0 && cacheResolver instanceof EvictingCacheResolver) {
+            ((EvictingCacheResolver) cacheResolver).evict(maxBytes);
+        }
+    }
+
+    /**
+     * Closes the download session if the factory created it.
+     */
+    @Override
+    public void close() {
+        if (ownsDownloadSession) {
+            try {
+                downloadSession.close();
+            } catch (IOException e) {
+                LoggerFactory.getLogger(FrontendPluginFactory.class).debug("Could not close the download session", e);
+            }
+        }
+    }
+
     public BowerRunner getBowerRunner(ProxyConfig proxy) {
         return new DefaultBowerRunner(getExecutorConfig(), proxy);
     }    
@@ -69,6 +152,19 @@ public final class FrontendPluginFactory {
         return new DefaultWebpackRunner(getExecutorConfig());
     }
 
+    private FileDownloader getFileDownloader(ProxyConfig proxy, DownloadConfig downloadConfig,
+                                             DownloadScheduler.Priority priority) {
+        FileDownloader fileDownloader = new DefaultFileDownloader(proxy, downloadConfig, downloadSession, priority);
+        if (cacheResolver instanceof PublishingCacheResolver) {
+            return new PublishingFileDownloader(fileDownloader, (PublishingCacheResolver) cacheResolver);
+        }
+        return fileDownloader;
+    }
+
+    private ArchiveExtractor getArchiveExtractor(DownloadConfig downloadConfig) {
+        return ArchiveExtractors.create(downloadConfig.getExtractorBackend(), downloadConfig.getExtractionThreads());
+    }
+
     private NodeExecutorConfig getExecutorConfig() {
         return new InstallNodeExecutorConfig(getInstallConfig());
     }
@@ -77,6 +173,11 @@ public final class FrontendPluginFactory {
         return new DefaultInstallConfig(installDirectory, workingDirectory, cacheResolver, defaultPlatform);
     }
 
+    private InstallConfig getInstallConfig(DownloadConfig.ArchiveFormat archiveFormat) {
+        return new DefaultInstallConfig(installDirectory, workingDirectory, cacheResolver,
+            defaultPlatform.withPreferredArchiveExtension(archiveFormat.getExtension()));
+    }
+
     private static final CacheResolver getDefaultCacheResolver(File root) {
         return new DirectoryCacheResolver(new File(root, DEFAULT_CACHE_PATH));
     }
@@ -0,0 +1,350 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.util.EntityUtils;
+import org.codehaus.plexus.util.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.eirslett.maven.plugins.frontend.lib.ProxyConfig.Proxy;
+
+/**
+ * Sends the HTTP requests of a {@link DefaultFileDownloader}. Proxies come from the {@link ProxyConfig} and
+ * both proxy and server credentials are sent preemptively with basic authentication.
+ */
+interface HttpTransport {
+
+    /**
+     * Checks before the download starts that the url can be downloaded with its proxy.
+     */
+    void checkSupported(String url) throws DownloadException;
+
+    /**
+     * Prepares a GET or HEAD request. It is sent by {@link Exchange#execute(String, String)}.
+     */
+    Exchange open(String method, String url, Map<String, String> headers);
+
+    /**
+     * One request and its response.
+     */
+    interface Exchange {
+
+        String getUrl();
+
+        /**
+         * Sends the request and waits for the response headers.
+         */
+        void execute(String userName, String password) throws IOException;
+
+        int getStatusCode();
+
+        /**
+         * @return the first value of the response header, or null if there is none
+         */
+        String getHeader(String name);
+
+        InputStream getBody() throws IOException;
+
+        /**
+         * Reads the rest of the body, so the connection can be used for the next request.
+         */
+        void discard();
+
+        /**
+         * Releases the connection. Unless the body has been read completely, the connection is not reused.
+         */
+        void close();
+
+        /**
+         * Cancels the request from another thread, whether it is still waiting for a response or not.
+         */
+        void abort();
+    }
+}
+
+/**
+ * Apache HttpClient, sharing the pooled connections and auth cache of the {@link DownloadSession}.
+ */
+final class ApacheHttpTransport implements HttpTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ApacheHttpTransport.class);
+
+    private final ProxyConfig proxyConfig;
+
+    private final DownloadSession downloadSession;
+
+    ApacheHttpTransport(ProxyConfig proxyConfig, DownloadSession downloadSession) {
+        this.proxyConfig = proxyConfig;
+        this.downloadSession = downloadSession;
+    }
+
+    @Override
+    public void checkSupported(String url) {
+        // Authenticates to proxies for tunnelled requests too
+    }
+
+    @Override
+    public Exchange open(String method, String url, Map<String, String> headers) {
+        final HttpRequestBase request = "HEAD".equals(method) ? new HttpHead(url) : new HttpGet(url);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.setHeader(header.getKey(), header.getValue());
+        }
+        return new Exchange() {
+
+            private CloseableHttpResponse response;
+
+            @Override
+            public String getUrl() {
+                return request.getURI().toString();
+            }
+
+            @Override
+            public void execute(String userName, String password) throws IOException {
+                this.response = ApacheHttpTransport.this.execute(request, userName, password);
+            }
+
+            @Override
+            public int getStatusCode() {
+                return this.response.getStatusLine().getStatusCode();
+            }
+
+            @Override
+            public String getHeader(String name) {
+                Header header = this.response.getFirstHeader(name);
+                return header != null ? header.getValue() : null;
+            }
+
+            @Override
+            public InputStream getBody() throws IOException {
+                return this.response.getEntity().getContent();
+            }
+
+            @Override
+            public void discard() {
+                if (this.response != null) {
+                    EntityUtils.consumeQuietly(this.response.getEntity());
+                }
+            }
+
+            @Override
+            public void close() {
+                if (this.response != null) {
+                    try {
+                        this.response.close();
+                    } catch (IOException e) {
+                        LOGGER.debug("Could not close the response from {}", getUrl(), e);
+                    }
+                }
+            }
+
+            @Override
+            public void abort() {
+                request.abort();
+            }
+        };
+    }
+
+    private CloseableHttpResponse execute(HttpRequestBase request, String userName, String password) throws IOException {
+        final String requestUrl = request.getURI().toString();
+        final HttpClientContext context = HttpClientContext.create();
+        context.setAuthCache(this.downloadSession.getAuthCache());
+        CredentialsProvider credentialsProvider = null;
+
+        Proxy proxy = proxyConfig.getProxyForUrl(requestUrl);
+        if (proxy != null) {
+            final HttpHost proxyHttpHost = new HttpHost(proxy.host, proxy.port);
+            request.setConfig(RequestConfig.custom().setProxy(proxyHttpHost).build());
+            if (proxy.useAuthentication()) {
+                credentialsProvider = new BasicCredentialsProvider();
+                addCredentials(credentialsProvider, proxy.host, proxy.port, proxy.username, proxy.password);
+                this.downloadSession.authenticatePreemptively(proxyHttpHost, true);
+            }
+        }
+
+        if (StringUtils.isNotEmpty(userName) && StringUtils.isNotEmpty(password)) {
+            // Auth target host
+            URL aURL = new URL(requestUrl);
+            if (credentialsProvider == null) {
+                credentialsProvider = new BasicCredentialsProvider();
+            }
+            addCredentials(credentialsProvider, aURL.getHost(), aURL.getPort(), userName, password);
+            this.downloadSession.authenticatePreemptively(
+                new HttpHost(aURL.getHost(), aURL.getPort(), aURL.getProtocol()), false);
+        }
+
+        if (credentialsProvider != null) {
+            context.setCredentialsProvider(credentialsProvider);
+        }
+        return this.downloadSession.getHttpClient().execute(request, context);
+    }
+
+    private void addCredentials(CredentialsProvider credentialsProvider, String host, int port, String username, String password) {
+        credentialsProvider.setCredentials(
+                new AuthScope(host, port),
+                new UsernamePasswordCredentials(username, password)
+        );
+    }
+}
+
+/**
+ * The JDK's own {@link HttpURLConnection}, which needs no connection pool of its own: the JDK keeps idle
+ * connections alive between requests once a body has been read completely.
+ */
+final class JdkHttpTransport implements HttpTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JdkHttpTransport.class);
+
+    private static final Charset CREDENTIALS_CHARSET = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ProxyConfig proxyConfig;
+
+    JdkHttpTransport(ProxyConfig proxyConfig) {
+        this.proxyConfig = proxyConfig;
+    }
+
+    /**
+     * An https request through a proxy is tunnelled with a CONNECT request, which HttpURLConnection sends
+     * without the Proxy-Authorization header that is set on the connection. It would only authenticate through
+     * a global {@link java.net.Authenticator}, and then not with basic authentication, which the JDK disables for
+     * tunnels by default (jdk.http.auth.tunneling.disabledSchemes).
+     */
+    @Override
+    public void checkSupported(String url) throws DownloadException {
+        if (!url.regionMatches(true, 0, "https:", 0, 6)) {
+            return;
+        }
+        Proxy proxy = this.proxyConfig.getProxyForUrl(url);
+        if (proxy != null && proxy.useAuthentication()) {
+            throw new DownloadException("The JDK download backend cannot authenticate to the proxy " + proxy.id
+                + " for " + url + ", use the HTTPCLIENT download backend for https downloads through it");
+        }
+    }
+
+    @Override
+    public Exchange open(final String method, final String url, final Map<String, String> headers) {
+        return new Exchange() {
+
+            private volatile HttpURLConnection connection;
+
+            private volatile boolean aborted;
+
+            @Override
+            public String getUrl() {
+                return url;
+            }
+
+            @Override
+            public void execute(String userName, String password) throws IOException {
+                Proxy proxy = proxyConfig.getProxyForUrl(url);
+                HttpURLConnection connection = (HttpURLConnection) (proxy != null
+                    ? new URL(url).openConnection(new java.net.Proxy(java.net.Proxy.Type.HTTP,
+                        new InetSocketAddress(proxy.host, proxy.port)))
+                    : new URL(url).openConnection());
+                connection.setRequestMethod(method);
+                connection.setInstanceFollowRedirects(true);
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+                if (proxy != null && proxy.useAuthentication()) {
+                    connection.setRequestProperty("Proxy-Authorization", basic(proxy.username, proxy.password));
+                }
+                if (StringUtils.isNotEmpty(userName) && StringUtils.isNotEmpty(password)) {
+                    connection.setRequestProperty("Authorization", basic(userName, password));
+                }
+                this.connection = connection;
+                if (this.aborted) {
+                    throw new IOException("Aborted");
+                }
+                // Sends the request and reads the status line and headers
+                connection.getResponseCode();
+            }
+
+            @Override
+            public int getStatusCode() {
+                try {
+                    return this.connection.getResponseCode();
+                } catch (IOException e) {
+                    // Only thrown before the response has been read
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public String getHeader(String name) {
+                return this.connection.getHeaderField(name);
+            }
+
+            @Override
+            public InputStream getBody() throws IOException {
+                return this.connection.getResponseCode() >= 400
+                    ? this.connection.getErrorStream()
+                    : this.connection.getInputStream();
+            }
+
+            @Override
+            public void discard() {
+                try {
+                    InputStream body = getBody();
+                    if (body != null) {
+                        byte[] buffer = new byte[BUFFER_SIZE];
+                        while (body.read(buffer) != -1) {
+                            // discard
+                        }
+                        body.close();
+                    }
+                } catch (IOException e) {
+                    LOGGER.debug("Could not read the rest of the response from {}", url, e);
+                }
+            }
+
+            @Override
+            public void close() {
+                try {
+                    InputStream body = this.connection != null ? getBody() : null;
+                    if (body != null) {
+                        // Closing a body that has been read completely keeps the connection alive
+                        body.close();
+                    }
+                } catch (IOException e) {
+                    LOGGER.debug("Could not close the response from {}", url, e);
+                }
+            }
+
+            @Override
+            public void abort() {
+                this.aborted = true;
+                HttpURLConnection connection = this.connection;
+                if (connection != null) {
+                    connection.disconnect();
+                }
+            }
+        };
+    }
+
+    private static String basic(String userName, String password) {
+        return "Basic " + Base64.encodeBase64String((userName + ":" + password).getBytes(CREDENTIALS_CHARSET))
+            .trim();
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serializes the installers of a build that install the same tool into the same install directory, while
+ * installs into other directories, and of other tools, go ahead in parallel. Each tool publishes its own files
+ * into the directory. Installs are spread by the directory's canonical path and the tool over a fixed set of
+ * locks, so the number of locks does not grow with the number of modules; two installs rarely share one. Shared
+ * archives are locked separately, by {@link CacheEntryLock}. The lock is reentrant for the thread that holds
+ * it.
+ */
+final class InstallLock implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstallLock.class);
+
+    private static final int STRIPES = 64;
+
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            LOCKS[i] = new ReentrantLock();
+        }
+    }
+
+    private final ReentrantLock lock;
+
+    private InstallLock(ReentrantLock lock) {
+        this.lock = lock;
+    }
+
+    /**
+     * Blocks until no other thread installs the tool into the directory, and reports how long that took.
+     */
+    static InstallLock acquire(File installDirectory, String tool) {
+        String path;
+        try {
+            path = installDirectory.getCanonicalPath();
+        } catch (IOException e) {
+            path = installDirectory.getAbsolutePath();
+        }
+        ReentrantLock lock = LOCKS[((path + File.pathSeparator + tool).hashCode() & Integer.MAX_VALUE) % STRIPES];
+        if (!lock.tryLock()) {
+            final long start = System.currentTimeMillis();
+            LOGGER.info("Waiting for another module of this build to finish installing {} into {}", tool, path);
+            lock.lock();
+            LOGGER.info("Waited {} ms for the {} install lock on {}", System.currentTimeMillis() - start, tool,
+                path);
+        }
+        return new InstallLock(lock);
+    }
+
+    @Override
+    public void close() {
+        this.lock.unlock();
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records what the installers have put into the node directory: for node, npm and yarn the version, the
+ * verified digest of the archive it came from, and the size and modification time of its key files. Whether a tool is
+ * installed already is then a matter of reading this one small file and looking at a few files, instead of
+ * starting node or parsing npm's package.json.
+ *
+ * A tool counts as installed only while all of its recorded files are unchanged, so anything that replaces
+ * them behind the installers' back makes them check the slow way again.
+ *
+ * Installers of different tools, in this build or in others that share the node directory, update the same
+ * manifest. Each update holds a {@link CacheEntryLock} on it, and writes a temporary file of its own that is
+ * moved over the manifest.
+ */
+final class InstallManifest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstallManifest.class);
+
+    static final String FILE_NAME = ".installed";
+
+    private static final String VERSION = ".version";
+
+    private static final String ARCHIVE = ".archive";
+
+    private static final String FILE = ".file.";
+
+    private final File nodeDirectory;
+
+    private final File file;
+
+    InstallManifest(File nodeDirectory) {
+        this.nodeDirectory = nodeDirectory;
+        this.file = new File(nodeDirectory, FILE_NAME);
+    }
+
+    /**
+     * Whether the manifest records this version of the tool, and its files have not changed since.
+     */
+    boolean isInstalled(String tool, String version) {
+        Properties manifest = read();
+        if (!version.equals(manifest.getProperty(tool + VERSION))) {
+            return false;
+        }
+        boolean anyFile = false;
+        for (String key : manifest.stringPropertyNames()) {
+            if (key.startsWith(tool + FILE)) {
+                File recorded = new File(this.nodeDirectory, key.substring((tool + FILE).length()));
+                if (!stampOf(recorded).equals(manifest.getProperty(key))) {
+                    LOGGER.debug("{} has changed since {} {} was installed", recorded, tool, version);
+                    return false;
+                }
+                anyFile = true;
+            }
+        }
+        return anyFile;
+    }
+
+    /**
+     * Records that the tool has been installed from the archive.
+     *
+     * @param archive   the archive, or null if it was not installed from one
+     * @param keyFiles  files in the node directory that have to stay the same for the tool to count as
+     *                  installed; files that do not exist are left out
+     */
+    void record(String tool, String version, File archive, File... keyFiles) {
+        CacheEntryLock lock;
+        try {
+            lock = CacheEntryLock.acquire(this.file);
+        } catch (DownloadException e) {
+            // Only means the next build checks the slow way
+            LOGGER.debug("Could not lock {}", this.file, e);
+            return;
+        }
+        try {
+            Properties manifest = read();
+            for (String key : manifest.stringPropertyNames()) {
+                if (key.startsWith(tool + ".")) {
+                    manifest.remove(key);
+                }
+            }
+            manifest.setProperty(tool + VERSION, version);
+            Checksum checksum = archive != null ? Checksum.readStamp(archive) : null;
+            if (checksum != null) {
+                manifest.setProperty(tool + ARCHIVE, checksum.toString());
+            }
+            String base = this.nodeDirectory.toURI().getPath();
+            for (File keyFile : keyFiles) {
+                if (keyFile.isFile()) {
+                    String path = keyFile.getAbsoluteFile().toURI().getPath();
+                    if (path.startsWith(base)) {
+                        manifest.setProperty(tool + FILE + path.substring(base.length()), stampOf(keyFile));
+                    }
+                }
+            }
+            write(manifest);
+        } finally {
+            lock.close();
+        }
+    }
+
+    private static String stampOf(File file) {
+        return file.length() + " " + file.lastModified();
+    }
+
+    private Properties read() {
+        Properties manifest = new Properties();
+        if (this.file.isFile()) {
+            try (InputStream in = new FileInputStream(this.file)) {
+                manifest.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.debug("Could not read {}", this.file, e);
+            }
+        }
+        return manifest;
+    }
+
+    private void write(Properties manifest) {
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(this.nodeDirectory.toPath(), FILE_NAME, ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                manifest.store(out, "Installed by the frontend-maven-plugin");
+            }
+            // Readers see the old manifest or the new one, never a half written file
+            Files.move(tmp, this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Only means the next build checks the slow way
+            LOGGER.debug("Could not write {}", this.file, e);
+            deleteQuietly(tmp);
+        }
+    }
+
+    private static void deleteQuietly(Path tmp) {
+        if (tmp != null) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                LOGGER.debug("Could not delete {}", tmp, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Installs node and npm, or node and yarn, at the same time, so a cold install takes about as long as the
+ * slower of the two instead of both added up. npm and yarn are downloaded, unpacked and published into the node
+ * directory without node; each tool is staged on its own and publishes different files. Only asking yarn for
+ * its version, for installs that are not in the install manifest, needs node and waits for it.
+ */
+public final class InstallPipeline {
+
+    private InstallPipeline() {
+    }
+
+    public static void install(NodeInstaller nodeInstaller, final NPMInstaller npmInstaller)
+        throws InstallationException {
+        FutureTask<Void> node = nodeInstall(nodeInstaller);
+        install(node, new Callable<Void>() {
+            @Override
+            public Void call() throws InstallationException {
+                npmInstaller.install();
+                return null;
+            }
+        });
+    }
+
+    public static void install(NodeInstaller nodeInstaller, final YarnInstaller yarnInstaller)
+        throws InstallationException {
+        final FutureTask<Void> node = nodeInstall(nodeInstaller);
+        install(node, new Callable<Void>() {
+            @Override
+            public Void call() throws InstallationException {
+                yarnInstaller.install(node);
+                return null;
+            }
+        });
+    }
+
+    private static FutureTask<Void> nodeInstall(final NodeInstaller nodeInstaller) {
+        return new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws InstallationException {
+                nodeInstaller.install();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Installs node in this thread and the other tool in another one, and waits for both. If both fail, the
+     * node failure is thrown, with the other one suppressed.
+     */
+    private static void install(FutureTask<Void> node, Callable<Void> other) throws InstallationException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Future<Void> otherInstall = executor.submit(other);
+        executor.shutdown();
+
+        node.run();
+        InstallationException failure = failure(node);
+        InstallationException otherFailure = failure(otherInstall);
+        if (failure == null) {
+            failure = otherFailure;
+        } else if (otherFailure != null) {
+            failure.addSuppressed(otherFailure);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static InstallationException failure(Future<Void> install) {
+        try {
+            install.get();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InstallationException) {
+                return (InstallationException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            return new InstallationException("Could not install", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new InstallationException("Interrupted while installing", e);
+        }
+    }
+}
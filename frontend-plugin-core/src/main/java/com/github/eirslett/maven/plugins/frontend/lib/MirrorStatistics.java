@@ -0,0 +1,158 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Latency, throughput and failures of the download mirrors used in a build, so later downloads can go to the
+ * fastest mirror first and skip mirrors that keep failing.
+ *
+ * Mirrors are identified by scheme, host and port of the download URL.
+ */
+final class MirrorStatistics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MirrorStatistics.class);
+
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+    // Weight of the newest sample in the moving averages
+    private static final double SMOOTHING = 0.3;
+
+    // Size used to turn throughput into an expected transfer time when ranking mirrors
+    private static final double REFERENCE_SIZE = 16 * 1024 * 1024;
+
+    private final Map<String, Mirror> mirrors = new LinkedHashMap<String, Mirror>();
+
+    /**
+     * @return the URLs ordered by expected download time, without mirrors that have been denied. Mirrors
+     * that have not been measured yet keep their configured order after the measured ones. If every mirror
+     * has been denied, all of them are returned so the download is still attempted.
+     */
+    synchronized List<String> order(List<String> urls) {
+        final List<String> ordered = new ArrayList<String>(urls.size());
+        for (String url : urls) {
+            if (!getMirror(url).denied) {
+                ordered.add(url);
+            }
+        }
+        if (ordered.isEmpty()) {
+            return new ArrayList<String>(urls);
+        }
+        Collections.sort(ordered, new Comparator<String>() {
+            @Override
+            public int compare(String first, String second) {
+                Mirror a = getMirror(first);
+                Mirror b = getMirror(second);
+                if (a.isMeasured() != b.isMeasured()) {
+                    return a.isMeasured() ? -1 : 1;
+                }
+                return a.isMeasured() ? Double.compare(a.expectedMillis(), b.expectedMillis()) : 0;
+            }
+        });
+        return ordered;
+    }
+
+    synchronized void recordResponse(String url, long latencyMillis) {
+        Mirror mirror = getMirror(url);
+        mirror.consecutiveFailures = 0;
+        mirror.latencyMillis = average(mirror.latencyMillis, latencyMillis);
+    }
+
+    synchronized void recordTransfer(String url, long bytes, long millis) {
+        if (bytes <= 0) {
+            return;
+        }
+        Mirror mirror = getMirror(url);
+        mirror.bytes += bytes;
+        mirror.bytesPerSecond = average(mirror.bytesPerSecond, bytes * 1000.0 / Math.max(1, millis));
+    }
+
+    synchronized void recordFailure(String url, String reason) {
+        Mirror mirror = getMirror(url);
+        mirror.failures++;
+        mirror.consecutiveFailures++;
+        if (!mirror.denied && mirror.consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+            mirror.denied = true;
+            LOGGER.warn("Not using {} for the rest of the build after {} failures in a row, last one: {}",
+                mirror.name, mirror.consecutiveFailures, reason);
+        }
+    }
+
+    synchronized void logSummary() {
+        if (mirrors.size() < 2) {
+            return;
+        }
+        for (Mirror mirror : mirrors.values()) {
+            LOGGER.info("Mirror {}: {} ms latency, {} KB/s, {} KB downloaded, {} failures{}",
+                mirror.name,
+                Math.round(Math.max(0, mirror.latencyMillis)),
+                Math.round(Math.max(0, mirror.bytesPerSecond) / 1024),
+                mirror.bytes / 1024,
+                mirror.failures,
+                mirror.denied ? " (denied)" : "");
+        }
+    }
+
+    private Mirror getMirror(String url) {
+        String name = mirrorName(url);
+        Mirror mirror = mirrors.get(name);
+        if (mirror == null) {
+            mirror = new Mirror(name);
+            mirrors.put(name, mirror);
+        }
+        return mirror;
+    }
+
+    static String mirrorName(String url) {
+        try {
+            URI uri = URI.create(url);
+            if (uri.getAuthority() != null) {
+                return uri.getScheme() + "://" + uri.getAuthority();
+            }
+        } catch (IllegalArgumentException e) {
+            // fall through, the URL itself identifies the mirror
+        }
+        return url;
+    }
+
+    private static double average(double current, double sample) {
+        return current < 0 ? sample : (1 - SMOOTHING) * current + SMOOTHING * sample;
+    }
+
+    private static final class Mirror {
+
+        private final String name;
+
+        private int failures;
+
+        private int consecutiveFailures;
+
+        private boolean denied;
+
+        private double latencyMillis = -1;
+
+        private double bytesPerSecond = -1;
+
+        private long bytes;
+
+        private Mirror(String name) {
+            this.name = name;
+        }
+
+        private boolean isMeasured() {
+            return latencyMillis >= 0;
+        }
+
+        private double expectedMillis() {
+            return latencyMillis + (bytesPerSecond > 0 ? REFERENCE_SIZE * 1000 / bytesPerSecond : 0);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -16,23 +17,22 @@ public class NPMInstaller {
 
     public static final String DEFAULT_NPM_DOWNLOAD_ROOT = "http://registry.npmjs.org/npm/-/";
 
-    private static final Object LOCK = new Object();
-
     private String nodeVersion, npmVersion, npmDownloadRoot, userName, password;
 
     private final Logger logger;
 
     private final InstallConfig config;
 
-    private final ArchiveExtractor archiveExtractor;
-
     private final FileDownloader fileDownloader;
 
-    NPMInstaller(InstallConfig config, ArchiveExtractor archiveExtractor, FileDownloader fileDownloader) {
+    private final ArchiveInstaller archiveInstaller;
+
+    NPMInstaller(InstallConfig config, ArchiveExtractor archiveExtractor, FileDownloader fileDownloader,
+                 DownloadConfig downloadConfig) {
         this.logger = LoggerFactory.getLogger(getClass());
         this.config = config;
-        this.archiveExtractor = archiveExtractor;
         this.fileDownloader = fileDownloader;
+        this.archiveInstaller = new ArchiveInstaller(config, archiveExtractor, fileDownloader, downloadConfig);
     }
 
     public NPMInstaller setNodeVersion(String nodeVersion) {
@@ -73,14 +73,17 @@ public class NPMInstaller {
     }
 
     public void install() throws InstallationException {
-        // use static lock object for a synchronized block
-        synchronized (LOCK) {
+        // Installs into other directories, and of other tools, go ahead in parallel
+        InstallLock lock = InstallLock.acquire(this.config.getInstallDirectory(), "npm");
+        try {
             if (this.npmDownloadRoot == null || this.npmDownloadRoot.isEmpty()) {
                 this.npmDownloadRoot = DEFAULT_NPM_DOWNLOAD_ROOT;
             }
             if (!npmProvided() && !npmIsAlreadyInstalled()) {
-                installNpm();
+                recordInstall(installNpm());
             }
+        } finally {
+            lock.close();
         }
     }
 
@@ -89,11 +92,17 @@ public class NPMInstaller {
             final File npmPackageJson = new File(
                 this.config.getInstallDirectory() + Utils.normalize("/node/node_modules/npm/package.json"));
             if (npmPackageJson.exists()) {
+                if (new InstallManifest(getNodeInstallDirectory()).isInstalled("npm", this.npmVersion)) {
+                    this.logger.info("NPM {} is already installed.", this.npmVersion);
+                    return true;
+                }
                 HashMap<String, Object> data = new ObjectMapper().readValue(npmPackageJson, HashMap.class);
                 if (data.containsKey(VERSION)) {
                     final String foundNpmVersion = data.get(VERSION).toString();
                     if (foundNpmVersion.equals(this.npmVersion)) {
                         this.logger.info("NPM {} is already installed.", foundNpmVersion);
+                        // Installed by an older version of the plugin, the next build need not parse it again
+                        recordInstall(null);
                         return true;
                     } else {
                         this.logger.info("NPM {} was installed, but we need version {}", foundNpmVersion,
@@ -112,57 +121,78 @@ public class NPMInstaller {
         }
     }
 
-    private void installNpm() throws InstallationException {
+    /**
+     * Records the install in the manifest, so the next build does not have to parse npm's package.json.
+     */
+    private void recordInstall(File archive) {
+        File installDirectory = getNodeInstallDirectory();
+        new InstallManifest(installDirectory).record("npm", this.npmVersion, archive,
+            new File(installDirectory, Utils.normalize("node_modules/npm/package.json")),
+            new File(installDirectory, Utils.normalize("node_modules/npm/bin/npm-cli.js")));
+    }
+
+    /**
+     * @return the archive npm was installed from
+     */
+    private File installNpm() throws InstallationException {
         try {
             this.logger.info("Installing npm version {}", this.npmVersion);
-            final String downloadUrl = this.npmDownloadRoot + "npm-" + this.npmVersion + ".tgz";
-
-            CacheDescriptor cacheDescriptor = new CacheDescriptor("npm", this.npmVersion, "tar.gz");
-
-            File archive = this.config.getCacheResolver().resolve(cacheDescriptor);
+            final String downloadFilename = "npm-" + this.npmVersion + ".tgz";
+
+            ArchiveInstaller.Download download = new ArchiveInstaller.Download("npm " + this.npmVersion,
+                new CacheDescriptor("npm", this.npmVersion, "tar.gz"), Utils.splitDownloadRoots(this.npmDownloadRoot),
+                downloadFilename, this.userName, this.password, new ArchiveInstaller.ChecksumLookup() {
+                    @Override
+                    public Checksum lookup(List<String> downloadRoots) {
+                        return Checksums.forNpmDownload(NPMInstaller.this.fileDownloader, downloadRoots,
+                            NPMInstaller.this.npmVersion, NPMInstaller.this.userName, NPMInstaller.this.password);
+                    }
+                });
 
-            downloadFileIfMissing(downloadUrl, archive, this.userName, this.password);
+            File archive = this.archiveInstaller.resolve(download);
 
             File installDirectory = getNodeInstallDirectory();
-            File nodeModulesDirectory = new File(installDirectory, "node_modules");
 
-            // We need to delete the existing npm directory first so we clean out any old files, and
-            // so we can rename the package directory below.
+            // npm used to be installed here
             File oldNpmDirectory = new File(installDirectory, "npm");
-            File npmDirectory = new File(nodeModulesDirectory, "npm");
             try {
                 if (oldNpmDirectory.isDirectory()) {
                     FileUtils.deleteDirectory(oldNpmDirectory);
                 }
-                FileUtils.deleteDirectory(npmDirectory);
             } catch (IOException e) {
                 this.logger.warn("Failed to delete existing NPM installation.");
             }
 
-            extractFile(archive, nodeModulesDirectory);
-
-            // handles difference between old and new download root (nodejs.org/dist/npm and
-            // registry.npmjs.org)
-            // see https://github.com/eirslett/frontend-maven-plugin/issues/65#issuecomment-52024254
-            File packageDirectory = new File(nodeModulesDirectory, "package");
-            if (packageDirectory.exists() && !npmDirectory.exists()) {
-                if (!packageDirectory.renameTo(npmDirectory)) {
-                    this.logger.warn("Cannot rename NPM directory, making a copy.");
-                    FileUtils.copyDirectory(packageDirectory, npmDirectory);
+            StagedInstall staged = StagedInstall.begin(installDirectory, this.archiveInstaller.getStagingDirectory(),
+                "npm");
+            try {
+                File nodeModulesDirectory = new File(staged.getDirectory(), "node_modules");
+
+                // handles difference between old and new download root (nodejs.org/dist/npm and
+                // registry.npmjs.org): registry archives have a package directory, which is unpacked as npm
+                // see https://github.com/eirslett/frontend-maven-plugin/issues/65#issuecomment-52024254
+                this.archiveInstaller.install(download, archive, nodeModulesDirectory, ArchiveEntryFilter.ALL,
+                    new PathMapping().withRewrite("package", "npm"), "npm");
+
+                // create a copy of the npm scripts next to the node executable
+                File npmDirectory = new File(nodeModulesDirectory, "npm");
+                for (String script : Arrays.asList("npm", "npm.cmd")) {
+                    File scriptFile = new File(npmDirectory, "bin" + File.separator + script);
+                    if (scriptFile.exists()) {
+                        File copy = new File(staged.getDirectory(), script);
+                        FileUtils.copyFile(scriptFile, copy);
+                        copy.setExecutable(true);
+                    }
                 }
-            }
 
-            // create a copy of the npm scripts next to the node executable
-            for (String script : Arrays.asList("npm", "npm.cmd")) {
-                File scriptFile = new File(npmDirectory, "bin" + File.separator + script);
-                if (scriptFile.exists()) {
-                    File copy = new File(installDirectory, script);
-                    FileUtils.copyFile(scriptFile, copy);
-                    copy.setExecutable(true);
-                }
+                // Replaces the old npm as a whole, so no files of it are left over
+                staged.publish("node_modules/npm", "npm", "npm.cmd");
+            } finally {
+                staged.close();
             }
 
             this.logger.info("Installed npm locally.");
+            return archive;
         } catch (DownloadException e) {
             throw new InstallationException("Could not download npm", e);
         } catch (ArchiveExtractionException e) {
@@ -180,22 +210,4 @@ public class NPMInstaller {
         }
         return installDirectory;
     }
-
-    private void extractFile(File archive, File destinationDirectory) throws ArchiveExtractionException {
-        this.logger.info("Unpacking {} into {}", archive, destinationDirectory);
-        this.archiveExtractor.extract(archive.getPath(), destinationDirectory.getPath());
-    }
-
-    private void downloadFileIfMissing(String downloadUrl, File destination, String userName, String password)
-        throws DownloadException {
-        if (!destination.exists()) {
-            downloadFile(downloadUrl, destination, userName, password);
-        }
-    }
-
-    private void downloadFile(String downloadUrl, File destination, String userName, String password)
-        throws DownloadException {
-        this.logger.info("Downloading {} to {}", downloadUrl, destination);
-        this.fileDownloader.download(downloadUrl, destination.getPath(), userName, password);
-    }
 }
@@ -0,0 +1,210 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Extracts tar archives with {@code java.nio}. Files are written through a {@link FileChannel} from one large
+ * buffer that is reused for every entry, and get the permissions from the mode in the tar header. Symbolic and
+ * hard links are created as links, like node's {@code bin/npm}, after all files have been written. Directories
+ * are created once and remembered, so the file system is not asked about them again for every file in them.
+ * Entries are written to the path that the {@link PathMapping} gives them, and hard links point to the mapped
+ * path of their target. Nothing is written outside the destination directory, see {@link ArchivePaths}.
+ */
+final class NioTarExtractor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioTarExtractor.class);
+
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final boolean POSIX =
+        FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    private static final PosixFilePermission[] PERMISSIONS = {
+        PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ,
+        PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+        PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ
+    };
+
+    private final Path destinationDirectory;
+
+    private final PathMapping mapping;
+
+    private final Set<Path> directories = new HashSet<Path>();
+
+    NioTarExtractor(File destinationDirectory) {
+        this(destinationDirectory, PathMapping.IDENTITY);
+    }
+
+    NioTarExtractor(File destinationDirectory, PathMapping mapping) {
+        this.destinationDirectory = destinationDirectory.toPath();
+        this.mapping = mapping;
+    }
+
+    void extract(TarArchiveInputStream tarIn, ArchiveEntryFilter filter) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        final List<TarArchiveEntry> links = new ArrayList<TarArchiveEntry>();
+        TarArchiveEntry tarEntry = tarIn.getNextTarEntry();
+        while (tarEntry != null) {
+            final Path path = destination(tarEntry);
+            if (path == null || !PathEntryFilter.accept(filter, tarEntry.getName())) {
+                // The content is skipped by the next call
+                tarEntry = tarIn.getNextTarEntry();
+                continue;
+            }
+            if (tarEntry.isDirectory()) {
+                createDirectory(path);
+            } else {
+                createDirectory(path.getParent());
+                if (isLink(tarEntry)) {
+                    // Later entries must not be written through a link
+                    links.add(tarEntry);
+                } else {
+                    write(tarIn, path, buffer);
+                    setMode(path, tarEntry.getMode());
+                }
+            }
+            tarEntry = tarIn.getNextTarEntry();
+        }
+        for (TarArchiveEntry link : links) {
+            link(link, destination(link));
+        }
+    }
+
+    /**
+     * @return null if the mapping leaves nothing of the entry's path
+     * @throws IOException if the entry would be written outside the destination directory
+     */
+    Path destination(TarArchiveEntry tarEntry) throws IOException {
+        String path = this.mapping.map(tarEntry.getName());
+        return path != null ? ArchivePaths.resolve(this.destinationDirectory, path) : null;
+    }
+
+    /**
+     * Creates the directory unless this extractor has created it before. Not thread safe.
+     */
+    void createDirectory(Path directory) throws IOException {
+        if (this.directories.add(directory)) {
+            Files.createDirectories(directory);
+            if (!Files.isWritable(directory)) {
+                throw new AccessDeniedException(
+                    String.format("Could not get write permissions for '%s'", directory.toAbsolutePath()));
+            }
+        }
+    }
+
+    static boolean isLink(TarArchiveEntry tarEntry) {
+        return tarEntry.isSymbolicLink() || tarEntry.isLink();
+    }
+
+    /**
+     * Creates a symbolic or hard link, once every file of the archive has been written. Where the file system
+     * does not support links (or the user may not create them, as on Windows), the target is copied instead if
+     * it exists.
+     *
+     * @throws IOException if the link, or what it points to, is outside the destination directory
+     */
+    void link(TarArchiveEntry tarEntry, Path path) throws IOException {
+        final Path target;
+        if (tarEntry.isSymbolicLink()) {
+            ArchivePaths.checkSymbolicLink(this.destinationDirectory, path, tarEntry.getLinkName());
+            target = path.getParent().resolve(tarEntry.getLinkName()).normalize();
+        } else {
+            final String mappedLinkName = this.mapping.map(tarEntry.getLinkName());
+            if (mappedLinkName == null) {
+                LOGGER.debug("Not linking {}, its target {} is not extracted", path, tarEntry.getLinkName());
+                return;
+            }
+            target = ArchivePaths.resolve(this.destinationDirectory, mappedLinkName);
+            if (!Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+                LOGGER.debug("Not linking {}, its target {} is not extracted", path, target);
+                return;
+            }
+            ArchivePaths.checkHardLink(this.destinationDirectory, path, target);
+        }
+        Files.deleteIfExists(path);
+        try {
+            if (tarEntry.isSymbolicLink()) {
+                Files.createSymbolicLink(path, Paths.get(tarEntry.getLinkName()));
+            } else {
+                Files.createLink(path, target);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            if (Files.exists(target)) {
+                LOGGER.debug("Could not link {} to {}, copying it instead", path, target, e);
+                Files.copy(target, path, StandardCopyOption.COPY_ATTRIBUTES);
+            } else {
+                LOGGER.debug("Could not link {} to {}", path, target, e);
+            }
+        }
+    }
+
+    /**
+     * Writes everything that is left in the stream to the file.
+     */
+    static void write(InputStream in, Path path, byte[] buffer) throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+            }
+        }
+    }
+
+    static void write(byte[] content, Path path) throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer chunk = ByteBuffer.wrap(content);
+            while (chunk.hasRemaining()) {
+                out.write(chunk);
+            }
+        }
+    }
+
+    /**
+     * Applies the permission bits of a tar mode to a file. Without POSIX permissions only the owner's execute
+     * bit can be kept.
+     */
+    static void setMode(Path path, int mode) throws IOException {
+        if (mode == 0) {
+            return;
+        }
+        if (POSIX) {
+            Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+            for (int bit = 0; bit < PERMISSIONS.length; bit++) {
+                if ((mode & (1 << bit)) != 0) {
+                    permissions.add(PERMISSIONS[bit]);
+                }
+            }
+            Files.setPosixFilePermissions(path, permissions);
+        } else {
+            path.toFile().setExecutable((mode & 0100) != 0);
+        }
+    }
+}
@@ -3,7 +3,11 @@ package com.github.eirslett.maven.plugins.frontend.lib;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
@@ -15,23 +19,22 @@ public class NodeInstaller {
 
     public static final String DEFAULT_NODEJS_DOWNLOAD_ROOT = "https://nodejs.org/dist/";
 
-    private static final Object LOCK = new Object();
-
     private String npmVersion, nodeVersion, nodeDownloadRoot, userName, password;
 
     private final Logger logger;
 
     private final InstallConfig config;
 
-    private final ArchiveExtractor archiveExtractor;
-
     private final FileDownloader fileDownloader;
 
-    NodeInstaller(InstallConfig config, ArchiveExtractor archiveExtractor, FileDownloader fileDownloader) {
+    private final ArchiveInstaller archiveInstaller;
+
+    NodeInstaller(InstallConfig config, ArchiveExtractor archiveExtractor, FileDownloader fileDownloader,
+                  DownloadConfig downloadConfig) {
         this.logger = LoggerFactory.getLogger(getClass());
         this.config = config;
-        this.archiveExtractor = archiveExtractor;
         this.fileDownloader = fileDownloader;
+        this.archiveInstaller = new ArchiveInstaller(config, archiveExtractor, fileDownloader, downloadConfig);
     }
 
     public NodeInstaller setNodeVersion(String nodeVersion) {
@@ -74,8 +77,9 @@ public class NodeInstaller {
     }
 
     public void install() throws InstallationException {
-        // use static lock object for a synchronized block
-        synchronized (LOCK) {
+        // Installs into other directories, and of other tools, go ahead in parallel
+        InstallLock lock = InstallLock.acquire(this.config.getInstallDirectory(), "node");
+        try {
             if (this.nodeDownloadRoot == null || this.nodeDownloadRoot.isEmpty()) {
                 this.nodeDownloadRoot = DEFAULT_NODEJS_DOWNLOAD_ROOT;
             }
@@ -84,16 +88,20 @@ public class NodeInstaller {
                 if (!this.nodeVersion.startsWith("v")) {
                     this.logger.warn("Node version does not start with naming convention 'v'.");
                 }
+                File archive;
                 if (this.config.getPlatform().isWindows()) {
                     if (npmProvided()) {
-                        installNodeWithNpmForWindows();
+                        archive = installNodeWithNpmForWindows();
                     } else {
-                        installNodeForWindows();
+                        archive = installNodeForWindows();
                     }
                 } else {
-                    installNodeDefault();
+                    archive = installNodeDefault();
                 }
+                recordInstall(archive);
             }
+        } finally {
+            lock.close();
         }
     }
 
@@ -102,11 +110,17 @@ public class NodeInstaller {
             NodeExecutorConfig executorConfig = new InstallNodeExecutorConfig(this.config);
             File nodeFile = executorConfig.getNodePath();
             if (nodeFile.exists()) {
+                if (new InstallManifest(getInstallDirectory()).isInstalled("node", this.nodeVersion)) {
+                    this.logger.info("Node {} is already installed.", this.nodeVersion);
+                    return true;
+                }
                 final String version =
                     new NodeExecutor(executorConfig, Arrays.asList("--version"), null).executeAndGetResult();
 
                 if (version.equals(this.nodeVersion)) {
                     this.logger.info("Node {} is already installed.", version);
+                    // Installed by an older version of the plugin, the next build need not ask again
+                    recordInstall(null);
                     return true;
                 } else {
                     this.logger.info("Node {} was installed, but we need version {}", version,
@@ -121,54 +135,67 @@ public class NodeInstaller {
         }
     }
 
-    private void installNodeDefault() throws InstallationException {
+    /**
+     * Records the install in the manifest, so the next build does not have to start node to ask for its
+     * version.
+     */
+    private void recordInstall(File archive) {
+        new InstallManifest(getInstallDirectory()).record("node", this.nodeVersion, archive,
+            new InstallNodeExecutorConfig(this.config).getNodePath());
+    }
+
+    private File installNodeDefault() throws InstallationException {
         try {
             final String longNodeFilename =
                 this.config.getPlatform().getLongNodeFilename(this.nodeVersion, false);
-            String downloadUrl = this.nodeDownloadRoot
-                + this.config.getPlatform().getNodeDownloadFilename(this.nodeVersion, false);
-            String classifier = this.config.getPlatform().getNodeClassifier();
-
-            File tmpDirectory = getTempDirectory();
-
-            CacheDescriptor cacheDescriptor = new CacheDescriptor("node", this.nodeVersion, classifier,
-                this.config.getPlatform().getArchiveExtension());
-
-            File archive = this.config.getCacheResolver().resolve(cacheDescriptor);
-
-            downloadFileIfMissing(downloadUrl, archive, this.userName, this.password);
-
-            extractFile(archive, tmpDirectory);
-
-            // Search for the node binary
-            File nodeBinary =
-                new File(tmpDirectory, longNodeFilename + File.separator + "bin" + File.separator + "node");
-            if (!nodeBinary.exists()) {
-                throw new FileNotFoundException(
-                    "Could not find the downloaded Node.js binary in " + nodeBinary);
-            } else {
-                File destinationDirectory = getInstallDirectory();
+            File destinationDirectory = getInstallDirectory();
 
-                File destination = new File(destinationDirectory, "node");
-                this.logger.info("Copying node binary from {} to {}", nodeBinary, destination);
-                if (!nodeBinary.renameTo(destination)) {
-                    throw new InstallationException("Could not install Node: Was not allowed to rename "
-                        + nodeBinary + " to " + destination);
+            // Only the binary is installed, and npm if it comes with node, each straight to where it belongs
+            ArchiveEntryFilter filter = npmProvided()
+                ? new PathEntryFilter(longNodeFilename + "/bin/node", longNodeFilename + "/lib/node_modules")
+                : new PathEntryFilter(longNodeFilename + "/bin/node");
+            PathMapping mapping = new PathMapping()
+                .withRewrite(longNodeFilename + "/bin/node", "node")
+                .withRewrite(longNodeFilename + "/lib/node_modules", "node_modules");
+
+            StagedInstall staged = beginStagedInstall(destinationDirectory);
+            try {
+                File stagingDirectory = staged.getDirectory();
+                File archive;
+                Iterator<String> archiveExtensions = getArchiveExtensions().iterator();
+                while (true) {
+                    String archiveExtension = archiveExtensions.next();
+                    String downloadFilename = this.config.getPlatform()
+                        .getNodeDownloadFilename(this.nodeVersion, false, archiveExtension);
+                    ArchiveInstaller.Download download =
+                        getNodeDownload(downloadFilename, getNodeCacheDescriptor(archiveExtension));
+                    archive = this.archiveInstaller.resolve(download);
+                    try {
+                        // The binary and the npm scripts are made executable below
+                        this.archiveInstaller.install(download, archive, stagingDirectory, filter, mapping,
+                            npmProvided() ? "node-npm" : "node", "node", "node_modules/npm/bin/npm",
+                            "node_modules/npm/bin/npm.cmd");
+                        break;
+                    } catch (DownloadException e) {
+                        if (!archiveExtensions.hasNext()) {
+                            throw e;
+                        }
+                        // Older versions were not published in every format
+                        this.logger.warn("Could not download {} ({}), trying the next archive format",
+                            downloadFilename, e.getMessage());
+                    }
                 }
 
-                if (!destination.setExecutable(true, false)) {
+                File binary = new File(stagingDirectory, "node");
+                if (!binary.exists()) {
+                    throw new FileNotFoundException("Could not find the downloaded Node.js binary in " + binary);
+                }
+                if (!binary.setExecutable(true, false)) {
                     throw new InstallationException(
-                        "Could not install Node: Was not allowed to make " + destination + " executable.");
+                        "Could not install Node: Was not allowed to make " + binary + " executable.");
                 }
-
                 if (npmProvided()) {
-                    File tmpNodeModulesDir = new File(tmpDirectory,
-                        longNodeFilename + File.separator + "lib" + File.separator + "node_modules");
-                    File nodeModulesDirectory = new File(destinationDirectory, "node_modules");
-                    File npmDirectory = new File(nodeModulesDirectory, "npm");
-                    FileUtils.copyDirectory(tmpNodeModulesDir, nodeModulesDirectory);
-                    this.logger.info("Extracting NPM");
-                    // create a copy of the npm scripts next to the node executable
+                    File npmDirectory = new File(stagingDirectory, "node_modules" + File.separator + "npm");
                     for (String script : Arrays.asList("npm", "npm.cmd")) {
                         File scriptFile = new File(npmDirectory, "bin" + File.separator + script);
                         if (scriptFile.exists()) {
@@ -177,9 +204,13 @@ public class NodeInstaller {
                     }
                 }
 
-                deleteTempDirectory(tmpDirectory);
-
+                // A binary that is running cannot always be written to, but it can be replaced. node_modules
+                // is only staged when npm comes with node.
+                staged.publish("node", "node_modules");
                 this.logger.info("Installed node locally.");
+                return archive;
+            } finally {
+                staged.close();
             }
         } catch (IOException e) {
             throw new InstallationException("Could not install Node", e);
@@ -190,49 +221,64 @@ public class NodeInstaller {
         }
     }
 
-    private void installNodeWithNpmForWindows() throws InstallationException {
+    /**
+     * The archive formats to try, in order of preference. A format that is in the cache already comes first,
+     * so nothing is downloaded that the build already has.
+     */
+    private List<String> getArchiveExtensions() {
+        List<String> archiveExtensions = new ArrayList<String>(this.config.getPlatform().getArchiveExtensions());
+        for (String archiveExtension : archiveExtensions) {
+            File archive = getNodeArchive(archiveExtension);
+            if (Utils.isCached(this.config.getCacheResolver(), archive)) {
+                archiveExtensions.remove(archiveExtension);
+                archiveExtensions.add(0, archiveExtension);
+                break;
+            }
+        }
+        return archiveExtensions;
+    }
+
+    private File getNodeArchive(String archiveExtension) {
+        return this.config.getCacheResolver().resolve(getNodeCacheDescriptor(archiveExtension));
+    }
+
+    private CacheDescriptor getNodeCacheDescriptor(String archiveExtension) {
+        return new CacheDescriptor("node", this.nodeVersion, this.config.getPlatform().getNodeClassifier(),
+            archiveExtension);
+    }
+
+    private File installNodeWithNpmForWindows() throws InstallationException {
         try {
             final String longNodeFilename =
                 this.config.getPlatform().getLongNodeFilename(this.nodeVersion, true);
-            String downloadUrl = this.nodeDownloadRoot
-                + this.config.getPlatform().getNodeDownloadFilename(this.nodeVersion, true);
+            String downloadFilename = this.config.getPlatform().getNodeDownloadFilename(this.nodeVersion, true);
             String classifier = this.config.getPlatform().getNodeClassifier();
 
-            File tmpDirectory = getTempDirectory();
-
-            CacheDescriptor cacheDescriptor = new CacheDescriptor("node", this.nodeVersion, classifier,
-                this.config.getPlatform().getArchiveExtension());
-
-            File archive = this.config.getCacheResolver().resolve(cacheDescriptor);
+            File destinationDirectory = getInstallDirectory();
 
-            downloadFileIfMissing(downloadUrl, archive, this.userName, this.password);
+            ArchiveInstaller.Download download = getNodeDownload(downloadFilename, new CacheDescriptor("node",
+                this.nodeVersion, classifier, this.config.getPlatform().getArchiveExtension()));
 
-            extractFile(archive, tmpDirectory);
+            File archive = this.archiveInstaller.resolve(download);
 
-            // Search for the node binary
-            File nodeBinary = new File(tmpDirectory, longNodeFilename + File.separator + "node.exe");
-            if (!nodeBinary.exists()) {
-                throw new FileNotFoundException(
-                    "Could not find the downloaded Node.js binary in " + nodeBinary);
-            } else {
-                File destinationDirectory = getInstallDirectory();
+            StagedInstall staged = beginStagedInstall(destinationDirectory);
+            try {
+                this.archiveInstaller.install(download, archive, staged.getDirectory(),
+                    new PathEntryFilter(longNodeFilename + "/node.exe", longNodeFilename + "/node_modules"),
+                    new PathMapping()
+                        .withRewrite(longNodeFilename + "/node.exe", "node.exe")
+                        .withRewrite(longNodeFilename + "/node_modules", "node_modules"),
+                    "node-npm");
 
-                File destination = new File(destinationDirectory, "node.exe");
-                this.logger.info("Copying node binary from {} to {}", nodeBinary, destination);
-                if (!nodeBinary.renameTo(destination)) {
-                    throw new InstallationException("Could not install Node: Was not allowed to rename "
-                        + nodeBinary + " to " + destination);
+                File binary = new File(staged.getDirectory(), "node.exe");
+                if (!binary.exists()) {
+                    throw new FileNotFoundException("Could not find the downloaded Node.js binary in " + binary);
                 }
-
-                if ("provided".equals(this.npmVersion)) {
-                    File tmpNodeModulesDir =
-                        new File(tmpDirectory, longNodeFilename + File.separator + "node_modules");
-                    File nodeModulesDirectory = new File(destinationDirectory, "node_modules");
-                    FileUtils.copyDirectory(tmpNodeModulesDir, nodeModulesDirectory);
-                }
-                deleteTempDirectory(tmpDirectory);
-
+                publishForWindows(staged, "node.exe", "node_modules");
                 this.logger.info("Installed node locally.");
+                return archive;
+            } finally {
+                staged.close();
             }
         } catch (IOException e) {
             throw new InstallationException("Could not install Node", e);
@@ -244,9 +290,9 @@ public class NodeInstaller {
 
     }
 
-    private void installNodeForWindows() throws InstallationException {
-        final String downloadUrl = this.nodeDownloadRoot
-            + this.config.getPlatform().getNodeDownloadFilename(this.nodeVersion, false);
+    private File installNodeForWindows() throws InstallationException {
+        final String downloadFilename = this.config.getPlatform().getNodeDownloadFilename(this.nodeVersion, false);
+        final String downloadUrl = Utils.splitDownloadRoots(this.nodeDownloadRoot).get(0) + downloadFilename;
         try {
             File destinationDirectory = getInstallDirectory();
 
@@ -254,17 +300,24 @@ public class NodeInstaller {
 
             String classifier = this.config.getPlatform().getNodeClassifier();
 
-            CacheDescriptor cacheDescriptor =
-                new CacheDescriptor("node", this.nodeVersion, classifier, "exe");
+            ArchiveInstaller.Download download =
+                getNodeDownload(downloadFilename, new CacheDescriptor("node", this.nodeVersion, classifier, "exe"));
 
-            File binary = this.config.getCacheResolver().resolve(cacheDescriptor);
+            File binary = this.archiveInstaller.resolve(download);
 
-            downloadFileIfMissing(downloadUrl, binary, this.userName, this.password);
+            this.archiveInstaller.downloadIfMissing(download, binary);
 
             this.logger.info("Copying node binary from {} to {}", binary, destination);
-            FileUtils.copyFile(binary, destination);
+            StagedInstall staged = beginStagedInstall(destinationDirectory);
+            try {
+                FileUtils.copyFile(binary, new File(staged.getDirectory(), "node.exe"));
+                publishForWindows(staged, "node.exe");
+            } finally {
+                staged.close();
+            }
 
             this.logger.info("Installed node locally.");
+            return binary;
         } catch (DownloadException e) {
             throw new InstallationException("Could not download Node.js from: " + downloadUrl, e);
         } catch (IOException e) {
@@ -272,13 +325,18 @@ public class NodeInstaller {
         }
     }
 
-    private File getTempDirectory() {
-        File tmpDirectory = new File(getInstallDirectory(), "tmp");
-        if (!tmpDirectory.exists()) {
-            this.logger.debug("Creating temporary directory {}", tmpDirectory);
-            tmpDirectory.mkdirs();
+    /**
+     * Replaces the old node.exe only once the new one is unpacked, so a failed install leaves the old one.
+     */
+    private void publishForWindows(StagedInstall staged, String... parts) throws IOException, InstallationException {
+        try {
+            staged.publish(parts);
+        } catch (FileSystemException e) {
+            // A binary that is running cannot be written to, but on Windows it cannot be replaced either
+            String target = e.getOtherFile() != null ? e.getOtherFile() : e.getFile();
+            throw new InstallationException("Could not install Node: Was not allowed to replace " + target
+                + ", is node still running?", e);
         }
-        return tmpDirectory;
     }
 
     private File getInstallDirectory() {
@@ -290,28 +348,28 @@ public class NodeInstaller {
         return installDirectory;
     }
 
-    private void deleteTempDirectory(File tmpDirectory) throws IOException {
-        if (tmpDirectory != null && tmpDirectory.exists()) {
-            this.logger.debug("Deleting temporary directory {}", tmpDirectory);
-            FileUtils.deleteDirectory(tmpDirectory);
-        }
+    /**
+     * Installs linked from the toolchain store are staged next to the install directory, where the links
+     * can be created.
+     */
+    private StagedInstall beginStagedInstall(File installDirectory) throws IOException {
+        return StagedInstall.begin(installDirectory, this.archiveInstaller.getStagingDirectory(), "node");
     }
 
-    private void extractFile(File archive, File destinationDirectory) throws ArchiveExtractionException {
-        this.logger.info("Unpacking {} into {}", archive, destinationDirectory);
-        this.archiveExtractor.extract(archive.getPath(), destinationDirectory.getPath());
-    }
-
-    private void downloadFileIfMissing(String downloadUrl, File destination, String userName, String password)
-        throws DownloadException {
-        if (!destination.exists()) {
-            downloadFile(downloadUrl, destination, userName, password);
-        }
-    }
-
-    private void downloadFile(String downloadUrl, File destination, String userName, String password)
-        throws DownloadException {
-        this.logger.info("Downloading {} to {}", downloadUrl, destination);
-        this.fileDownloader.download(downloadUrl, destination.getPath(), userName, password);
+    /**
+     * @param downloadFilename the path of the archive below the download root
+     */
+    private ArchiveInstaller.Download getNodeDownload(final String downloadFilename,
+                                                      CacheDescriptor cacheDescriptor) {
+        return new ArchiveInstaller.Download("Node.js " + this.nodeVersion, cacheDescriptor,
+            Utils.splitDownloadRoots(this.nodeDownloadRoot), downloadFilename, this.userName, this.password,
+            new ArchiveInstaller.ChecksumLookup() {
+                @Override
+                public Checksum lookup(List<String> downloadRoots) {
+                    return Checksums.forNodeDownload(NodeInstaller.this.fileDownloader, downloadRoots,
+                        NodeInstaller.this.nodeVersion, downloadFilename, NodeInstaller.this.userName,
+                        NodeInstaller.this.password);
+                }
+            });
     }
 }
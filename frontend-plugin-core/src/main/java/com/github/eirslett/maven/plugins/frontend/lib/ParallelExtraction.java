@@ -0,0 +1,235 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes the files of an archive with several threads. Archives like npm consist of thousands of small files,
+ * so extracting them is mostly waiting for the file system to create files, which other threads can do in the
+ * meantime. Directories are created by the thread that reads the archive, before any file in them is written.
+ */
+final class ParallelExtraction {
+
+    // Bytes of tar entries that have been read but not written yet
+    private static final int MAX_BUFFERED_BYTES = 32 * 1024 * 1024;
+
+    // Larger tar entries are written by the reading thread instead of being buffered
+    private static final int MAX_BUFFERED_ENTRY = 4 * 1024 * 1024;
+
+    private final File destinationDirectory;
+
+    private final ExecutorService writers;
+
+    private final List<Future<Void>> writes = new LinkedList<Future<Void>>();
+
+    private final Set<File> directories = new HashSet<File>();
+
+    private ParallelExtraction(File destinationDirectory, int threads) {
+        this.destinationDirectory = destinationDirectory;
+        this.writers = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Extracts every entry of the zip file. Each writer reads its own entries from the zip file.
+     */
+    static void extractZip(final ZipFile zipFile, File destinationDirectory, ArchiveEntryFilter filter,
+                           PathMapping mapping, int threads) throws IOException {
+        ParallelExtraction extraction = new ParallelExtraction(destinationDirectory, threads);
+        try {
+            // All directories first, so writers never have to create one
+            Map<ZipEntry, File> files = new LinkedHashMap<ZipEntry, File>();
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String path = mapping.map(entry.getName());
+                if (path == null || !PathEntryFilter.accept(filter, entry.getName())) {
+                    continue;
+                }
+                File destPath = extraction.destination(path);
+                if (entry.isDirectory()) {
+                    extraction.createDirectory(destPath);
+                } else {
+                    extraction.createDirectory(destPath.getParentFile());
+                    files.put(entry, destPath);
+                }
+            }
+            for (Map.Entry<ZipEntry, File> file : files.entrySet()) {
+                final ZipEntry entry = file.getKey();
+                final File destPath = file.getValue();
+                extraction.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        InputStream in = zipFile.getInputStream(entry);
+                        try {
+                            write(in, destPath);
+                        } finally {
+                            in.close();
+                        }
+                        return null;
+                    }
+                });
+            }
+            extraction.awaitWrites();
+        } finally {
+            extraction.writers.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts every entry of the tar stream. The calling thread decompresses the stream and hands the content
+     * of each entry to a writer; at most {@link #MAX_BUFFERED_BYTES} are held in memory at a time. Links are
+     * created last, once their targets have been written.
+     */
+    static void extractTar(TarArchiveInputStream tarIn, File destinationDirectory, ArchiveEntryFilter filter,
+                           PathMapping mapping, int threads) throws IOException {
+        final NioTarExtractor tarExtractor = new NioTarExtractor(destinationDirectory, mapping);
+        final ParallelExtraction extraction = new ParallelExtraction(destinationDirectory, threads);
+        final Semaphore buffered = new Semaphore(MAX_BUFFERED_BYTES);
+        final List<TarArchiveEntry> links = new ArrayList<TarArchiveEntry>();
+        final byte[] buffer = new byte[NioTarExtractor.BUFFER_SIZE];
+        try {
+            TarArchiveEntry tarEntry = tarIn.getNextTarEntry();
+            while (tarEntry != null) {
+                final Path path = tarExtractor.destination(tarEntry);
+                if (path == null || !PathEntryFilter.accept(filter, tarEntry.getName())) {
+                    // The content is skipped by the next call
+                    tarEntry = tarIn.getNextTarEntry();
+                    continue;
+                }
+                final int mode = tarEntry.getMode();
+                if (tarEntry.isDirectory()) {
+                    tarExtractor.createDirectory(path);
+                } else if (NioTarExtractor.isLink(tarEntry)) {
+                    tarExtractor.createDirectory(path.getParent());
+                    links.add(tarEntry);
+                } else if (tarEntry.getSize() > MAX_BUFFERED_ENTRY) {
+                    tarExtractor.createDirectory(path.getParent());
+                    NioTarExtractor.write(tarIn, path, buffer);
+                    NioTarExtractor.setMode(path, mode);
+                } else {
+                    tarExtractor.createDirectory(path.getParent());
+                    final int size = (int) tarEntry.getSize();
+                    buffered.acquire(size);
+                    final byte[] content = new byte[size];
+                    try {
+                        new DataInputStream(tarIn).readFully(content);
+                    } catch (IOException e) {
+                        buffered.release(size);
+                        throw e;
+                    }
+                    extraction.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            try {
+                                NioTarExtractor.write(content, path);
+                                NioTarExtractor.setMode(path, mode);
+                            } finally {
+                                buffered.release(size);
+                            }
+                            return null;
+                        }
+                    });
+                }
+                tarEntry = tarIn.getNextTarEntry();
+            }
+            extraction.awaitWrites();
+            for (TarArchiveEntry link : links) {
+                tarExtractor.link(link, tarExtractor.destination(link));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting into " + destinationDirectory, e);
+        } finally {
+            extraction.writers.shutdownNow();
+        }
+    }
+
+    private File destination(String entryName) throws IOException {
+        return ArchivePaths.resolve(this.destinationDirectory.toPath(), entryName).toFile();
+    }
+
+    private void createDirectory(File directory) throws IOException {
+        if (this.directories.add(directory)) {
+            directory.mkdirs();
+            if (!directory.canWrite()) {
+                throw new AccessDeniedException(
+                    String.format("Could not get write permissions for '%s'", directory.getAbsolutePath()));
+            }
+        }
+    }
+
+    private void submit(Callable<Void> write) throws IOException {
+        this.writes.add(this.writers.submit(write));
+        // Stops reading the archive as soon as a write has failed
+        if (this.writes.size() % 64 == 0) {
+            checkWrites();
+        }
+    }
+
+    private void checkWrites() throws IOException {
+        Iterator<Future<Void>> writes = this.writes.iterator();
+        while (writes.hasNext()) {
+            Future<Void> write = writes.next();
+            if (write.isDone()) {
+                get(write);
+                writes.remove();
+            }
+        }
+    }
+
+    private void awaitWrites() throws IOException {
+        for (Future<Void> write : this.writes) {
+            get(write);
+        }
+    }
+
+    private void get(Future<Void> write) throws IOException {
+        try {
+            write.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Could not extract into " + this.destinationDirectory, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting into " + this.destinationDirectory, e);
+        }
+    }
+
+    private static void write(InputStream in, File destPath) throws IOException {
+        OutputStream out = new FileOutputStream(destPath);
+        try {
+            IOUtils.copy(in, out);
+        } finally {
+            out.close();
+        }
+    }
+}
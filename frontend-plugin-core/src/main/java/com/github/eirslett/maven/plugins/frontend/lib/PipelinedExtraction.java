@@ -0,0 +1,135 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Extracts a tar.gz archive while it is being downloaded into the cache, so a cold install takes about as
+ * long as the slower of the two instead of both added up.
+ */
+final class PipelinedExtraction {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelinedExtraction.class);
+
+    // Lets the download run ahead of the extraction for a while before it has to wait
+    private static final int PIPE_SIZE = 1024 * 1024;
+
+    private PipelinedExtraction() {
+    }
+
+    /**
+     * Downloads the archive into the cache and extracts it at the same time. If the streamed download fails,
+     * the archive is downloaded the normal way, resuming from what has been written to the cache so far.
+     *
+     * @return true if the archive has been extracted, false if only the download succeeded and the caller
+     * still has to extract the archive
+     */
+    static boolean downloadAndExtract(FileDownloader fileDownloader, ArchiveExtractor archiveExtractor,
+                                      List<String> downloadUrls, File archive, String userName, String password,
+                                      Checksum checksum, File destinationDirectory) throws DownloadException {
+        return downloadAndExtract(fileDownloader, archiveExtractor, downloadUrls, archive, userName, password,
+            checksum, destinationDirectory, ArchiveEntryFilter.ALL, PathMapping.IDENTITY);
+    }
+
+    /**
+     * Like {@link #downloadAndExtract(FileDownloader, ArchiveExtractor, List, File, String, String, Checksum,
+     * File)}, but only extracts the entries that the filter accepts, to the paths the mapping gives them.
+     */
+    static boolean downloadAndExtract(FileDownloader fileDownloader, final ArchiveExtractor archiveExtractor,
+                                      List<String> downloadUrls, File archive, String userName, String password,
+                                      Checksum checksum, final File destinationDirectory,
+                                      final ArchiveEntryFilter filter, final PathMapping mapping)
+        throws DownloadException {
+        final PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        final PipedOutputStream out;
+        try {
+            out = new PipedOutputStream(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not connect pipe", e);
+        }
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Future<Void> extraction = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws ArchiveExtractionException {
+                try {
+                    archiveExtractor.extractTarGz(in, destinationDirectory.getPath(), filter, mapping);
+                    return null;
+                } finally {
+                    // Keeps the download going if the extraction stopped early, so the archive still ends up
+                    // in the cache
+                    drain(in);
+                }
+            }
+        });
+        executor.shutdown();
+
+        DownloadException downloadFailure = null;
+        try {
+            fileDownloader.download(downloadUrls, archive.getPath(), userName, password, checksum, out);
+        } catch (DownloadException e) {
+            downloadFailure = e;
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close pipe", e);
+            }
+        }
+
+        ArchiveExtractionException extractionFailure = null;
+        try {
+            extraction.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ArchiveExtractionException) {
+                extractionFailure = (ArchiveExtractionException) e.getCause();
+            } else {
+                throw new IllegalStateException("Could not extract " + archive, e.getCause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DownloadException("Interrupted while extracting " + archive, e);
+        }
+
+        if (downloadFailure != null) {
+            LOGGER.warn("Could not stream {} ({}), downloading it before unpacking", downloadUrls.get(0),
+                downloadFailure.getMessage());
+            fileDownloader.download(downloadUrls, archive.getPath(), userName, password, checksum);
+            return false;
+        }
+        if (extractionFailure != null) {
+            LOGGER.warn("Could not unpack {} while downloading it ({}), unpacking the downloaded file", archive,
+                extractionFailure.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    private static void drain(InputStream in) {
+        byte[] buffer = new byte[8192];
+        try {
+            while (in.read(buffer) != -1) {
+                // discard
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not drain pipe", e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close pipe", e);
+            }
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.github.eirslett.maven.plugins.frontend.lib;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 enum Architecture { x86, x64, ppc64le, arm64;
     public static Architecture guess(){
         String arch = System.getProperty("os.arch");
@@ -47,10 +51,16 @@ enum OS { Windows, Mac, Linux, SunOS;
 class Platform {
     private final OS os;
     private final Architecture architecture;
+    private final String preferredArchiveExtension;
 
     public Platform(OS os, Architecture architecture) {
+        this(os, architecture, null);
+    }
+
+    private Platform(OS os, Architecture architecture, String preferredArchiveExtension) {
         this.os = os;
         this.architecture = architecture;
+        this.preferredArchiveExtension = preferredArchiveExtension;
     }
 
     public static Platform guess(){
@@ -59,10 +69,49 @@ class Platform {
         return new Platform(os,architecture);
     }
 
+    /**
+     * The platform of a node classifier like "linux-x64", as returned by {@link #getNodeClassifier()}.
+     *
+     * @throws IllegalArgumentException if the classifier names no known platform
+     */
+    public static Platform forClassifier(String classifier) {
+        int dash = classifier.indexOf('-');
+        for (OS os : OS.values()) {
+            if (dash > 0 && os.getCodename().equals(classifier.substring(0, dash))) {
+                for (Architecture architecture : Architecture.values()) {
+                    if (architecture.name().equals(classifier.substring(dash + 1))) {
+                        return new Platform(os, architecture);
+                    }
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown platform '" + classifier + "', expected one like linux-x64");
+    }
+
     public String getArchiveExtension(){
         return os.getArchiveExtension();
     }
 
+    /**
+     * @param preferredArchiveExtension the node archive to download if there is one for this platform, like
+     *                                  "tar.xz"; null for the usual archive
+     */
+    public Platform withPreferredArchiveExtension(String preferredArchiveExtension) {
+        return new Platform(os, architecture, preferredArchiveExtension);
+    }
+
+    /**
+     * The node archives for this platform, in order of preference. Windows only has zip archives; elsewhere
+     * tar.gz is always last, because every node version has one.
+     */
+    public List<String> getArchiveExtensions() {
+        String archiveExtension = getArchiveExtension();
+        if (isWindows() || preferredArchiveExtension == null || preferredArchiveExtension.equals(archiveExtension)) {
+            return Collections.singletonList(archiveExtension);
+        }
+        return Arrays.asList(preferredArchiveExtension, archiveExtension);
+    }
+
     public String getCodename(){
         return os.getCodename();
     }
@@ -84,6 +133,10 @@ class Platform {
     }
 
     public String getNodeDownloadFilename(String nodeVersion, boolean archiveOnWindows) {
+        return getNodeDownloadFilename(nodeVersion, archiveOnWindows, os.getArchiveExtension());
+    }
+
+    public String getNodeDownloadFilename(String nodeVersion, boolean archiveOnWindows, String archiveExtension) {
         if(isWindows() && !archiveOnWindows) {
             if(architecture == Architecture.x64){
                 if (nodeVersion.startsWith("v0.")) {
@@ -99,7 +152,7 @@ class Platform {
                 }
             }
         } else {
-            return nodeVersion + "/" + getLongNodeFilename(nodeVersion, archiveOnWindows) + "." + os.getArchiveExtension();
+            return nodeVersion + "/" + getLongNodeFilename(nodeVersion, archiveOnWindows) + "." + archiveExtension;
         }
     }
 
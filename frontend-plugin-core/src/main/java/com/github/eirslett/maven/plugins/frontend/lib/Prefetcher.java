@@ -0,0 +1,377 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads node, npm and yarn archives into the cache without installing them, for any number of versions
+ * and platforms, so agents can later install from the cache without a connection. The archives are cached
+ * under the same names the installers look for, verified against the published checksums like every other
+ * download, and never unpacked. All of them are downloaded at the same time, within the limits of the
+ * download scheduler.
+ */
+public final class Prefetcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Prefetcher.class);
+
+    private static final long CACHED = -1;
+
+    private static final int MAX_THREADS = 16;
+
+    private List<String> nodeVersions = new ArrayList<String>();
+
+    private List<String> npmVersions = new ArrayList<String>();
+
+    private List<String> yarnVersions = new ArrayList<String>();
+
+    private List<String> platforms = new ArrayList<String>();
+
+    private String nodeDownloadRoot = NodeInstaller.DEFAULT_NODEJS_DOWNLOAD_ROOT;
+
+    private String npmDownloadRoot = NPMInstaller.DEFAULT_NPM_DOWNLOAD_ROOT;
+
+    private String yarnDownloadRoot = YarnInstaller.DEFAULT_YARN_DOWNLOAD_ROOT;
+
+    private String userName, password;
+
+    private final CacheResolver cacheResolver;
+
+    private final FileDownloader nodeDownloader;
+
+    private final FileDownloader packageManagerDownloader;
+
+    private final DownloadConfig downloadConfig;
+
+    Prefetcher(CacheResolver cacheResolver, FileDownloader nodeDownloader, FileDownloader packageManagerDownloader,
+               DownloadConfig downloadConfig) {
+        this.cacheResolver = cacheResolver;
+        this.nodeDownloader = nodeDownloader;
+        this.packageManagerDownloader = packageManagerDownloader;
+        this.downloadConfig = downloadConfig;
+    }
+
+    public Prefetcher setNodeVersions(List<String> nodeVersions) {
+        this.nodeVersions = nodeVersions;
+        return this;
+    }
+
+    public Prefetcher setNpmVersions(List<String> npmVersions) {
+        this.npmVersions = npmVersions;
+        return this;
+    }
+
+    public Prefetcher setYarnVersions(List<String> yarnVersions) {
+        this.yarnVersions = yarnVersions;
+        return this;
+    }
+
+    /**
+     * @param platforms node classifiers like "linux-x64" or "win-x64"; none for the platform of this machine
+     */
+    public Prefetcher setPlatforms(List<String> platforms) {
+        this.platforms = platforms;
+        return this;
+    }
+
+    public Prefetcher setNodeDownloadRoot(String nodeDownloadRoot) {
+        this.nodeDownloadRoot = nodeDownloadRoot;
+        return this;
+    }
+
+    public Prefetcher setNpmDownloadRoot(String npmDownloadRoot) {
+        this.npmDownloadRoot = npmDownloadRoot;
+        return this;
+    }
+
+    public Prefetcher setYarnDownloadRoot(String yarnDownloadRoot) {
+        this.yarnDownloadRoot = yarnDownloadRoot;
+        return this;
+    }
+
+    public Prefetcher setUserName(String userName) {
+        this.userName = userName;
+        return this;
+    }
+
+    public Prefetcher setPassword(String password) {
+        this.password = password;
+        return this;
+    }
+
+    /**
+     * Downloads every archive that is not in the cache yet, and logs how many bytes that took and how long.
+     *
+     * @throws InstallationException if any of them could not be downloaded; the others are downloaded anyway
+     */
+    public void prefetch() throws InstallationException {
+        List<Download> downloads = new ArrayList<Download>();
+        Collection<String> classifiers = this.platforms.isEmpty()
+            ? Collections.singletonList(Platform.guess().getNodeClassifier()) : unique(this.platforms);
+        for (String classifier : classifiers) {
+            final Platform platform;
+            try {
+                platform = Platform.forClassifier(classifier)
+                    .withPreferredArchiveExtension(this.downloadConfig.getArchiveFormat().getExtension());
+            } catch (IllegalArgumentException e) {
+                throw new InstallationException(e.getMessage());
+            }
+            for (String nodeVersion : unique(this.nodeVersions)) {
+                downloads.add(new NodeDownload(nodeVersion, platform));
+                if (platform.isWindows()) {
+                    // Without npm from node, Windows installs only take the binary
+                    downloads.add(new NodeBinaryDownload(nodeVersion, platform));
+                }
+            }
+        }
+        for (String npmVersion : unique(this.npmVersions)) {
+            downloads.add(new NpmDownload(npmVersion));
+        }
+        for (String yarnVersion : unique(this.yarnVersions)) {
+            if (!yarnVersion.startsWith("v")) {
+                throw new InstallationException("Yarn version has to start with prefix 'v'.");
+            }
+            downloads.add(new YarnDownload(yarnVersion));
+        }
+        if (downloads.isEmpty()) {
+            LOGGER.info("Nothing to prefetch");
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(downloads.size(), MAX_THREADS));
+        final List<Future<Long>> results;
+        try {
+            results = executor.invokeAll(downloads);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InstallationException("Interrupted while prefetching", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long bytes = 0;
+        int downloaded = 0, cached = 0, failed = 0;
+        for (int i = 0; i < downloads.size(); i++) {
+            try {
+                long result = results.get(i).get();
+                if (result == CACHED) {
+                    cached++;
+                } else {
+                    downloaded++;
+                    bytes += result;
+                }
+            } catch (ExecutionException e) {
+                failed++;
+                LOGGER.error("Could not prefetch {}: {}", downloads.get(i), e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InstallationException("Interrupted while prefetching", e);
+            }
+        }
+        LOGGER.info("Prefetched {} archives in {} ms: downloaded {} ({} bytes), {} already in the cache",
+            downloads.size(), System.currentTimeMillis() - start, downloaded, bytes, cached);
+        if (failed > 0) {
+            throw new InstallationException("Could not prefetch " + failed + " of " + downloads.size()
+                + " archives");
+        }
+    }
+
+    private static Collection<String> unique(List<String> values) {
+        return new LinkedHashSet<String>(values);
+    }
+
+    /**
+     * Downloads one archive into the cache, unless it is there already.
+     */
+    private abstract class Download implements Callable<Long>, ArchiveInstaller.ChecksumLookup {
+
+        private final String description;
+
+        Download(String description) {
+            this.description = description;
+        }
+
+        /**
+         * @return the bytes downloaded, or {@link #CACHED}
+         */
+        protected long fetch(File archive, List<String> downloadRoots, String downloadFilename,
+                             FileDownloader fileDownloader) throws DownloadException {
+            if (Utils.isCached(cacheResolver, archive)) {
+                return CACHED;
+            }
+            if (Utils.isShared(cacheResolver, archive)) {
+                // Only intact archives are resolved in a shared cache, so this one changed since
+                throw new DownloadException(archive + " in a shared cache has changed since it was resolved");
+            }
+            if (downloadConfig.isOffline() && (!archive.isFile() || Checksum.hasStamp(archive))) {
+                throw new DownloadException(archive + " is not in the cache, or not verified, and cannot be downloaded"
+                    + " in offline mode");
+            }
+            CacheEntryLock lock = CacheEntryLock.acquire(archive);
+            try {
+                // Another build may have downloaded it while we were waiting for the lock
+                if (archive.exists() && Checksum.isIntact(archive)) {
+                    return CACHED;
+                }
+                if (downloadConfig.isOffline()) {
+                    ArchiveInstaller.useUnstamped(archive, downloadRoots, this);
+                    return CACHED;
+                }
+                Checksum checksum = lookup(downloadRoots);
+                if (Checksum.verifyUnstamped(archive, checksum)) {
+                    return CACHED;
+                }
+                List<String> downloadUrls = Utils.downloadUrls(downloadRoots, downloadFilename);
+                LOGGER.info("Downloading {} to {}", downloadUrls.get(0), archive);
+                fileDownloader.download(downloadUrls, archive.getPath(), userName, password, checksum);
+                return archive.length();
+            } finally {
+                lock.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.description;
+        }
+    }
+
+    private final class NodeDownload extends Download {
+
+        private final String version;
+
+        private final Platform platform;
+
+        private String downloadFilename;
+
+        NodeDownload(String version, Platform platform) {
+            super("node " + version + " for " + platform.getNodeClassifier());
+            this.version = version;
+            this.platform = platform;
+        }
+
+        @Override
+        public Long call() throws DownloadException {
+            List<String> archiveExtensions = this.platform.getArchiveExtensions();
+            for (String archiveExtension : archiveExtensions) {
+                File archive = archive(archiveExtension);
+                if (Utils.isCached(cacheResolver, archive)) {
+                    return CACHED;
+                }
+            }
+            for (int i = 0; ; i++) {
+                String archiveExtension = archiveExtensions.get(i);
+                this.downloadFilename = this.platform.getNodeDownloadFilename(this.version, true, archiveExtension);
+                try {
+                    return fetch(archive(archiveExtension), Utils.splitDownloadRoots(nodeDownloadRoot),
+                        this.downloadFilename, nodeDownloader);
+                } catch (DownloadException e) {
+                    if (i == archiveExtensions.size() - 1) {
+                        throw e;
+                    }
+                    // Older versions were not published in every format
+                    LOGGER.warn("Could not download {} ({}), trying the next archive format", this.downloadFilename,
+                        e.getMessage());
+                }
+            }
+        }
+
+        private File archive(String archiveExtension) {
+            return cacheResolver.resolve(new CacheDescriptor("node", this.version,
+                this.platform.getNodeClassifier(), archiveExtension));
+        }
+
+        @Override
+        public Checksum lookup(List<String> downloadRoots) {
+            return Checksums.forNodeDownload(nodeDownloader, downloadRoots, this.version, this.downloadFilename,
+                userName, password);
+        }
+    }
+
+    private final class NodeBinaryDownload extends Download {
+
+        private final String version;
+
+        private final Platform platform;
+
+        NodeBinaryDownload(String version, Platform platform) {
+            super("node.exe " + version + " for " + platform.getNodeClassifier());
+            this.version = version;
+            this.platform = platform;
+        }
+
+        @Override
+        public Long call() throws DownloadException {
+            return fetch(cacheResolver.resolve(new CacheDescriptor("node", this.version,
+                this.platform.getNodeClassifier(), "exe")), Utils.splitDownloadRoots(nodeDownloadRoot),
+                downloadFilename(), nodeDownloader);
+        }
+
+        private String downloadFilename() {
+            return this.platform.getNodeDownloadFilename(this.version, false);
+        }
+
+        @Override
+        public Checksum lookup(List<String> downloadRoots) {
+            return Checksums.forNodeDownload(nodeDownloader, downloadRoots, this.version, downloadFilename(),
+                userName, password);
+        }
+    }
+
+    private final class NpmDownload extends Download {
+
+        private final String version;
+
+        NpmDownload(String version) {
+            super("npm " + version);
+            this.version = version;
+        }
+
+        @Override
+        public Long call() throws DownloadException {
+            return fetch(cacheResolver.resolve(new CacheDescriptor("npm", this.version, "tar.gz")),
+                Utils.splitDownloadRoots(npmDownloadRoot), "npm-" + this.version + ".tgz", packageManagerDownloader);
+        }
+
+        @Override
+        public Checksum lookup(List<String> downloadRoots) {
+            return Checksums.forNpmDownload(packageManagerDownloader, downloadRoots, this.version, userName,
+                password);
+        }
+    }
+
+    private final class YarnDownload extends Download {
+
+        private final String version;
+
+        YarnDownload(String version) {
+            super("yarn " + version);
+            this.version = version;
+        }
+
+        @Override
+        public Long call() throws DownloadException {
+            String fileending = "/yarn-" + this.version + ".tar.gz";
+            return fetch(cacheResolver.resolve(new CacheDescriptor("yarn", this.version, fileending)),
+                Utils.splitDownloadRoots(yarnDownloadRoot), this.version + fileending, packageManagerDownloader);
+        }
+
+        @Override
+        public Checksum lookup(List<String> downloadRoots) {
+            // Yarn does not publish checksums next to its releases
+            return null;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+
+/**
+ * A cache that is told about the archives that were downloaded into it, to register or share them.
+ */
+public interface PublishingCacheResolver extends CacheResolver {
+
+  /**
+   * Called once an archive has been downloaded and verified at a file that {@link #resolve} returned. Other
+   * downloads, like checksum lists, are reported too and should be ignored.
+   */
+  void downloaded(File archive);
+}
@@ -0,0 +1,21 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+
+/**
+ * A cache that resolves some archives in read-only shared caches. Those archives must never be locked, deleted
+ * or downloaded again where they are.
+ */
+public interface SharedCacheResolver extends CacheResolver {
+
+  /**
+   * @return whether the archive, as returned by {@link #resolve}, is in a read-only shared cache
+   */
+  boolean isShared(File archive);
+
+  /**
+   * Resolves the archive in the cache that archives are downloaded into, leaving out the shared caches. Used
+   * when an archive from a shared cache turns out to be broken.
+   */
+  File resolveLocal(CacheDescriptor cacheDescriptor);
+}
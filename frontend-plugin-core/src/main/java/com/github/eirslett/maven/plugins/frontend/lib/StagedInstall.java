@@ -0,0 +1,183 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An install that is unpacked into a staging directory and then published into the node directory, so a
+ * build that dies halfway leaves the previous install or none, never half of one. The staging directory has
+ * the layout of the node directory. Each part of the install, like the node binary or the npm directory, is
+ * published with one atomic rename; the install manifest is written after the last one, so an install that
+ * was not published completely is not taken for installed.
+ *
+ * Installs are staged in {@code node/.staging}, on the file system they are published to. A staging root
+ * elsewhere, like a RAM disk, speeds up unpacking many small files; the finished install is then moved next
+ * to the node directory in one pass before it is published. Staging directories older than an hour are left
+ * from builds that died, and deleted by the next install.
+ */
+final class StagedInstall implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StagedInstall.class);
+
+    static final String STAGING_DIRECTORY = ".staging";
+
+    private static final String PREFIX = "frontend-";
+
+    private static final long STALE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final File nodeDirectory;
+
+    private final File directory;
+
+    private final File local;
+
+    private StagedInstall(File nodeDirectory, File directory, File local) {
+        this.nodeDirectory = nodeDirectory;
+        this.directory = directory;
+        this.local = local;
+    }
+
+    /**
+     * Creates a new staging directory, and deletes the ones that were left behind.
+     *
+     * @param stagingRoot directory to unpack into, or null to unpack next to the node directory
+     * @param tool        names the staging directory
+     */
+    static StagedInstall begin(File nodeDirectory, File stagingRoot, String tool) throws IOException {
+        File localRoot = new File(nodeDirectory, STAGING_DIRECTORY);
+        deleteStale(localRoot);
+        String name = PREFIX + tool + "-" + System.currentTimeMillis() + "-" + System.nanoTime();
+        File local = new File(localRoot, name);
+        File directory = local;
+        if (stagingRoot != null) {
+            deleteStale(stagingRoot);
+            directory = new File(stagingRoot, name);
+        }
+        if (!directory.mkdirs()) {
+            throw new IOException("Could not create the staging directory " + directory);
+        }
+        return new StagedInstall(nodeDirectory, directory, local);
+    }
+
+    /**
+     * The directory to unpack the install into, laid out like the node directory.
+     */
+    File getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Replaces the parts of the node directory with the staged ones, each with one rename. Parts that were
+     * not staged are left alone.
+     *
+     * @param parts paths relative to the node directory, with forward slashes
+     */
+    void publish(String... parts) throws IOException {
+        if (!this.directory.equals(this.local)) {
+            moveTree(this.directory.toPath(), this.local.toPath());
+        }
+        int replaced = 0;
+        for (String part : parts) {
+            Path staged = this.local.toPath().resolve(Utils.normalize(part));
+            if (!Files.exists(staged, LinkOption.NOFOLLOW_LINKS)) {
+                continue;
+            }
+            Path target = this.nodeDirectory.toPath().resolve(Utils.normalize(part));
+            Files.createDirectories(target.getParent());
+            if (Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+                // A directory cannot be renamed over another one, so the old one moves out of the way first
+                Path old = this.local.toPath().resolve(".replaced-" + replaced++);
+                Files.move(target, old, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes the staging directory, with whatever was not published and the parts that were replaced.
+     */
+    @Override
+    public void close() {
+        for (File staging : new File[] { this.directory, this.local }) {
+            try {
+                if (staging.exists()) {
+                    Utils.deleteTree(staging.toPath());
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Could not delete the staging directory {}", staging, e);
+            }
+        }
+    }
+
+    /**
+     * Moves the tree with one rename if it stays on the same file system, otherwise copies it and deletes
+     * the original.
+     */
+    private static void moveTree(final Path source, final Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        } catch (AtomicMoveNotSupportedException e) {
+            LOGGER.debug("{} is on another file system than {}, copying it", source, target);
+        }
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes)
+                throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(directory).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.copy(file, target.resolve(source.relativize(file).toString()),
+                    StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Utils.deleteTree(source);
+    }
+
+    /**
+     * Deletes the staging directories in the root that were created more than an hour ago, which only
+     * happens when a build dies while installing. Their names start with the time they were created at.
+     */
+    private static void deleteStale(File root) {
+        File[] stagings = root.listFiles();
+        if (stagings == null) {
+            return;
+        }
+        long staleBefore = System.currentTimeMillis() - STALE_MILLIS;
+        for (File staging : stagings) {
+            // The last part is System.nanoTime(), which can be negative
+            String[] name = staging.getName().split("-", 4);
+            if (!staging.getName().startsWith(PREFIX) || name.length != 4) {
+                continue;
+            }
+            try {
+                if (Long.parseLong(name[2]) < staleBefore) {
+                    LOGGER.info("Deleting {}, left behind by an install that did not finish", staging);
+                    Utils.deleteTree(staging.toPath());
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.debug("{} is not a staging directory", staging);
+            } catch (IOException e) {
+                LOGGER.warn("Could not delete {}: {}", staging, e.getMessage());
+            }
+        }
+    }
+}
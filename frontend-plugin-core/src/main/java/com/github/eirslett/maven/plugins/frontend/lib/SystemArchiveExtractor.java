@@ -0,0 +1,205 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unpacks archives with the system's {@code tar} and {@code unzip} commands. Archives they cannot unpack, or
+ * that need a filter other than a {@link PathEntryFilter}, are handed to the fallback extractor, as are
+ * streams and msi packages. Path mappings become {@code --strip-components} or GNU tar's {@code --transform};
+ * unzip has neither, so mapped zip archives are always handed on. GNU tar, bsdtar and Info-ZIP unzip refuse
+ * absolute entry names and {@code ..} in them by default; the symbolic links they created are checked like
+ * {@link ArchivePaths} checks them afterwards, and the extraction fails if one points out of the destination.
+ */
+final class SystemArchiveExtractor implements ArchiveExtractor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SystemArchiveExtractor.class);
+
+    private final Platform platform;
+
+    private final boolean tar;
+
+    private final boolean unzip;
+
+    private final ArchiveExtractor fallback;
+
+    /**
+     * @param tar   whether a {@code tar} command is installed
+     * @param unzip whether an {@code unzip} command is installed
+     */
+    SystemArchiveExtractor(Platform platform, boolean tar, boolean unzip, ArchiveExtractor fallback) {
+        this.platform = platform;
+        this.tar = tar;
+        this.unzip = unzip;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Whether the command is on the path, found by running it with the given arguments.
+     */
+    static boolean isInstalled(Platform platform, String... command) {
+        try {
+            new ProcessExecutor(new File("."), Collections.<String>emptyList(), toList(command), platform, null)
+                .executeAndGetResult();
+            return true;
+        } catch (ProcessExecutionException e) {
+            LOG.debug("{} is not available", command[0], e);
+            return false;
+        }
+    }
+
+    @Override
+    public void extract(String archive, String destinationDirectory) throws ArchiveExtractionException {
+        extract(archive, destinationDirectory, ArchiveEntryFilter.ALL);
+    }
+
+    @Override
+    public void extract(String archive, String destinationDirectory, ArchiveEntryFilter filter)
+        throws ArchiveExtractionException {
+        extract(archive, destinationDirectory, filter, PathMapping.IDENTITY);
+    }
+
+    @Override
+    public void extract(String archive, String destinationDirectory, ArchiveEntryFilter filter, PathMapping mapping)
+        throws ArchiveExtractionException {
+        // The commands run in the destination directory
+        String archivePath = new File(archive).getAbsolutePath();
+        List<String> paths = paths(filter);
+        List<String> command = null;
+        List<String> tarOptions = tarOptions(mapping);
+        if (paths != null && tarOptions != null && this.tar
+            && (archive.endsWith(".tar.gz") || archive.endsWith(".tar.xz"))) {
+            command = toList("tar", archive.endsWith(".tar.xz") ? "-xJf" : "-xzf", archivePath, "--no-same-owner");
+            command.addAll(tarOptions);
+            command.addAll(paths);
+        } else if (paths != null && mapping.isIdentity() && this.unzip && archive.endsWith(".zip")) {
+            command = toList("unzip", "-q", "-o", archivePath);
+            try {
+                command.addAll(zipPatterns(archive, paths));
+            } catch (IOException e) {
+                throw new ArchiveExtractionException("Could not read archive: '" + archive + "'", e);
+            }
+        }
+        if (command == null) {
+            this.fallback.extract(archive, destinationDirectory, filter, mapping);
+            return;
+        }
+
+        File destination = new File(destinationDirectory);
+        destination.mkdirs();
+        try {
+            new ProcessExecutor(destination, Collections.<String>emptyList(), command, this.platform, null)
+                .executeAndGetResult();
+        } catch (ProcessExecutionException e) {
+            LOG.warn("Could not extract {} with {}, extracting it with Java instead: {}", archive, command.get(0),
+                e.getMessage());
+            this.fallback.extract(archive, destinationDirectory, filter, mapping);
+            return;
+        }
+        try {
+            ArchivePaths.checkSymbolicLinks(destination.toPath());
+        } catch (IOException e) {
+            throw new ArchiveExtractionException("Could not extract archive: '" + archive + "'", e);
+        }
+    }
+
+    @Override
+    public void extractTarGz(InputStream archive, String destinationDirectory) throws ArchiveExtractionException {
+        this.fallback.extractTarGz(archive, destinationDirectory);
+    }
+
+    @Override
+    public void extractTarGz(InputStream archive, String destinationDirectory, ArchiveEntryFilter filter)
+        throws ArchiveExtractionException {
+        this.fallback.extractTarGz(archive, destinationDirectory, filter);
+    }
+
+    @Override
+    public void extractTarGz(InputStream archive, String destinationDirectory, ArchiveEntryFilter filter,
+                             PathMapping mapping) throws ArchiveExtractionException {
+        this.fallback.extractTarGz(archive, destinationDirectory, filter, mapping);
+    }
+
+    /**
+     * The tar options for the mapping, or null if tar cannot express it. Each rewrite becomes a GNU tar
+     * {@code --transform} that leaves symbolic link targets alone; other tars reject it and fall back.
+     * Stripping and rewriting together are left to the fallback too, since tars differ in which comes first.
+     */
+    private static List<String> tarOptions(PathMapping mapping) {
+        List<String> options = new ArrayList<String>();
+        if (mapping.getStripComponents() > 0) {
+            if (!mapping.getRewrites().isEmpty()) {
+                return null;
+            }
+            options.add("--strip-components=" + mapping.getStripComponents());
+        }
+        for (Map.Entry<String, String> rewrite : mapping.getRewrites().entrySet()) {
+            if (rewrite.getValue().isEmpty() || (rewrite.getKey() + rewrite.getValue()).indexOf(',') != -1) {
+                return null;
+            }
+            // Extended regular expression; the prefix only matches whole path components
+            options.add("--transform=s,^(\\./)?" + escapeRegex(rewrite.getKey()) + "(/|$),"
+                + rewrite.getValue().replace("\\", "\\\\").replace("&", "\\&") + "\\2,xS");
+        }
+        return options;
+    }
+
+    private static String escapeRegex(String value) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if ("\\.[]{}()*+?^$|".indexOf(c) != -1) {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * The paths to pass to the command, or null if the filter cannot be expressed as paths.
+     */
+    private static List<String> paths(ArchiveEntryFilter filter) {
+        if (filter == ArchiveEntryFilter.ALL) {
+            return Collections.emptyList();
+        } else if (filter instanceof PathEntryFilter) {
+            return ((PathEntryFilter) filter).getPaths();
+        }
+        return null;
+    }
+
+    /**
+     * unzip fails for patterns that match nothing, so files and directories need different patterns. Reading
+     * the names only takes the central directory at the end of the zip.
+     */
+    private static List<String> zipPatterns(String archive, List<String> paths) throws IOException {
+        List<String> patterns = new ArrayList<String>();
+        if (paths.isEmpty()) {
+            return patterns;
+        }
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            for (String path : paths) {
+                if (zipFile.getEntry(path) != null && !zipFile.getEntry(path).isDirectory()) {
+                    patterns.add(path);
+                } else {
+                    patterns.add(path + "/*");
+                }
+            }
+        }
+        return patterns;
+    }
+
+    private static List<String> toList(String... values) {
+        List<String> list = new ArrayList<String>();
+        Collections.addAll(list, values);
+        return list;
+    }
+}
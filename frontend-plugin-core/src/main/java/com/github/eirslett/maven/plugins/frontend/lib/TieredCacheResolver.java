@@ -0,0 +1,145 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Looks archives up in read-only shared caches first, like a pre-seeded NFS mount on every build machine, and
+ * then in a local cache that archives are downloaded into. A shared archive is used where it is, without copying
+ * it, and only if it is intact; otherwise the local cache is used. Nothing is ever locked, deleted or written in a
+ * shared cache: when a shared archive cannot be extracted after all, the installers download it into the local
+ * cache (see {@link #resolveLocal}) and leave the shared one alone.
+ *
+ * A shared cache is either laid out like the {@code cache} directory of an install directory, or like a local
+ * repository (its {@code com/github/eirslett} directory, as filled by the prefetch goal).
+ */
+public final class TieredCacheResolver implements EvictingCacheResolver, PublishingCacheResolver,
+    SharedCacheResolver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TieredCacheResolver.class);
+
+    private static final String GROUP_PATH = "com/github/eirslett/";
+
+    private final List<File> sharedDirectories;
+
+    private final CacheResolver localCache;
+
+    // Per tier, the shared ones first and the local one last
+    private final int[] hits;
+
+    private final int[] misses;
+
+    // Each archive is counted once, however often the installers resolve it
+    private final Set<String> counted = new HashSet<String>();
+
+    public TieredCacheResolver(List<File> sharedDirectories, CacheResolver localCache) {
+        this.sharedDirectories = new ArrayList<File>(sharedDirectories);
+        this.localCache = localCache;
+        this.hits = new int[this.sharedDirectories.size() + 1];
+        this.misses = new int[this.sharedDirectories.size() + 1];
+    }
+
+    @Override
+    public File resolve(CacheDescriptor cacheDescriptor) {
+        final String filename = DirectoryCacheResolver.filename(cacheDescriptor);
+        for (int tier = 0; tier < this.sharedDirectories.size(); tier++) {
+            File archive = findShared(this.sharedDirectories.get(tier), cacheDescriptor, filename);
+            if (archive != null) {
+                count(filename, tier);
+                return archive;
+            }
+        }
+        File archive = this.localCache.resolve(cacheDescriptor);
+        count(filename, archive.isFile() ? this.sharedDirectories.size() : -1);
+        return archive;
+    }
+
+    @Override
+    public boolean isShared(File archive) {
+        String path = archive.getAbsolutePath();
+        for (File directory : this.sharedDirectories) {
+            if (path.startsWith(directory.getAbsolutePath() + File.separator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public File resolveLocal(CacheDescriptor cacheDescriptor) {
+        return this.localCache.resolve(cacheDescriptor);
+    }
+
+    /**
+     * @return the archive, or null if the shared cache does not have it, or has one that was changed since it
+     * was verified (it could not be downloaded again there)
+     */
+    private static File findShared(File directory, CacheDescriptor cacheDescriptor, String filename) {
+        String version = cacheDescriptor.getVersion().replaceAll("^v", "");
+        String repositoryFilename = filename.replaceFirst("^" + cacheDescriptor.getName() + "-v",
+            cacheDescriptor.getName() + "-");
+        File[] candidates = {
+            new File(directory, filename),
+            new File(directory, GROUP_PATH + cacheDescriptor.getName() + "/" + version + "/" + repositoryFilename)
+        };
+        for (File candidate : candidates) {
+            if (candidate.isFile() && (Checksum.isIntact(candidate) || !Checksum.hasStamp(candidate))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param tier where the archive was found, or -1 if it has to be downloaded
+     */
+    private synchronized void count(String filename, int tier) {
+        if (!this.counted.add(filename)) {
+            return;
+        }
+        int last = tier < 0 ? this.hits.length - 1 : tier;
+        for (int i = 0; i < last; i++) {
+            this.misses[i]++;
+        }
+        if (tier < 0) {
+            this.misses[last]++;
+        } else {
+            this.hits[tier]++;
+        }
+    }
+
+    /**
+     * Logs how many archives each cache had, and how many it did not have.
+     */
+    public synchronized void logSummary() {
+        if (this.counted.isEmpty()) {
+            return;
+        }
+        for (int tier = 0; tier < this.hits.length; tier++) {
+            LOGGER.info("Archive cache {}: {} hits, {} misses",
+                tier < this.sharedDirectories.size() ? this.sharedDirectories.get(tier) : "local",
+                this.hits[tier], this.misses[tier]);
+        }
+    }
+
+    @Override
+    public void evict(long maxBytes) {
+        // Shared caches are maintained by whoever fills them
+        if (this.localCache instanceof EvictingCacheResolver) {
+            ((EvictingCacheResolver) this.localCache).evict(maxBytes);
+        }
+    }
+
+    @Override
+    public void downloaded(File archive) {
+        if (this.localCache instanceof PublishingCacheResolver) {
+            ((PublishingCacheResolver) this.localCache).downloaded(archive);
+        }
+    }
+}
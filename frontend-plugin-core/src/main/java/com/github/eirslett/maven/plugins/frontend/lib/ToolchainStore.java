@@ -0,0 +1,289 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A machine-wide store of unpacked toolchains, so the modules of a build (and other builds) do not each
+ * unpack their own copy of node and npm. Every archive is unpacked once into an entry named after the
+ * archive's digest and the layout the installer unpacks it into, and never changed afterwards. Install
+ * directories get hard links to the files of the entry, or copies where the store is on another file system.
+ *
+ * Hard links rather than symbolic links, because installers delete and rewrite what is in the install
+ * directory, which must not reach into the store, and because a hard link keeps working after its entry has
+ * been removed from the store. A hard link shares its file with the entry though, so a file that the installer
+ * changes after the install, even if only its permissions, has to be asked for as a copy. The files of an entry
+ * are made read-only, which catches writes by mistake, but not writes by root.
+ *
+ * Each use of an entry touches a {@code .used} stamp next to it, under the entry's lock. Once a day, entries that
+ * have not been used for the retention period are deleted, under the same lock, so an entry is never deleted
+ * while it is linked into an install directory.
+ */
+final class ToolchainStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ToolchainStore.class);
+
+    private static final String USED_SUFFIX = ".used";
+
+    private static final String STAGING_INFIX = ".tmp-";
+
+    private static final String GC_STAMP = ".gc";
+
+    private static final boolean POSIX =
+        FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    /**
+     * Unpacks the archive into a new store entry.
+     */
+    interface Extraction {
+        void extractInto(File directory) throws ArchiveExtractionException, DownloadException;
+    }
+
+    private final File directory;
+
+    private final long retentionMillis;
+
+    /**
+     * @param retentionDays days after their last use that entries are deleted; 0 or less keeps them forever
+     */
+    ToolchainStore(File directory, int retentionDays) {
+        this.directory = directory;
+        this.retentionMillis = TimeUnit.DAYS.toMillis(Math.max(0, retentionDays));
+    }
+
+    /**
+     * @return the store that the configuration asks for, or null if installs do not use one
+     */
+    static ToolchainStore forConfig(DownloadConfig downloadConfig) {
+        return downloadConfig.getToolchainStore() != null
+            ? new ToolchainStore(downloadConfig.getToolchainStore(), downloadConfig.getToolchainRetentionDays())
+            : null;
+    }
+
+    /**
+     * Links the unpacked archive into the destination directory, unpacking it into the store first if it is
+     * not there yet.
+     *
+     * @param layout names the way the installer unpacks the archive, like which entries it takes and where
+     *               it puts them
+     * @param copies the files, relative to the destination and separated by '/', that the installer changes
+     *               afterwards; they are copied instead of linked
+     */
+    void install(File archive, String layout, File destination, Extraction extraction, String... copies)
+        throws IOException, ArchiveExtractionException, DownloadException {
+        File entry = new File(this.directory, digest(archive) + "-" + layout);
+        CacheEntryLock lock = CacheEntryLock.acquire(entry);
+        try {
+            // Another build may have unpacked it while we were waiting for the lock
+            if (!entry.isDirectory()) {
+                populate(entry, extraction);
+            } else {
+                LOGGER.info("Using {} from the toolchain store", entry);
+            }
+            touch(new File(entry.getPath() + USED_SUFFIX));
+            link(entry.toPath(), destination.toPath(), new HashSet<String>(Arrays.asList(copies)));
+        } finally {
+            lock.close();
+        }
+        collectGarbage();
+    }
+
+    /**
+     * The verified digest from the cache's checksum stamp, or a SHA-256 of the archive if it has none.
+     */
+    private static String digest(File archive) throws IOException {
+        Checksum checksum = Checksum.readStamp(archive);
+        if (checksum != null) {
+            return checksum.toHex().substring(0, 32);
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The JVM does not support SHA-256", e);
+        }
+        byte[] buffer = new byte[NioTarExtractor.BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(archive)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return Hex.encodeHexString(digest.digest()).substring(0, 32);
+    }
+
+    /**
+     * Unpacks into a staging directory that is renamed into place when it is complete, so an entry that
+     * exists is always whole.
+     */
+    private void populate(File entry, Extraction extraction)
+        throws IOException, ArchiveExtractionException, DownloadException {
+        File staging = new File(this.directory, entry.getName() + STAGING_INFIX + System.nanoTime());
+        LOGGER.info("Adding {} to the toolchain store", entry);
+        try {
+            extraction.extractInto(staging);
+            makeReadOnly(staging.toPath());
+            Files.move(staging.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (staging.exists()) {
+                Utils.deleteTree(staging.toPath());
+            }
+        }
+    }
+
+    private static void makeReadOnly(Path root) throws IOException {
+        if (!POSIX) {
+            // Read-only files could not be replaced in install directories on Windows
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (attributes.isRegularFile()) {
+                    Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+                    permissions.remove(PosixFilePermission.OWNER_WRITE);
+                    permissions.remove(PosixFilePermission.GROUP_WRITE);
+                    permissions.remove(PosixFilePermission.OTHERS_WRITE);
+                    Files.setPosixFilePermissions(file, permissions);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Recreates the directories of the entry in the destination, with a hard link to every file but the copies.
+     * Once a link fails, as it does across file systems, the remaining files are copied.
+     */
+    private static void link(final Path entry, final Path destination, final Set<String> copies)
+        throws IOException {
+        final int[] linked = new int[2];
+        Files.walkFileTree(entry, new SimpleFileVisitor<Path>() {
+
+            private boolean hardLinks = true;
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes)
+                throws IOException {
+                Files.createDirectories(destination.resolve(entry.relativize(directory).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                String relative = entry.relativize(file).toString();
+                Path target = destination.resolve(relative);
+                Files.deleteIfExists(target);
+                if (attributes.isSymbolicLink()) {
+                    Files.createSymbolicLink(target, Files.readSymbolicLink(file));
+                    return FileVisitResult.CONTINUE;
+                }
+                if (this.hardLinks && !copies.contains(relative.replace(File.separatorChar, '/'))) {
+                    try {
+                        Files.createLink(target, file);
+                        linked[0]++;
+                        return FileVisitResult.CONTINUE;
+                    } catch (IOException | UnsupportedOperationException e) {
+                        LOGGER.debug("Could not link {} to {}, copying the toolchain instead", target, file, e);
+                        this.hardLinks = false;
+                    }
+                }
+                Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+                linked[1]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        LOGGER.info("Linked {} files from the toolchain store into {}, copied {}", linked[0], destination,
+            linked[1]);
+    }
+
+    /**
+     * Deletes the entries that have not been used for the retention period, and staging directories that
+     * were left behind by builds that died. Runs at most once a day.
+     */
+    private void collectGarbage() {
+        final long now = System.currentTimeMillis();
+        File stamp = new File(this.directory, GC_STAMP);
+        if (this.retentionMillis <= 0 || stamp.lastModified() > now - TimeUnit.DAYS.toMillis(1)) {
+            return;
+        }
+        touch(stamp);
+        File[] candidates = this.directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(USED_SUFFIX) || file.getName().contains(STAGING_INFIX);
+            }
+        });
+        if (candidates == null) {
+            return;
+        }
+        for (File candidate : candidates) {
+            try {
+                if (candidate.getName().contains(STAGING_INFIX)) {
+                    if (candidate.lastModified() < now - TimeUnit.DAYS.toMillis(1)) {
+                        Utils.deleteTree(candidate.toPath());
+                    }
+                } else if (candidate.lastModified() < now - this.retentionMillis) {
+                    String name = candidate.getName();
+                    delete(new File(this.directory, name.substring(0, name.length() - USED_SUFFIX.length())),
+                        candidate, now);
+                }
+            } catch (IOException | DownloadException e) {
+                LOGGER.warn("Could not delete {} from the toolchain store: {}", candidate, e.getMessage());
+            }
+        }
+    }
+
+    private void delete(File entry, File usedStamp, long now) throws IOException, DownloadException {
+        CacheEntryLock lock = CacheEntryLock.acquire(entry);
+        try {
+            // Another build may have used it since
+            if (usedStamp.lastModified() >= now - this.retentionMillis) {
+                return;
+            }
+            LOGGER.info("Deleting {} from the toolchain store, it has not been used for {} days", entry,
+                TimeUnit.MILLISECONDS.toDays(now - usedStamp.lastModified()));
+            if (entry.isDirectory()) {
+                // Out of the way first, so nobody links a half deleted entry
+                File trash = new File(this.directory, entry.getName() + STAGING_INFIX + System.nanoTime());
+                Files.move(entry.toPath(), trash.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                Utils.deleteTree(trash.toPath());
+            }
+            usedStamp.delete();
+        } finally {
+            lock.close();
+        }
+    }
+
+    private static void touch(File file) {
+        try {
+            if (!file.createNewFile()) {
+                file.setLastModified(System.currentTimeMillis());
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not touch {}", file, e);
+        }
+    }
+}
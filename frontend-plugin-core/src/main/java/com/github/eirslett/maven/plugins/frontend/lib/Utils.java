@@ -1,6 +1,12 @@
 package com.github.eirslett.maven.plugins.frontend.lib;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -31,7 +37,76 @@ final class Utils {
         return s.toString();
     }
 
+    /**
+     * Splits a download root setting into its mirrors, which are separated by commas.
+     */
+    public static List<String> splitDownloadRoots(String downloadRoots) {
+        List<String> result = new ArrayList<String>();
+        for (String downloadRoot : downloadRoots.split(",")) {
+            if (!downloadRoot.trim().isEmpty()) {
+                result.add(downloadRoot.trim());
+            }
+        }
+        return result;
+    }
+
+    public static List<String> downloadUrls(List<String> downloadRoots, String path) {
+        List<String> result = new ArrayList<String>(downloadRoots.size());
+        for (String downloadRoot : downloadRoots) {
+            result.add(downloadRoot + path);
+        }
+        return result;
+    }
+
     public static boolean isRelative(String path) {
         return !path.startsWith("/") && !path.startsWith("file:") && !path.matches("^[a-zA-Z]:\\\\.*");
     }
+
+    /**
+     * @return whether the archive is in a read-only shared cache, which must not be locked or written to
+     */
+    public static boolean isShared(CacheResolver cacheResolver, File archive) {
+        return cacheResolver instanceof SharedCacheResolver && ((SharedCacheResolver) cacheResolver).isShared(archive);
+    }
+
+    /**
+     * @return whether a cached archive can be used as is: it is unchanged since it was verified or downloaded, or
+     * it is in a shared cache without a stamp, as shared caches are seeded by hand and cannot be verified in place
+     */
+    public static boolean isCached(CacheResolver cacheResolver, File archive) {
+        return archive.exists() && (Checksum.isIntact(archive)
+            || isShared(cacheResolver, archive) && !Checksum.hasStamp(archive));
+    }
+
+    /**
+     * @return where the archive can be downloaded to, which is the archive itself unless it is in a read-only
+     * shared cache
+     */
+    public static File writableArchive(CacheResolver cacheResolver, CacheDescriptor cacheDescriptor, File archive) {
+        return isShared(cacheResolver, archive)
+            ? ((SharedCacheResolver) cacheResolver).resolveLocal(cacheDescriptor)
+            : archive;
+    }
+
+    /**
+     * Deletes a directory and everything in it without following symbolic links out of it.
+     */
+    public static void deleteTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
 }
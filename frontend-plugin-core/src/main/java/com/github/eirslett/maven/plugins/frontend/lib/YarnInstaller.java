@@ -1,12 +1,13 @@
 package com.github.eirslett.maven.plugins.frontend.lib;
 
-import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class YarnInstaller {
 
@@ -15,23 +16,19 @@ public class YarnInstaller {
     public static final String DEFAULT_YARN_DOWNLOAD_ROOT =
         "https://github.com/yarnpkg/yarn/releases/download/";
 
-    private static final Object LOCK = new Object();
-
     private String yarnVersion, yarnDownloadRoot, userName, password;
 
     private final Logger logger;
 
     private final InstallConfig config;
 
-    private final ArchiveExtractor archiveExtractor;
-
-    private final FileDownloader fileDownloader;
+    private final ArchiveInstaller archiveInstaller;
 
-    YarnInstaller(InstallConfig config, ArchiveExtractor archiveExtractor, FileDownloader fileDownloader) {
+    YarnInstaller(InstallConfig config, ArchiveExtractor archiveExtractor, FileDownloader fileDownloader,
+                  DownloadConfig downloadConfig) {
         logger = LoggerFactory.getLogger(getClass());
         this.config = config;
-        this.archiveExtractor = archiveExtractor;
-        this.fileDownloader = fileDownloader;
+        this.archiveInstaller = new ArchiveInstaller(config, archiveExtractor, fileDownloader, downloadConfig);
     }
 
     public YarnInstaller setYarnVersion(String yarnVersion) {
@@ -55,30 +52,51 @@ public class YarnInstaller {
     }
 
     public void install() throws InstallationException {
-        // use static lock object for a synchronized block
-        synchronized (LOCK) {
+        install(null);
+    }
+
+    /**
+     * @param nodeInstall the install of node that is running at the same time, or null if node is installed
+     *                    already
+     */
+    void install(Future<?> nodeInstall) throws InstallationException {
+        // Installs into other directories, and of other tools, go ahead in parallel
+        InstallLock lock = InstallLock.acquire(config.getInstallDirectory(), "yarn");
+        try {
             if (yarnDownloadRoot == null || yarnDownloadRoot.isEmpty()) {
                 yarnDownloadRoot = DEFAULT_YARN_DOWNLOAD_ROOT;
             }
-            if (!yarnIsAlreadyInstalled()) {
+            if (!yarnIsAlreadyInstalled(nodeInstall)) {
                 if (!yarnVersion.startsWith("v")) {
                     throw new InstallationException("Yarn version has to start with prefix 'v'.");
                 }
-                installYarn();
+                recordInstall(installYarn());
             }
+        } finally {
+            lock.close();
         }
     }
 
-    private boolean yarnIsAlreadyInstalled() {
+    private boolean yarnIsAlreadyInstalled(Future<?> nodeInstall) {
         try {
             YarnExecutorConfig executorConfig = new InstallYarnExecutorConfig(config);
             File nodeFile = executorConfig.getYarnPath();
             if (nodeFile.exists()) {
+                if (getManifest().isInstalled("yarn", yarnVersion)) {
+                    logger.info("Yarn {} is already installed.", yarnVersion);
+                    return true;
+                }
+                // Yarn runs on node
+                if (nodeInstall != null && !awaitNode(nodeInstall)) {
+                    return false;
+                }
                 final String version =
                     new YarnExecutor(executorConfig, Arrays.asList("--version"), null).executeAndGetResult().trim();
 
                 if (version.equals(yarnVersion.replaceFirst("^v", ""))) {
                     logger.info("Yarn {} is already installed.", version);
+                    // Installed by an older version of the plugin, the next build need not ask again
+                    recordInstall(null);
                     return true;
                 } else {
                     logger.info("Yarn {} was installed, but we need version {}", version, yarnVersion);
@@ -92,66 +110,82 @@ public class YarnInstaller {
         }
     }
 
-    private void installYarn() throws InstallationException {
+    /**
+     * @return whether node was installed
+     */
+    private boolean awaitNode(Future<?> nodeInstall) {
         try {
-            logger.info("Installing Yarn version {}", yarnVersion);
-            String downloadUrl = yarnDownloadRoot + yarnVersion;
-            String fileending = "/yarn-" + yarnVersion + ".tar.gz";
+            nodeInstall.get();
+            return true;
+        } catch (ExecutionException e) {
+            // Reported by whoever installs node
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 
-            downloadUrl += fileending;
+    /**
+     * The manifest lives in the node directory, which yarn is installed into.
+     */
+    private InstallManifest getManifest() {
+        return new InstallManifest(getNodeInstallDirectory());
+    }
 
-            CacheDescriptor cacheDescriptor = new CacheDescriptor("yarn", yarnVersion, fileending);
+    /**
+     * Records the install in the manifest, so the next build does not have to start yarn to ask for its
+     * version.
+     */
+    private void recordInstall(File archive) {
+        getManifest().record("yarn", yarnVersion, archive, new InstallYarnExecutorConfig(config).getYarnPath());
+    }
 
-            File archive = config.getCacheResolver().resolve(cacheDescriptor);
+    /**
+     * @return the archive yarn was installed from
+     */
+    private File installYarn() throws InstallationException {
+        try {
+            logger.info("Installing Yarn version {}", yarnVersion);
+            String fileending = "/yarn-" + yarnVersion + ".tar.gz";
+            String downloadFilename = yarnVersion + fileending;
 
-            downloadFileIfMissing(downloadUrl, archive, userName, password);
+            // Yarn does not publish checksums next to its releases, so yarn archives are not verified, and ones
+            // without a stamp are downloaded again, as they may not be complete
+            ArchiveInstaller.Download download = new ArchiveInstaller.Download("Yarn " + yarnVersion,
+                new CacheDescriptor("yarn", yarnVersion, fileending), Utils.splitDownloadRoots(yarnDownloadRoot),
+                downloadFilename, userName, password, ArchiveInstaller.UNPUBLISHED);
 
-            File installDirectory = getInstallDirectory();
+            File archive = archiveInstaller.resolve(download);
 
-            // We need to delete the existing yarn directory first so we clean out any old files, and
-            // so we can rename the package directory below.
+            StagedInstall staged = StagedInstall.begin(getNodeInstallDirectory(),
+                archiveInstaller.getStagingDirectory(), "yarn");
             try {
-                if (installDirectory.isDirectory()) {
-                    FileUtils.deleteDirectory(installDirectory);
-                }
-            } catch (IOException e) {
-                logger.warn("Failed to delete existing Yarn installation.");
+                archiveInstaller.install(download, archive, new File(staged.getDirectory(), "yarn"),
+                    ArchiveEntryFilter.ALL, PathMapping.IDENTITY, "yarn");
+                // Replaces the old yarn as a whole, so no files of it are left over
+                staged.publish("yarn");
+            } finally {
+                staged.close();
             }
 
-            extractFile(archive, installDirectory);
-
             logger.info("Installed Yarn locally.");
+            return archive;
         } catch (DownloadException e) {
             throw new InstallationException("Could not download Yarn", e);
         } catch (ArchiveExtractionException e) {
             throw new InstallationException("Could not extract the Yarn archive", e);
+        } catch (IOException e) {
+            throw new InstallationException("Could not install Yarn", e);
         }
     }
 
-    private File getInstallDirectory() {
-        File installDirectory = new File(config.getInstallDirectory(), INSTALL_PATH);
+    private File getNodeInstallDirectory() {
+        File installDirectory = new File(config.getInstallDirectory(), NodeInstaller.INSTALL_PATH);
         if (!installDirectory.exists()) {
             logger.debug("Creating install directory {}", installDirectory);
             installDirectory.mkdirs();
         }
         return installDirectory;
     }
-
-    private void extractFile(File archive, File destinationDirectory) throws ArchiveExtractionException {
-        logger.info("Unpacking {} into {}", archive, destinationDirectory);
-        archiveExtractor.extract(archive.getPath(), destinationDirectory.getPath());
-    }
-
-    private void downloadFileIfMissing(String downloadUrl, File destination, String userName, String password)
-        throws DownloadException {
-        if (!destination.exists()) {
-            downloadFile(downloadUrl, destination, userName, password);
-        }
-    }
-
-    private void downloadFile(String downloadUrl, File destination, String userName, String password)
-        throws DownloadException {
-        logger.info("Downloading {} to {}", downloadUrl, destination);
-        fileDownloader.download(downloadUrl, destination.getPath(), userName, password);
-    }
 }
@@ -0,0 +1,248 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@RunWith(Parameterized.class)
+public class ArchiveExtractorTest {
+
+    @Parameters(name = "{0} threads")
+    public static Collection<Object[]> threads() {
+        return Arrays.asList(new Object[][] { { 1 }, { 4 } });
+    }
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ArchiveExtractor extractor;
+
+    private File root;
+
+    private File destination;
+
+    public ArchiveExtractorTest(int threads) {
+        this.extractor = new DefaultArchiveExtractor(threads);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        this.root = this.temporaryFolder.newFolder("root");
+        this.destination = new File(this.root, "destination");
+        this.destination.mkdirs();
+    }
+
+    @Test
+    public void extractsFilesAndLinksInsideTheDestination() throws Exception {
+        File archive = tarGz(
+            file("node/lib/npm-cli.js", "npm"),
+            symbolicLink("node/bin/npm", "../lib/npm-cli.js"),
+            hardLink("node/bin/npm-copy", "node/lib/npm-cli.js"));
+
+        extract(archive);
+
+        Path npm = this.destination.toPath().resolve("node/bin/npm");
+        assertTrue(Files.isSymbolicLink(npm));
+        assertEquals("npm", read(npm));
+        assertEquals("npm", read(this.destination.toPath().resolve("node/bin/npm-copy")));
+    }
+
+    @Test
+    public void rejectsEntriesThatGoUp() throws Exception {
+        assertRejected(tarGz(file("../outside", "evil")));
+        assertRejected(tarGz(file("node/../../outside", "evil")));
+    }
+
+    @Test
+    public void writesAbsoluteEntriesInsideTheDestination() throws Exception {
+        String outside = new File(this.root, "outside").getAbsolutePath();
+
+        extract(tarGz(file(outside, "evil")));
+
+        assertFalse(new File(outside).exists());
+        assertTrue(new File(this.destination, outside).exists());
+    }
+
+    @Test
+    public void rejectsSymbolicLinksOutOfTheDestination() throws Exception {
+        assertRejected(tarGz(symbolicLink("escape", "../outside")));
+        assertRejected(tarGz(symbolicLink("escape", this.root.getAbsolutePath())));
+    }
+
+    @Test
+    public void rejectsSymbolicLinksThatEscapeThroughAnotherLink() throws Exception {
+        // "here" is the destination itself, so "here/up" -> "../outside" would point next to it
+        assertRejected(tarGz(
+            symbolicLink("here", "."),
+            symbolicLink("here/up", "../outside")));
+    }
+
+    @Test
+    public void rejectsSymbolicLinksThatEscapeThroughAChainOfLinks() throws Exception {
+        // Normalized as text, "d/d/../.." is the destination itself
+        assertRejected(tarGz(
+            symbolicLink("d", "."),
+            symbolicLink("outside", "d/d/../..")));
+    }
+
+    @Test
+    public void neverWritesThroughALinkFromTheArchive() throws Exception {
+        File outside = new File(this.root, "outside");
+        outside.mkdirs();
+        try {
+            extract(tarGz(
+                symbolicLink("dir", "../outside"),
+                file("dir/file", "evil")));
+        } catch (ArchiveExtractionException e) {
+            // Rejected, or the link could not replace the directory that was written first
+        }
+        assertEquals(0, outside.list().length);
+    }
+
+    @Test
+    public void rejectsHardLinksOutOfTheDestination() throws Exception {
+        File outside = new File(this.root, "outside");
+        Files.write(outside.toPath(), "secret".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            extract(tarGz(hardLink("link", "../outside")));
+            fail("Linked to a file outside of the destination");
+        } catch (ArchiveExtractionException e) {
+            assertFalse(new File(this.destination, "link").exists());
+        }
+    }
+
+    @Test
+    public void rejectsMappedPathsThatGoUp() throws Exception {
+        File archive = tarGz(file("package/file", "evil"));
+        try {
+            this.extractor.extract(archive.getPath(), this.destination.getPath(), ArchiveEntryFilter.ALL,
+                new PathMapping().withRewrite("package", ".."));
+            fail("Extracted " + archive + " outside of the destination");
+        } catch (ArchiveExtractionException e) {
+            assertFalse(new File(this.root, "file").exists());
+        }
+    }
+
+    @Test
+    public void rejectsZipEntriesThatGoUp() throws Exception {
+        File archive = new File(this.root, "archive.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            out.putNextEntry(new ZipEntry("../outside"));
+            out.write("evil".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        assertRejected(archive);
+    }
+
+    @Test
+    public void leavesTheStreamOpen() throws Exception {
+        File archive = tarGz(file("node/lib/npm-cli.js", "npm"));
+        final boolean[] closed = new boolean[1];
+        InputStream in = new FileInputStream(archive) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+        try {
+            this.extractor.extractTarGz(in, this.destination.getPath());
+            assertFalse(closed[0]);
+        } finally {
+            in.close();
+        }
+        assertEquals("npm", read(this.destination.toPath().resolve("node/lib/npm-cli.js")));
+    }
+
+    private void extract(File archive) throws ArchiveExtractionException {
+        this.extractor.extract(archive.getPath(), this.destination.getPath());
+    }
+
+    private void assertRejected(File archive) {
+        try {
+            extract(archive);
+            fail("Extracted " + archive + " outside of the destination");
+        } catch (ArchiveExtractionException e) {
+            assertFalse(new File(this.root, "outside").exists());
+        }
+    }
+
+    private static String read(Path path) throws IOException {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    private File tarGz(Entry... entries) throws IOException {
+        File archive = File.createTempFile("archive", ".tar.gz", this.root);
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(archive));
+             TarArchiveOutputStream tar = new TarArchiveOutputStream(out)) {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            for (Entry entry : entries) {
+                tar.putArchiveEntry(entry.tarEntry);
+                if (entry.content != null) {
+                    tar.write(entry.content);
+                }
+                tar.closeArchiveEntry();
+            }
+        }
+        return archive;
+    }
+
+    private static Entry file(String name, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        TarArchiveEntry tarEntry = new TarArchiveEntry(name);
+        tarEntry.setSize(bytes.length);
+        return new Entry(tarEntry, bytes);
+    }
+
+    private static Entry symbolicLink(String name, String target) {
+        TarArchiveEntry tarEntry = new TarArchiveEntry(name, TarConstants.LF_SYMLINK);
+        tarEntry.setLinkName(target);
+        return new Entry(tarEntry, null);
+    }
+
+    private static Entry hardLink(String name, String target) {
+        TarArchiveEntry tarEntry = new TarArchiveEntry(name, TarConstants.LF_LINK);
+        tarEntry.setLinkName(target);
+        return new Entry(tarEntry, null);
+    }
+
+    private static final class Entry {
+
+        private final TarArchiveEntry tarEntry;
+
+        private final byte[] content;
+
+        Entry(TarArchiveEntry tarEntry, byte[] content) {
+            this.tarEntry = tarEntry;
+            this.content = content;
+        }
+    }
+}
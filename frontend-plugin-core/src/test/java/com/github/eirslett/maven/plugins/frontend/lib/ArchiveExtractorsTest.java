@@ -0,0 +1,19 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.github.eirslett.maven.plugins.frontend.lib.DownloadConfig.ExtractorBackend;
+
+public class ArchiveExtractorsTest {
+
+    @Test
+    public void unpacksWithCommonsCompressUnlessAnotherBackendIsAskedFor() {
+        assertEquals(ExtractorBackend.JAVA, new DownloadConfig().getExtractorBackend());
+        assertEquals(ExtractorBackend.JAVA, new DownloadConfig().setExtractorBackend(null).getExtractorBackend());
+        assertTrue(ArchiveExtractors.create(new DownloadConfig().getExtractorBackend(), 1)
+            instanceof DefaultArchiveExtractor);
+    }
+}
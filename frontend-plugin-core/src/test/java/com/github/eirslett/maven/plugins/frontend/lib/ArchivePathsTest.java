@@ -0,0 +1,141 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArchivePathsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path destination;
+
+    @Before
+    public void setUp() throws IOException {
+        this.destination = this.temporaryFolder.newFolder("destination").toPath();
+    }
+
+    @Test
+    public void resolvesRelativeNames() throws IOException {
+        assertEquals(this.destination.resolve("node/bin/node"),
+            ArchivePaths.resolve(this.destination, "node/bin/node"));
+        assertEquals(this.destination.resolve("node/node.exe"),
+            ArchivePaths.resolve(this.destination, "node\\node.exe"));
+        assertEquals(this.destination.resolve("node"), ArchivePaths.resolve(this.destination, "./node/."));
+    }
+
+    @Test
+    public void rejectsAbsoluteNames() {
+        assertNotResolved("/etc/passwd");
+        assertNotResolved("\\Windows\\System32");
+        assertNotResolved("C:\\Windows");
+        assertNotResolved("c:/Windows");
+    }
+
+    @Test
+    public void rejectsNamesThatGoUp() {
+        assertNotResolved("..");
+        assertNotResolved("../node");
+        assertNotResolved("node/../../node");
+        assertNotResolved("node\\..\\..\\node");
+        // Even when the name ends up inside the destination again
+        assertNotResolved("node/../node");
+    }
+
+    @Test
+    public void allowsSymbolicLinksUpInsideTheDestination() throws IOException {
+        Files.createDirectories(this.destination.resolve("node/bin"));
+        ArchivePaths.checkSymbolicLink(this.destination, this.destination.resolve("node/bin/npm"),
+            "../lib/node_modules/npm/bin/npm-cli.js");
+    }
+
+    @Test
+    public void rejectsSymbolicLinksOutOfTheDestination() throws IOException {
+        Files.createDirectories(this.destination.resolve("node/bin"));
+        Path link = this.destination.resolve("node/bin/npm");
+        assertNotLinked(link, "../../../outside");
+        assertNotLinked(link, "/usr/bin/npm");
+        assertNotLinked(link, "C:\\npm");
+    }
+
+    @Test
+    public void rejectsSymbolicLinksThatGoUpAfterAName() throws IOException {
+        // Once "d" is a link to ".", "d/d/../.." is the parent of the destination
+        Files.createSymbolicLink(this.destination.resolve("d"), this.destination.getFileSystem().getPath("."));
+        assertNotLinked(this.destination.resolve("x"), "d/d/../..");
+        // Even before "d" is a link, as it could become one
+        Files.createDirectories(this.destination.resolve("node/lib"));
+        assertNotLinked(this.destination.resolve("node/npm"), "lib/../npm-cli.js");
+    }
+
+    @Test
+    public void rejectsSymbolicLinksThatGoUpFurtherThanTheyAreDeep() throws IOException {
+        Files.createDirectories(this.destination.resolve("node/bin"));
+        assertNotLinked(this.destination.resolve("node/bin/npm"), "../../..");
+        assertNotLinked(this.destination.resolve("npm"), "./../destination/npm-cli.js");
+        ArchivePaths.checkSymbolicLink(this.destination, this.destination.resolve("node/bin/npm"), "../../npm");
+    }
+
+    @Test
+    public void deletesSymbolicLinksOutOfTheDestinationThatAreOnDisk() throws IOException {
+        Files.createDirectories(this.destination.resolve("node/bin"));
+        Path npm = this.destination.resolve("node/bin/npm");
+        Path escape = this.destination.resolve("node/escape");
+        Files.createSymbolicLink(npm, this.destination.getFileSystem().getPath("../npm-cli.js"));
+        Files.createSymbolicLink(escape, this.destination.getFileSystem().getPath("../../outside"));
+        try {
+            ArchivePaths.checkSymbolicLinks(this.destination);
+            fail("Accepted a link from " + escape + " out of the destination");
+        } catch (IOException expected) {
+        }
+        assertTrue(Files.isSymbolicLink(npm));
+        assertFalse(Files.exists(escape, LinkOption.NOFOLLOW_LINKS));
+    }
+
+    @Test
+    public void rejectsLinksInADirectoryOutOfTheDestination() throws IOException {
+        Path outside = this.temporaryFolder.newFolder("outside").toPath();
+        Files.createSymbolicLink(this.destination.resolve("escape"), outside);
+        assertNotLinked(this.destination.resolve("escape/npm"), "npm-cli.js");
+    }
+
+    @Test
+    public void rejectsHardLinksToFilesOutOfTheDestination() throws IOException {
+        Path outside = this.temporaryFolder.newFile("outside").toPath();
+        Files.createSymbolicLink(this.destination.resolve("escape"), outside);
+        try {
+            ArchivePaths.checkHardLink(this.destination, this.destination.resolve("link"),
+                this.destination.resolve("escape"));
+            fail("Accepted a hard link to " + outside);
+        } catch (IOException expected) {
+        }
+    }
+
+    private void assertNotResolved(String name) {
+        try {
+            ArchivePaths.resolve(this.destination, name);
+            fail("Resolved '" + name + "'");
+        } catch (IOException expected) {
+        }
+    }
+
+    private void assertNotLinked(Path link, String target) {
+        try {
+            ArchivePaths.checkSymbolicLink(this.destination, link, target);
+            fail("Accepted a link from " + link + " to '" + target + "'");
+        } catch (IOException expected) {
+        }
+    }
+}
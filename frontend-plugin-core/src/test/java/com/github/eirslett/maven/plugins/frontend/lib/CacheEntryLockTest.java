@@ -0,0 +1,76 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CacheEntryLockTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void forgetsTheLocksThatNobodyHoldsOrWaitsFor() throws Exception {
+        int before = CacheEntryLock.threadLockCount();
+        File entry = new File(this.temporaryFolder.getRoot(), "archive.tar.gz");
+
+        CacheEntryLock lock = CacheEntryLock.acquire(entry);
+        CacheEntryLock reentered = CacheEntryLock.acquire(entry);
+        assertNull(CacheEntryLock.tryAcquire(entry));
+        assertEquals(before + 1, CacheEntryLock.threadLockCount());
+        reentered.close();
+        lock.close();
+
+        assertEquals(before, CacheEntryLock.threadLockCount());
+    }
+
+    @Test(timeout = 10000)
+    public void waitsForALockThatAnotherClassLoaderOfThisProcessHolds() throws Exception {
+        final File entry = new File(this.temporaryFolder.getRoot(), "archive.tar.gz");
+        // What a copy of the class in another class loader would do
+        RandomAccessFile file = new RandomAccessFile(entry.getPath() + CacheEntryLock.LOCK_SUFFIX, "rw");
+        FileLock otherLock = file.getChannel().lock();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertNull(CacheEntryLock.tryAcquire(entry));
+            Future<CacheEntryLock> lock = executor.submit(new Callable<CacheEntryLock>() {
+                @Override
+                public CacheEntryLock call() throws Exception {
+                    return CacheEntryLock.acquire(entry);
+                }
+            });
+            Thread.sleep(300);
+            assertFalse(lock.isDone());
+
+            otherLock.release();
+
+            final CacheEntryLock acquired = lock.get(5, TimeUnit.SECONDS);
+            assertNotNull(acquired);
+            // Locks are released by the thread that holds them
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    acquired.close();
+                    return null;
+                }
+            }).get();
+        } finally {
+            file.close();
+            executor.shutdownNow();
+        }
+    }
+}
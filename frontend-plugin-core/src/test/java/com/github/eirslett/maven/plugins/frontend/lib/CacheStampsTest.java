@@ -0,0 +1,143 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CacheStampsTest {
+
+    private static final String YARN_VERSION = "v0.16.1";
+
+    // Nothing listens there, so any download fails
+    private static final String DOWNLOAD_ROOT = "http://127.0.0.1:1/";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File installDirectory;
+
+    private File repository;
+
+    private FrontendPluginFactory factory;
+
+    @Before
+    public void setUp() throws IOException {
+        this.installDirectory = this.temporaryFolder.newFolder("install");
+        this.repository = this.temporaryFolder.newFolder("repository");
+        this.factory = new FrontendPluginFactory(this.temporaryFolder.getRoot(), this.installDirectory,
+            new ResolvingCacheResolver(this.repository));
+    }
+
+    @After
+    public void tearDown() {
+        this.factory.close();
+    }
+
+    @Test
+    public void installsAResolvedArchiveWithoutDownloadingItAgain() throws Exception {
+        installYarn();
+
+        File yarn = new File(this.installDirectory, "node/yarn/dist/bin/yarn");
+        assertEquals("yarn", new String(Files.readAllBytes(yarn.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void verifiesAResolvedArchiveAgainstTheChecksumOfTheRepository() throws Exception {
+        File archive = resolvedArchive();
+        yarnArchive(archive);
+        Files.write(new File(archive.getPath() + ".sha1").toPath(),
+            DigestUtils.sha1Hex(Files.readAllBytes(archive.toPath())).getBytes(StandardCharsets.UTF_8));
+
+        CacheStamps.stampResolved(archive);
+
+        assertEquals("SHA-1", Checksum.readStamp(archive).getAlgorithm());
+    }
+
+    @Test
+    public void doesNotStampAResolvedArchiveThatDoesNotMatchTheChecksumOfTheRepository() throws Exception {
+        File archive = resolvedArchive();
+        yarnArchive(archive);
+        Files.write(new File(archive.getPath() + ".sha1").toPath(),
+            DigestUtils.sha1Hex("other").getBytes(StandardCharsets.UTF_8));
+
+        CacheStamps.stampResolved(archive);
+        assertFalse(Checksum.hasStamp(archive));
+
+        try {
+            installYarn();
+            fail("Installed yarn from an archive that does not match its checksum");
+        } catch (InstallationException e) {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains(DOWNLOAD_ROOT));
+        }
+    }
+
+    private void installYarn() throws InstallationException {
+        this.factory.getYarnInstaller(new ProxyConfig(Collections.<ProxyConfig.Proxy>emptyList()))
+            .setYarnVersion(YARN_VERSION)
+            .setYarnDownloadRoot(DOWNLOAD_ROOT)
+            .install();
+    }
+
+    private File resolvedArchive() {
+        return new File(this.repository, "yarn-" + YARN_VERSION + ".tar.gz");
+    }
+
+    /**
+     * Resolves archives like one that fetches them from a Maven repository.
+     */
+    private static final class ResolvingCacheResolver implements CacheResolver {
+
+        private final File repository;
+
+        ResolvingCacheResolver(File repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public File resolve(CacheDescriptor cacheDescriptor) {
+            File archive = new File(this.repository, cacheDescriptor.getName() + "-" + cacheDescriptor.getVersion()
+                + ".tar.gz");
+            if (!archive.exists()) {
+                try {
+                    yarnArchive(archive);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                CacheStamps.stampResolved(archive);
+            }
+            return archive;
+        }
+    }
+
+    private static void yarnArchive(File archive) throws IOException {
+        byte[] content = "yarn".getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(archive));
+             TarArchiveOutputStream tar = new TarArchiveOutputStream(out)) {
+            TarArchiveEntry entry = new TarArchiveEntry("dist/bin/yarn");
+            entry.setSize(content.length);
+            entry.setMode(0755);
+            tar.putArchiveEntry(entry);
+            tar.write(content);
+            tar.closeArchiveEntry();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChecksumTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void doesNotTrustArchivesWithoutAStamp() throws IOException {
+        File archive = archive("content");
+
+        assertFalse(Checksum.isIntact(archive));
+    }
+
+    @Test
+    public void trustsArchivesThatAreUnchangedSinceTheyWereStamped() throws IOException {
+        File verified = archive("content");
+        Checksum checksum = Checksum.sha256(DigestUtils.sha256Hex("content"));
+        checksum.writeStamp(verified);
+        File unverified = this.temporaryFolder.newFile("unverified.tar.gz");
+        Checksum.writeUnverifiedStamp(unverified);
+
+        assertTrue(Checksum.isIntact(verified));
+        assertEquals(checksum, Checksum.readStamp(verified));
+        assertTrue(Checksum.isIntact(unverified));
+        assertNull(Checksum.readStamp(unverified));
+    }
+
+    @Test
+    public void doesNotTrustArchivesThatChangedSinceTheyWereStamped() throws IOException {
+        File archive = archive("content");
+        Checksum.writeUnverifiedStamp(archive);
+        Files.write(archive.toPath(), "truncated".getBytes(StandardCharsets.UTF_8));
+
+        assertFalse(Checksum.isIntact(archive));
+    }
+
+    @Test
+    public void stampsUnstampedArchivesThatMatchTheirPublishedChecksum() throws IOException {
+        File archive = archive("content");
+
+        assertTrue(Checksum.verifyUnstamped(archive, Checksum.sha256(DigestUtils.sha256Hex("content"))));
+        assertTrue(Checksum.isIntact(archive));
+    }
+
+    @Test
+    public void rejectsUnstampedArchivesThatCannotBeVerified() throws IOException {
+        File archive = archive("content");
+
+        assertFalse(Checksum.verifyUnstamped(archive, Checksum.sha256(DigestUtils.sha256Hex("other"))));
+        assertFalse(Checksum.verifyUnstamped(archive, null));
+        assertFalse(Checksum.isIntact(archive));
+    }
+
+    @Test
+    public void usesUnstampedArchivesOnlyFromSharedCaches() throws IOException {
+        File shared = this.temporaryFolder.newFolder("shared");
+        File archive = archive("content");
+        File sharedArchive = new File(shared, "node-v6.9.1-linux-x64.tar.gz");
+        Files.copy(archive.toPath(), sharedArchive.toPath());
+        TieredCacheResolver resolver = new TieredCacheResolver(Collections.singletonList(shared),
+            new DirectoryCacheResolver(this.temporaryFolder.getRoot()));
+
+        assertFalse(Utils.isCached(resolver, archive));
+        assertTrue(Utils.isCached(resolver, sharedArchive));
+    }
+
+    private File archive(String content) throws IOException {
+        File archive = this.temporaryFolder.newFile("archive.tar.gz");
+        Files.write(archive.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return archive;
+    }
+}
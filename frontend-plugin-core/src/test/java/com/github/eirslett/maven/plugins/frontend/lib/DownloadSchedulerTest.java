@@ -0,0 +1,121 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DownloadSchedulerTest {
+
+    private final DownloadScheduler scheduler = new DownloadScheduler();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void limitsTheDownloadsPerHost() throws Exception {
+        DownloadScheduler.Slot first = this.scheduler.acquire("nodejs.org", DownloadScheduler.Priority.NODE, 1);
+        Future<DownloadScheduler.Slot> second = acquireLater("nodejs.org", DownloadScheduler.Priority.NODE, 1);
+        DownloadScheduler.Slot otherHost =
+            this.scheduler.acquire("registry.npmjs.org", DownloadScheduler.Priority.NODE, 1);
+
+        Thread.sleep(200);
+        assertFalse(second.isDone());
+
+        first.release();
+        assertTrue(second.get(5, TimeUnit.SECONDS).getWaitedMillis() >= 200);
+        second.get().release();
+        otherHost.release();
+    }
+
+    @Test(timeout = 10000)
+    public void doesNotLimitTheDownloadsWithoutAMaximum() throws Exception {
+        DownloadScheduler.Slot first = this.scheduler.acquire("nodejs.org", DownloadScheduler.Priority.NODE, 0);
+        DownloadScheduler.Slot second = this.scheduler.acquire("nodejs.org", DownloadScheduler.Priority.NODE, 0);
+
+        assertEquals(0, second.getWaitedMillis(), 50);
+        first.release();
+        second.release();
+    }
+
+    @Test(timeout = 10000)
+    public void startsNodeBeforeThePackageManagersThatWaitedLonger() throws Exception {
+        DownloadScheduler.Slot running = this.scheduler.acquire("nodejs.org", DownloadScheduler.Priority.NODE, 1);
+        final List<DownloadScheduler.Priority> started =
+            Collections.synchronizedList(new ArrayList<DownloadScheduler.Priority>());
+        Future<?> npm = startLater(started, DownloadScheduler.Priority.PACKAGE_MANAGER);
+        Thread.sleep(100);
+        Future<?> node = startLater(started, DownloadScheduler.Priority.NODE);
+        Thread.sleep(100);
+
+        running.release();
+        npm.get(5, TimeUnit.SECONDS);
+        node.get(5, TimeUnit.SECONDS);
+
+        assertEquals(DownloadScheduler.Priority.NODE, started.get(0));
+        assertEquals(DownloadScheduler.Priority.PACKAGE_MANAGER, started.get(1));
+    }
+
+    @Test
+    public void throttlesAllDownloadsToTheBandwidth() throws Exception {
+        long start = System.nanoTime();
+        // 4 chunks of 25 KB at 100 KB/s: the first goes right away, the others wait for the ones before
+        for (int i = 0; i < 4; i++) {
+            this.scheduler.throttle(25 * 1024, 100 * 1024);
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("Took " + millis + " ms", millis >= 700);
+    }
+
+    @Test
+    public void doesNotThrottleWithoutALimit() throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            this.scheduler.throttle(1024 * 1024, 0);
+        }
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+    }
+
+    private Future<DownloadScheduler.Slot> acquireLater(final String host, final DownloadScheduler.Priority priority,
+                                                       final int maxPerHost) {
+        return this.executor.submit(new Callable<DownloadScheduler.Slot>() {
+            @Override
+            public DownloadScheduler.Slot call() throws Exception {
+                return DownloadSchedulerTest.this.scheduler.acquire(host, priority, maxPerHost);
+            }
+        });
+    }
+
+    /**
+     * Records the priority once the download has a slot, and releases it right away.
+     */
+    private Future<?> startLater(final List<DownloadScheduler.Priority> started,
+                                 final DownloadScheduler.Priority priority) {
+        return this.executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                DownloadScheduler.Slot slot = DownloadSchedulerTest.this.scheduler.acquire("nodejs.org", priority, 1);
+                started.add(priority);
+                slot.release();
+                return null;
+            }
+        });
+    }
+}
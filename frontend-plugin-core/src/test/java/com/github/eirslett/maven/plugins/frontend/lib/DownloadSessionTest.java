@@ -0,0 +1,37 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DownloadSessionTest {
+
+    private final DownloadSession downloadSession = new DownloadSession();
+
+    @After
+    public void tearDown() throws IOException {
+        this.downloadSession.close();
+    }
+
+    @Test
+    public void makesRoomForEverySegmentOfTheDownloadsToOneHost() {
+        new DefaultFileDownloader(new ProxyConfig(Collections.<ProxyConfig.Proxy>emptyList()),
+            new DownloadConfig().setSegments(8).setMaxDownloadsPerHost(2), this.downloadSession,
+            DownloadScheduler.Priority.NODE);
+
+        assertEquals(16, this.downloadSession.getMaxConnectionsPerRoute());
+    }
+
+    @Test
+    public void neverShrinksThePool() {
+        this.downloadSession.getHttpClient();
+        this.downloadSession.reserveConnectionsPerRoute(10);
+        this.downloadSession.reserveConnectionsPerRoute(1);
+
+        assertEquals(10, this.downloadSession.getMaxConnectionsPerRoute());
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileDownloaderTest {
+
+    private static final byte[] CONTENT = "content".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final DownloadSession downloadSession = new DownloadSession();
+
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(0), 0);
+        this.server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, CONTENT.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(CONTENT);
+                body.close();
+            }
+        });
+        this.server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.server.stop(0);
+        this.downloadSession.close();
+    }
+
+    @Test
+    public void copiesFromTheNextLocalMirrorIfTheFirstDoesNotHaveTheFile() throws Exception {
+        File mirror = this.temporaryFolder.newFolder("mirror");
+        Files.write(new File(mirror, "archive.tar.gz").toPath(), CONTENT);
+        File destination = new File(this.temporaryFolder.getRoot(), "cache/archive.tar.gz");
+
+        downloader(new DownloadConfig()).download(Arrays.asList(
+            new File(this.temporaryFolder.getRoot(), "missing/archive.tar.gz").toURI().toString(),
+            new File(mirror, "archive.tar.gz").toURI().toString()), destination.getPath(), null, null, null);
+
+        assertEquals("content", new String(Files.readAllBytes(destination.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test(timeout = 10000)
+    public void downloadsFromAnotherMirrorWhileTheHostOfTheFirstIsBusy() throws Exception {
+        int port = this.server.getAddress().getPort();
+        DownloadScheduler.Slot busy = this.downloadSession.getDownloadScheduler().acquire("localhost",
+            DownloadScheduler.Priority.NODE, 1);
+        File destination = new File(this.temporaryFolder.getRoot(), "archive.tar.gz");
+        try {
+            downloader(new DownloadConfig().setMaxDownloadsPerHost(1).setHedgeDelay(100)).download(Arrays.asList(
+                "http://localhost:" + port + "/archive.tar.gz", "http://127.0.0.1:" + port + "/archive.tar.gz"),
+                destination.getPath(), null, null, null);
+        } finally {
+            busy.release();
+        }
+
+        assertEquals("content", new String(Files.readAllBytes(destination.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test(timeout = 10000)
+    public void authenticatesToTheProxyWithTheJdkBackend() throws Exception {
+        HttpServer proxy = authenticatingProxy(new AtomicInteger());
+        File destination = new File(this.temporaryFolder.getRoot(), "archive.tar.gz");
+        try {
+            downloader(new DownloadConfig().setHttpBackend(DownloadConfig.HttpBackend.JDK), proxy).download(
+                "http://mirror.invalid/archive.tar.gz", destination.getPath(), null, null, null);
+        } finally {
+            proxy.stop(0);
+        }
+
+        assertEquals("content", new String(Files.readAllBytes(destination.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test(timeout = 10000)
+    public void refusesHttpsThroughAProxyWithCredentialsWithTheJdkBackend() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer proxy = authenticatingProxy(requests);
+        try {
+            downloader(new DownloadConfig().setHttpBackend(DownloadConfig.HttpBackend.JDK), proxy).download(
+                "https://mirror.invalid/archive.tar.gz",
+                new File(this.temporaryFolder.getRoot(), "archive.tar.gz").getPath(), null, null, null);
+            fail("Downloaded through a tunnel that cannot authenticate to the proxy");
+        } catch (DownloadException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("HTTPCLIENT"));
+        } finally {
+            proxy.stop(0);
+        }
+        assertEquals(0, requests.get());
+    }
+
+    /**
+     * A proxy that only serves requests with its credentials, user:secret, and counts the requests it gets.
+     */
+    private static HttpServer authenticatingProxy(final AtomicInteger requests) throws IOException {
+        HttpServer proxy = HttpServer.create(new InetSocketAddress(0), 0);
+        proxy.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                String credentials = "Basic " + Base64.encodeBase64String(
+                    "user:secret".getBytes(StandardCharsets.UTF_8));
+                if (!credentials.equals(exchange.getRequestHeaders().getFirst("Proxy-Authorization"))) {
+                    exchange.getResponseHeaders().set("Proxy-Authenticate", "Basic realm=\"proxy\"");
+                    exchange.sendResponseHeaders(407, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.sendResponseHeaders(200, CONTENT.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(CONTENT);
+                body.close();
+            }
+        });
+        proxy.start();
+        return proxy;
+    }
+
+    private DefaultFileDownloader downloader(DownloadConfig downloadConfig) {
+        return new DefaultFileDownloader(new ProxyConfig(Collections.<ProxyConfig.Proxy>emptyList()),
+            downloadConfig, this.downloadSession, DownloadScheduler.Priority.NODE);
+    }
+
+    private DefaultFileDownloader downloader(DownloadConfig downloadConfig, HttpServer proxy) {
+        return new DefaultFileDownloader(new ProxyConfig(Collections.singletonList(new ProxyConfig.Proxy("proxy",
+            "http", "localhost", proxy.getAddress().getPort(), "user", "secret", null))), downloadConfig,
+            this.downloadSession, DownloadScheduler.Priority.NODE);
+    }
+}
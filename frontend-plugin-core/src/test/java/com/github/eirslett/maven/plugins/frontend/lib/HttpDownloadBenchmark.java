@@ -0,0 +1,125 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares the time to first byte and the throughput of the {@link DownloadConfig.HttpBackend}s. Both of them
+ * speak HTTP/1.1 only. It is not run by the build; run it against a download mirror, or without a URL against a
+ * local server that serves 64 MB:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:... \
+ *     com.github.eirslett.maven.plugins.frontend.lib.HttpDownloadBenchmark \
+ *     https://nodejs.org/dist/v6.9.1/node-v6.9.1-linux-x64.tar.gz [runs]
+ * </pre>
+ */
+public final class HttpDownloadBenchmark {
+
+    private static final int LOCAL_SIZE = 64 * 1024 * 1024;
+
+    private HttpDownloadBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        HttpServer server = null;
+        String url;
+        if (args.length > 0) {
+            url = args[0];
+        } else {
+            server = startLocalServer();
+            url = "http://127.0.0.1:" + server.getAddress().getPort() + "/archive.tar.gz";
+        }
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        ProxyConfig proxyConfig = new ProxyConfig(Collections.<ProxyConfig.Proxy>emptyList());
+        DownloadSession downloadSession = new DownloadSession();
+
+        String[] names = { "HTTPCLIENT", "JDK" };
+        HttpTransport[] transports = {
+            new ApacheHttpTransport(proxyConfig, downloadSession),
+            new JdkHttpTransport(proxyConfig)
+        };
+
+        try {
+            // One run to open the connections and warm up the JIT, then the backends take turns so that none of
+            // them gets a network that is more or less busy
+            for (HttpTransport transport : transports) {
+                fetch(transport, url);
+            }
+            long[][] ttfbMillis = new long[transports.length][runs];
+            long[][] bytesPerSecond = new long[transports.length][runs];
+            for (int run = 0; run < runs; run++) {
+                for (int i = 0; i < transports.length; i++) {
+                    long[] result = fetch(transports[i], url);
+                    ttfbMillis[i][run] = result[0];
+                    bytesPerSecond[i][run] = result[1];
+                }
+            }
+            for (int i = 0; i < transports.length; i++) {
+                Arrays.sort(ttfbMillis[i]);
+                Arrays.sort(bytesPerSecond[i]);
+                System.out.println(String.format("%-12s time to first byte median %5d ms, min %5d ms, max %5d ms;"
+                        + " throughput median %6d KB/s, min %6d KB/s, max %6d KB/s", names[i],
+                    ttfbMillis[i][runs / 2], ttfbMillis[i][0], ttfbMillis[i][runs - 1],
+                    bytesPerSecond[i][runs / 2] / 1024, bytesPerSecond[i][0] / 1024,
+                    bytesPerSecond[i][runs - 1] / 1024));
+            }
+        } finally {
+            downloadSession.close();
+            if (server != null) {
+                server.stop(0);
+            }
+        }
+    }
+
+    /**
+     * @return the milliseconds until the response headers arrived, and the bytes per second of the body
+     */
+    private static long[] fetch(HttpTransport transport, String url) throws IOException {
+        HttpTransport.Exchange exchange = transport.open("GET", url, Collections.<String, String>emptyMap());
+        long start = System.nanoTime();
+        try {
+            exchange.execute(null, null);
+            long firstByte = System.nanoTime();
+            if (exchange.getStatusCode() != 200) {
+                throw new IOException("Got status code " + exchange.getStatusCode() + " from " + url);
+            }
+            long bytes = 0;
+            byte[] buffer = new byte[64 * 1024];
+            InputStream body = exchange.getBody();
+            for (int read = body.read(buffer); read >= 0; read = body.read(buffer)) {
+                bytes += read;
+            }
+            long nanos = Math.max(1, System.nanoTime() - firstByte);
+            return new long[] { (firstByte - start) / 1000000, bytes * 1000000000L / nanos };
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static HttpServer startLocalServer() throws IOException {
+        final byte[] content = new byte[LOCAL_SIZE];
+        new Random(42).nextBytes(content);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, content.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(content);
+                body.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InstallManifestTest {
+
+    private static final int TOOLS = 20;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(TOOLS);
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void keepsEveryRecordOfInstallersThatRunAtTheSameTime() throws Exception {
+        final File nodeDirectory = this.temporaryFolder.newFolder("node");
+        List<Future<Void>> records = new ArrayList<Future<Void>>();
+        for (int i = 0; i < TOOLS; i++) {
+            final String tool = "tool" + i;
+            final File keyFile = new File(nodeDirectory, tool);
+            Files.write(keyFile.toPath(), tool.getBytes(StandardCharsets.UTF_8));
+            records.add(this.executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    new InstallManifest(nodeDirectory).record(tool, "v1", null, keyFile);
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> record : records) {
+            record.get(5, TimeUnit.SECONDS);
+        }
+
+        for (int i = 0; i < TOOLS; i++) {
+            assertTrue("tool" + i, new InstallManifest(nodeDirectory).isInstalled("tool" + i, "v1"));
+        }
+        assertNoTemporaryFiles(nodeDirectory);
+    }
+
+    @Test(timeout = 10000)
+    public void waitsForAnotherProcessThatUpdatesTheManifest() throws Exception {
+        final File nodeDirectory = this.temporaryFolder.newFolder("node");
+        final File keyFile = new File(nodeDirectory, "node");
+        Files.write(keyFile.toPath(), "node".getBytes(StandardCharsets.UTF_8));
+        RandomAccessFile file = new RandomAccessFile(
+            new File(nodeDirectory, InstallManifest.FILE_NAME + CacheEntryLock.LOCK_SUFFIX), "rw");
+        try {
+            FileLock otherLock = file.getChannel().lock();
+            Future<Void> record = this.executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    new InstallManifest(nodeDirectory).record("node", "v1", null, keyFile);
+                    return null;
+                }
+            });
+            Thread.sleep(300);
+            assertFalse(record.isDone());
+
+            otherLock.release();
+            record.get(5, TimeUnit.SECONDS);
+        } finally {
+            file.close();
+        }
+
+        assertTrue(new InstallManifest(nodeDirectory).isInstalled("node", "v1"));
+        assertNoTemporaryFiles(nodeDirectory);
+    }
+
+    private static void assertNoTemporaryFiles(File nodeDirectory) {
+        for (String name : nodeDirectory.list()) {
+            assertFalse(name, name.endsWith(".tmp"));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+public class NodeArchiveFormatTest {
+
+    private static final Platform PLATFORM = Platform.guess();
+
+    private static final String NODE_VERSION = "v6.9.1";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File mirror;
+
+    private File cache;
+
+    private File installDirectory;
+
+    private FrontendPluginFactory factory;
+
+    @Before
+    public void setUp() throws IOException {
+        // Windows installs node.exe, which is published in one format only
+        assumeFalse(PLATFORM.isWindows());
+        this.mirror = this.temporaryFolder.newFolder("mirror");
+        this.cache = this.temporaryFolder.newFolder("cache");
+        this.installDirectory = this.temporaryFolder.newFolder("install");
+        this.factory = new FrontendPluginFactory(this.temporaryFolder.getRoot(), this.installDirectory,
+            new DirectoryCacheResolver(this.cache));
+    }
+
+    @After
+    public void tearDown() {
+        if (this.factory != null) {
+            this.factory.close();
+        }
+    }
+
+    @Test
+    public void installsTheTarXzArchiveIfItIsPublished() throws Exception {
+        publish("tar.gz", gzip(nodeTar("from tar.gz")));
+        publish("tar.xz", xz(nodeTar("from tar.xz")));
+
+        installNode();
+
+        assertEquals("from tar.xz", read(new File(this.installDirectory, "node/node")));
+        assertTrue(archive("tar.xz").exists());
+        assertFalse(archive("tar.gz").exists());
+    }
+
+    @Test
+    public void fallsBackToTheTarGzArchiveForVersionsWithoutATarXz() throws Exception {
+        publish("tar.gz", gzip(nodeTar("from tar.gz")));
+
+        installNode();
+
+        assertEquals("from tar.gz", read(new File(this.installDirectory, "node/node")));
+        assertTrue(archive("tar.gz").exists());
+        assertFalse(archive("tar.xz").exists());
+    }
+
+    @Test
+    public void installsACachedTarGzWithoutLookingForATarXz() throws Exception {
+        File cached = archive("tar.gz");
+        Files.write(cached.toPath(), gzip(nodeTar("from the cache")));
+        Checksum.writeUnverifiedStamp(cached);
+        publish("tar.xz", xz(nodeTar("from tar.xz")));
+
+        installNode();
+
+        assertEquals("from the cache", read(new File(this.installDirectory, "node/node")));
+        assertFalse(archive("tar.xz").exists());
+    }
+
+    private void installNode() throws InstallationException {
+        this.factory.getNodeInstaller(new ProxyConfig(Collections.<ProxyConfig.Proxy>emptyList()),
+            new DownloadConfig().setArchiveFormat(DownloadConfig.ArchiveFormat.TAR_XZ))
+            .setNodeVersion(NODE_VERSION)
+            .setNodeDownloadRoot(this.mirror.toURI().toString())
+            .install();
+    }
+
+    /**
+     * Puts the archive on the mirror, and its checksum into the mirror's SHASUMS256.txt.
+     */
+    private void publish(String extension, byte[] archive) throws IOException {
+        File file = new File(this.mirror, PLATFORM.getNodeDownloadFilename(NODE_VERSION, false, extension));
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), archive);
+        String line = DigestUtils.sha256Hex(archive) + "  " + file.getName() + "\n";
+        File checksums = new File(file.getParentFile(), "SHASUMS256.txt");
+        String existing = checksums.exists() ? read(checksums) : "";
+        Files.write(checksums.toPath(), (existing + line).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private File archive(String extension) {
+        return new File(this.cache, "node-" + NODE_VERSION + "-" + PLATFORM.getNodeClassifier() + "." + extension);
+    }
+
+    private static byte[] nodeTar(String node) throws IOException {
+        byte[] content = node.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(out)) {
+            TarArchiveEntry entry =
+                new TarArchiveEntry(PLATFORM.getLongNodeFilename(NODE_VERSION, false) + "/bin/node");
+            entry.setSize(content.length);
+            entry.setMode(0755);
+            tar.putArchiveEntry(entry);
+            tar.write(content);
+            tar.closeArchiveEntry();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] tar) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(tar);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] xz(byte[] tar) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream xz = new XZOutputStream(out, new LZMA2Options())) {
+            xz.write(tar);
+        }
+        return out.toByteArray();
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OfflineInstallTest {
+
+    private static final String YARN_VERSION = "v0.16.1";
+
+    private static final CacheDescriptor YARN =
+        new CacheDescriptor("yarn", YARN_VERSION, "/yarn-" + YARN_VERSION + ".tar.gz");
+
+    private static final String NPM_VERSION = "3.10.8";
+
+    private static final CacheDescriptor NPM = new CacheDescriptor("npm", NPM_VERSION, "tar.gz");
+
+    // Nothing listens there, a download would fail with a connection error instead of the offline one
+    private static final String DOWNLOAD_ROOT = "http://127.0.0.1:1/";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File installDirectory;
+
+    private CacheResolver cacheResolver;
+
+    private FrontendPluginFactory factory;
+
+    @Before
+    public void setUp() throws IOException {
+        this.installDirectory = this.temporaryFolder.newFolder("install");
+        this.cacheResolver = new DirectoryCacheResolver(this.temporaryFolder.newFolder("cache"));
+        this.factory = new FrontendPluginFactory(this.temporaryFolder.getRoot(), this.installDirectory,
+            this.cacheResolver);
+    }
+
+    @After
+    public void tearDown() {
+        this.factory.close();
+    }
+
+    @Test
+    public void installsFromTheCache() throws Exception {
+        File archive = this.cacheResolver.resolve(YARN);
+        yarnArchive(archive);
+        Checksum.writeUnverifiedStamp(archive);
+
+        installYarn();
+
+        File yarn = new File(this.installDirectory, "node/yarn/dist/bin/yarn");
+        assertEquals("yarn", new String(Files.readAllBytes(yarn.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void failsWithoutDownloadingWhatIsNotInTheCache() {
+        try {
+            installYarn();
+            fail("Installed yarn without an archive");
+        } catch (InstallationException e) {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("offline mode"));
+        }
+        assertFalse(new File(this.cacheResolver.resolve(YARN).getPath() + DefaultFileDownloader.PART_SUFFIX)
+            .exists());
+    }
+
+    @Test
+    public void usesAnArchiveWithoutAStamp() throws Exception {
+        // Cached by an older version of the plugin, or put into the local repository by hand
+        File archive = this.cacheResolver.resolve(YARN);
+        yarnArchive(archive);
+
+        installYarn();
+
+        assertTrue(new File(this.installDirectory, "node/yarn/dist/bin/yarn").exists());
+        // Still not verified, so a build that can download may replace it
+        assertFalse(Checksum.hasStamp(archive));
+    }
+
+    @Test
+    public void doesNotUseAnArchiveThatHasChangedSinceItWasStamped() throws Exception {
+        File archive = this.cacheResolver.resolve(YARN);
+        yarnArchive(archive);
+        Checksum.writeUnverifiedStamp(archive);
+        // Written by a download that was killed halfway through
+        archive.setLastModified(archive.lastModified() - 10000);
+
+        try {
+            installYarn();
+            fail("Installed yarn from a changed archive");
+        } catch (InstallationException e) {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("offline mode"));
+        }
+        assertFalse(new File(this.installDirectory, "node/yarn").exists());
+    }
+
+    @Test
+    public void verifiesAnArchiveWithoutAStampAgainstALocalMirror() throws Exception {
+        File archive = this.cacheResolver.resolve(NPM);
+        npmArchive(archive);
+        String npmRoot = publishNpm(DigestUtils.sha1Hex(Files.readAllBytes(archive.toPath())));
+
+        installNpm(npmRoot);
+
+        assertTrue(new File(this.installDirectory, "node/node_modules/npm/package.json").exists());
+        assertTrue(Checksum.isIntact(archive));
+    }
+
+    @Test
+    public void doesNotUseAnArchiveWithoutAStampThatDoesNotMatchALocalMirror() throws Exception {
+        npmArchive(this.cacheResolver.resolve(NPM));
+        String npmRoot = publishNpm(DigestUtils.sha1Hex("other".getBytes(StandardCharsets.UTF_8)));
+
+        try {
+            installNpm(npmRoot);
+            fail("Installed npm from an archive that does not match its checksum");
+        } catch (InstallationException e) {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("published checksum"));
+        }
+        assertFalse(new File(this.installDirectory, "node/node_modules/npm").exists());
+    }
+
+    private void installYarn() throws InstallationException {
+        this.factory.getYarnInstaller(new ProxyConfig(Collections.<ProxyConfig.Proxy>emptyList()),
+            new DownloadConfig().setOffline(true))
+            .setYarnVersion(YARN_VERSION)
+            .setYarnDownloadRoot(DOWNLOAD_ROOT)
+            .install();
+    }
+
+    private void installNpm(String npmRoot) throws InstallationException {
+        this.factory.getNPMInstaller(new ProxyConfig(Collections.<ProxyConfig.Proxy>emptyList()),
+            new DownloadConfig().setOffline(true))
+            .setNodeVersion("v6.9.1")
+            .setNpmVersion(NPM_VERSION)
+            .setNpmDownloadRoot(npmRoot)
+            .install();
+    }
+
+    /**
+     * Publishes the checksum of the npm archive on a local mirror with the layout of the registry.
+     *
+     * @return the download root of the mirror
+     */
+    private String publishNpm(String shasum) throws IOException {
+        File registry = this.temporaryFolder.newFolder("registry");
+        Files.write(new File(registry, NPM_VERSION).toPath(),
+            ("{\"dist\":{\"shasum\":\"" + shasum + "\"}}").getBytes(StandardCharsets.UTF_8));
+        return registry.toURI().toString() + "-/";
+    }
+
+    private static void yarnArchive(File archive) throws IOException {
+        tarArchive(archive, "dist/bin/yarn", "yarn");
+    }
+
+    private static void npmArchive(File archive) throws IOException {
+        tarArchive(archive, "package/package.json", "{}");
+    }
+
+    private static void tarArchive(File archive, String name, String text) throws IOException {
+        byte[] content = text.getBytes(StandardCharsets.UTF_8);
+        archive.getParentFile().mkdirs();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(archive));
+             TarArchiveOutputStream tar = new TarArchiveOutputStream(out)) {
+            TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(content.length);
+            entry.setMode(0755);
+            tar.putArchiveEntry(entry);
+            tar.write(content);
+            tar.closeArchiveEntry();
+        }
+    }
+}
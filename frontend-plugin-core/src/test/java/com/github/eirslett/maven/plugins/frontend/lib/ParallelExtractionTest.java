@@ -0,0 +1,138 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParallelExtractionTest {
+
+    private static final int FILES = 300;
+
+    private static final int THREADS = 4;
+
+    // Larger than what is buffered for the writers, so the reading thread writes it itself
+    private static final int LARGE_FILE_SIZE = 5 * 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void writesEveryTarEntryWithItsContentAndMode() throws Exception {
+        byte[] large = new byte[LARGE_FILE_SIZE];
+        new Random(1).nextBytes(large);
+        File destination = this.temporaryFolder.newFolder("destination");
+
+        try (TarArchiveInputStream tarIn = new TarArchiveInputStream(new ByteArrayInputStream(tar(large)))) {
+            ParallelExtraction.extractTar(tarIn, destination, ArchiveEntryFilter.ALL, PathMapping.IDENTITY,
+                THREADS);
+        }
+
+        for (int i = 0; i < FILES; i++) {
+            assertEquals("file " + i, read(destination.toPath().resolve(name(i))));
+        }
+        assertArrayEquals(large, Files.readAllBytes(destination.toPath().resolve("large.bin")));
+        assumeFalse(Platform.guess().isWindows());
+        assertTrue(new File(destination, name(0)).canExecute());
+        assertFalse(new File(destination, name(1)).canExecute());
+        Path link = destination.toPath().resolve("link");
+        assertTrue(Files.isSymbolicLink(link));
+        assertEquals("file 0", read(link));
+    }
+
+    @Test
+    public void writesEveryZipEntry() throws Exception {
+        File archive = this.temporaryFolder.newFile("archive.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+            for (int i = 0; i < FILES; i++) {
+                zip.putNextEntry(new ZipEntry(name(i)));
+                zip.write(("file " + i).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        File destination = this.temporaryFolder.newFolder("destination");
+
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            ParallelExtraction.extractZip(zipFile, destination, ArchiveEntryFilter.ALL, PathMapping.IDENTITY,
+                THREADS);
+        }
+
+        for (int i = 0; i < FILES; i++) {
+            assertEquals("file " + i, read(destination.toPath().resolve(name(i))));
+        }
+    }
+
+    @Test
+    public void reportsAWriteThatFailed() throws Exception {
+        File destination = this.temporaryFolder.newFolder("destination");
+        // A file cannot be written where there is a directory
+        new File(destination, name(FILES / 2)).mkdirs();
+
+        try (TarArchiveInputStream tarIn = new TarArchiveInputStream(new ByteArrayInputStream(tar(new byte[0])))) {
+            ParallelExtraction.extractTar(tarIn, destination, ArchiveEntryFilter.ALL, PathMapping.IDENTITY,
+                THREADS);
+            fail("Extracted a file over a directory");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(name(FILES / 2)));
+        }
+    }
+
+    /**
+     * Small files in a few directories, every other one executable, a large file and a link to the first file.
+     */
+    private static byte[] tar(byte[] large) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(out)) {
+            for (int i = 0; i < FILES; i++) {
+                byte[] content = ("file " + i).getBytes(StandardCharsets.UTF_8);
+                TarArchiveEntry entry = new TarArchiveEntry(name(i));
+                entry.setSize(content.length);
+                entry.setMode(i % 2 == 0 ? 0755 : 0644);
+                tar.putArchiveEntry(entry);
+                tar.write(content);
+                tar.closeArchiveEntry();
+            }
+            TarArchiveEntry entry = new TarArchiveEntry("large.bin");
+            entry.setSize(large.length);
+            tar.putArchiveEntry(entry);
+            tar.write(large);
+            tar.closeArchiveEntry();
+            TarArchiveEntry link = new TarArchiveEntry("link", TarConstants.LF_SYMLINK);
+            link.setLinkName(name(0));
+            tar.putArchiveEntry(link);
+            tar.closeArchiveEntry();
+        }
+        return out.toByteArray();
+    }
+
+    private static String name(int i) {
+        return "dir-" + (i % 10) + "/file-" + i;
+    }
+
+    private static String read(Path path) throws IOException {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PathEntryFilterTest {
+
+    private final PathEntryFilter filter =
+        new PathEntryFilter("node-v6.9.1-linux-x64/bin/node", "node-v6.9.1-linux-x64/lib/node_modules");
+
+    @Test
+    public void acceptsThePathsAndEverythingBelowThem() {
+        assertTrue(this.filter.accept("node-v6.9.1-linux-x64/bin/node"));
+        assertTrue(this.filter.accept("node-v6.9.1-linux-x64/lib/node_modules"));
+        assertTrue(this.filter.accept("node-v6.9.1-linux-x64/lib/node_modules/npm/bin/npm-cli.js"));
+    }
+
+    @Test
+    public void rejectsEverythingElse() {
+        assertFalse(this.filter.accept("node-v6.9.1-linux-x64/bin/npm"));
+        assertFalse(this.filter.accept("node-v6.9.1-linux-x64/include/node/node.h"));
+        // Only whole path components match
+        assertFalse(this.filter.accept("node-v6.9.1-linux-x64/bin/node-debug"));
+        assertFalse(this.filter.accept("node-v6.9.1-linux-x64/lib/node_modules_old/x.js"));
+    }
+
+    @Test
+    public void matchesEntryNamesThatStartWithTheCurrentDirectory() {
+        assertTrue(PathEntryFilter.accept(this.filter, "./node-v6.9.1-linux-x64/bin/node"));
+        assertTrue(PathEntryFilter.accept(this.filter, "node-v6.9.1-linux-x64\\bin\\node"));
+        assertFalse(PathEntryFilter.accept(this.filter, "./node-v6.9.1-linux-x64/bin/npm"));
+    }
+
+    @Test
+    public void acceptsEverythingWithoutAFilter() {
+        assertTrue(PathEntryFilter.accept(ArchiveEntryFilter.ALL, "node-v6.9.1-linux-x64/include/node/node.h"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PathMappingTest {
+
+    private static final String NODE = "node-v6.9.1-linux-x64";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void stripsLeadingComponents() {
+        PathMapping mapping = new PathMapping().withStripComponents(1);
+
+        assertEquals("lib/node_modules/npm/package.json", mapping.map("package/lib/node_modules/npm/package.json"));
+        assertEquals("bin/npm", mapping.map("./package/bin/npm"));
+        assertNull(mapping.map("package"));
+        assertNull(mapping.map("package/"));
+    }
+
+    @Test
+    public void rewritesTheFirstMatchingPrefix() {
+        PathMapping mapping = new PathMapping()
+            .withRewrite(NODE + "/bin/node", "node")
+            .withRewrite(NODE + "/lib/node_modules", "node_modules");
+
+        assertEquals("node", mapping.map(NODE + "/bin/node"));
+        assertEquals("node_modules/npm/bin/npm-cli.js", mapping.map(NODE + "/lib/node_modules/npm/bin/npm-cli.js"));
+        // Only whole path components match
+        assertEquals(NODE + "/bin/node-debug", mapping.map(NODE + "/bin/node-debug"));
+    }
+
+    @Test
+    public void movesTheContentOfAPrefixUpForAnEmptyReplacement() {
+        PathMapping mapping = new PathMapping().withRewrite("package", "");
+
+        assertEquals("bin/npm", mapping.map("package/bin/npm"));
+        assertNull(mapping.map("package"));
+    }
+
+    @Test
+    public void leavesNamesAloneWithoutStripsAndRewrites() {
+        assertTrue(PathMapping.IDENTITY.isIdentity());
+        assertEquals(NODE + "/bin/node", PathMapping.IDENTITY.map(NODE + "/bin/node"));
+    }
+
+    @Test
+    public void extractsOnlyTheFilesOfAnInstallToWhereTheyBelong() throws Exception {
+        File archive = this.temporaryFolder.newFile("node.tar.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(archive));
+             TarArchiveOutputStream tar = new TarArchiveOutputStream(out)) {
+            for (String name : new String[] { NODE + "/bin/node", NODE + "/bin/npm", NODE + "/include/node/node.h",
+                NODE + "/lib/node_modules/npm/bin/npm-cli.js", NODE + "/README.md" }) {
+                add(tar, name);
+            }
+        }
+        File destination = this.temporaryFolder.newFolder("destination");
+
+        new DefaultArchiveExtractor().extract(archive.getPath(), destination.getPath(),
+            new PathEntryFilter(NODE + "/bin/node", NODE + "/lib/node_modules"),
+            new PathMapping()
+                .withRewrite(NODE + "/bin/node", "node")
+                .withRewrite(NODE + "/lib/node_modules", "node_modules"));
+
+        assertEquals(NODE + "/bin/node", read(new File(destination, "node")));
+        assertEquals(NODE + "/lib/node_modules/npm/bin/npm-cli.js",
+            read(new File(destination, "node_modules/npm/bin/npm-cli.js")));
+        String[] extracted = destination.list();
+        Arrays.sort(extracted);
+        assertEquals("[node, node_modules]", Arrays.toString(extracted));
+        assertFalse(new File(destination, NODE).exists());
+    }
+
+    private static void add(TarArchiveOutputStream tar, String name) throws IOException {
+        byte[] content = name.getBytes(StandardCharsets.UTF_8);
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(content.length);
+        tar.putArchiveEntry(entry);
+        tar.write(content);
+        tar.closeArchiveEntry();
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PrefetcherTest {
+
+    private static final String NODE_VERSION = "v6.9.1";
+
+    private static final String[] PLATFORMS = { "linux-x64", "darwin-x64" };
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File mirror;
+
+    private File cache;
+
+    private FrontendPluginFactory factory;
+
+    @Before
+    public void setUp() throws IOException {
+        this.mirror = this.temporaryFolder.newFolder("mirror");
+        this.cache = this.temporaryFolder.newFolder("cache");
+        this.factory = new FrontendPluginFactory(this.temporaryFolder.getRoot(),
+            this.temporaryFolder.newFolder("install"), new DirectoryCacheResolver(this.cache));
+    }
+
+    @After
+    public void tearDown() {
+        this.factory.close();
+    }
+
+    @Test
+    public void downloadsTheArchivesOfEveryPlatformIntoTheCache() throws Exception {
+        for (String platform : PLATFORMS) {
+            publish(platform, platform.getBytes(StandardCharsets.UTF_8));
+        }
+
+        prefetch(new DownloadConfig());
+
+        for (String platform : PLATFORMS) {
+            File archive = archive(platform);
+            assertArrayEquals(platform.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(archive.toPath()));
+            assertTrue(Checksum.isIntact(archive));
+        }
+        assertFalse(new File(this.temporaryFolder.getRoot(), "install/node").exists());
+    }
+
+    @Test
+    public void doesNotDownloadWhatIsInTheCacheAgain() throws Exception {
+        for (String platform : PLATFORMS) {
+            publish(platform, platform.getBytes(StandardCharsets.UTF_8));
+        }
+        prefetch(new DownloadConfig());
+        // Any download would fail now
+        FileUtils.deleteDirectory(this.mirror);
+
+        prefetch(new DownloadConfig());
+
+        for (String platform : PLATFORMS) {
+            assertTrue(Checksum.isIntact(archive(platform)));
+        }
+    }
+
+    @Test
+    public void doesNotCacheAnArchiveThatDoesNotMatchItsChecksum() throws Exception {
+        publish("linux-x64", "linux-x64".getBytes(StandardCharsets.UTF_8));
+        publish("darwin-x64", "darwin-x64".getBytes(StandardCharsets.UTF_8));
+        // Changed on the mirror after the checksums were published
+        Files.write(new File(this.mirror, downloadFilename("darwin-x64")).toPath(),
+            "tampered".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            prefetch(new DownloadConfig());
+            fail("Prefetched an archive that does not match its checksum");
+        } catch (InstallationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("1 of 2"));
+        }
+        assertTrue(Checksum.isIntact(archive("linux-x64")));
+        assertFalse(archive("darwin-x64").exists());
+    }
+
+    @Test
+    public void failsInOfflineModeForWhatIsNotInTheCache() throws Exception {
+        for (String platform : PLATFORMS) {
+            publish(platform, platform.getBytes(StandardCharsets.UTF_8));
+        }
+
+        try {
+            prefetch(new DownloadConfig().setOffline(true));
+            fail("Prefetched in offline mode");
+        } catch (InstallationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("2 of 2"));
+        }
+        for (String platform : PLATFORMS) {
+            assertFalse(archive(platform).exists());
+        }
+    }
+
+    private void prefetch(DownloadConfig downloadConfig) throws InstallationException {
+        this.factory.getPrefetcher(new ProxyConfig(Collections.<ProxyConfig.Proxy>emptyList()), downloadConfig)
+            .setNodeVersions(Collections.singletonList(NODE_VERSION))
+            .setPlatforms(Arrays.asList(PLATFORMS))
+            .setNodeDownloadRoot(this.mirror.toURI().toString())
+            .prefetch();
+    }
+
+    /**
+     * Puts the archive on the mirror, and its checksum into the mirror's SHASUMS256.txt.
+     */
+    private void publish(String platform, byte[] archive) throws IOException {
+        File file = new File(this.mirror, downloadFilename(platform));
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), archive);
+        String line = DigestUtils.sha256Hex(archive) + "  " + file.getName() + "\n";
+        File checksums = new File(file.getParentFile(), "SHASUMS256.txt");
+        String existing = checksums.exists()
+            ? new String(Files.readAllBytes(checksums.toPath()), StandardCharsets.UTF_8) : "";
+        Files.write(checksums.toPath(), (existing + line).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String downloadFilename(String platform) {
+        return Platform.forClassifier(platform).getNodeDownloadFilename(NODE_VERSION, true, "tar.gz");
+    }
+
+    private File archive(String platform) {
+        return new File(this.cache, "node-" + NODE_VERSION + "-" + platform + ".tar.gz");
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StagedInstallTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File nodeDirectory;
+
+    private File stagingRoot;
+
+    @Before
+    public void setUp() throws IOException {
+        this.nodeDirectory = this.temporaryFolder.newFolder("node");
+        this.stagingRoot = new File(this.nodeDirectory, StagedInstall.STAGING_DIRECTORY);
+    }
+
+    @Test
+    public void deletesTheStagingDirectoriesOfBuildsThatDied() throws Exception {
+        long yesterday = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+        File positive = staging("frontend-node-" + yesterday + "-12345");
+        File negative = staging("frontend-npm-" + yesterday + "--12345");
+
+        StagedInstall.begin(this.nodeDirectory, null, "yarn").close();
+
+        assertFalse(positive.exists());
+        assertFalse(negative.exists());
+    }
+
+    @Test
+    public void keepsTheStagingDirectoriesOfRunningBuilds() throws Exception {
+        File running = staging("frontend-node-" + System.currentTimeMillis() + "--12345");
+        File other = staging("other-directory");
+
+        StagedInstall.begin(this.nodeDirectory, null, "yarn").close();
+
+        assertTrue(running.exists());
+        assertTrue(other.exists());
+    }
+
+    private File staging(String name) {
+        File staging = new File(this.stagingRoot, name);
+        staging.mkdirs();
+        return staging;
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SystemArchiveExtractorTest {
+
+    private static final Platform PLATFORM = Platform.guess();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File destination;
+
+    private ArchiveExtractor extractor;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(!PLATFORM.isWindows() && SystemArchiveExtractor.isInstalled(PLATFORM, "tar", "--version"));
+        this.destination = this.temporaryFolder.newFolder("destination");
+        this.extractor = new SystemArchiveExtractor(PLATFORM, true, false, new DefaultArchiveExtractor());
+    }
+
+    @Test
+    public void extractsFilesAndLinksWithTar() throws Exception {
+        File archive = tarGz("file:node/lib/npm-cli.js", "link:node/bin/npm:../lib/npm-cli.js");
+
+        this.extractor.extract(archive.getPath(), this.destination.getPath());
+
+        Path npm = this.destination.toPath().resolve("node/bin/npm");
+        assertTrue(Files.isSymbolicLink(npm));
+        assertEquals("content", new String(Files.readAllBytes(npm), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void rejectsSymbolicLinksThatEscapeThroughAChainOfLinks() throws Exception {
+        File archive = tarGz("link:d:.", "link:x:d/d/../..");
+
+        try {
+            this.extractor.extract(archive.getPath(), this.destination.getPath());
+            fail("Extracted a link out of the destination");
+        } catch (ArchiveExtractionException e) {
+            assertFalse(Files.exists(this.destination.toPath().resolve("x"), LinkOption.NOFOLLOW_LINKS));
+        }
+    }
+
+    /**
+     * @param entries "file:name" for a file, "link:name:target" for a symbolic link
+     */
+    private File tarGz(String... entries) throws IOException {
+        File archive = this.temporaryFolder.newFile("archive.tar.gz");
+        byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(archive));
+             TarArchiveOutputStream tar = new TarArchiveOutputStream(out)) {
+            for (String entry : entries) {
+                String[] parts = entry.split(":");
+                if (parts[0].equals("file")) {
+                    TarArchiveEntry tarEntry = new TarArchiveEntry(parts[1]);
+                    tarEntry.setSize(content.length);
+                    tar.putArchiveEntry(tarEntry);
+                    tar.write(content);
+                } else {
+                    TarArchiveEntry tarEntry = new TarArchiveEntry(parts[1], TarConstants.LF_SYMLINK);
+                    tarEntry.setLinkName(parts[2]);
+                    tar.putArchiveEntry(tarEntry);
+                }
+                tar.closeArchiveEntry();
+            }
+        }
+        return archive;
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Compares the tar.gz extraction of the plugin before the java.nio extractor with {@link NioTarExtractor} and with
+ * {@link ParallelExtraction}. It is not run by the build; run it with a real archive, like an npm tarball from
+ * {@code https://registry.npmjs.org/npm/-/npm-6.14.18.tgz} or a node distribution:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:... \
+ *     com.github.eirslett.maven.plugins.frontend.lib.TarExtractionBenchmark npm-6.14.18.tgz [runs] [threads]
+ * </pre>
+ */
+public final class TarExtractionBenchmark {
+
+    private TarExtractionBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: TarExtractionBenchmark <archive.tar.gz> [runs] [threads]");
+            System.exit(1);
+        }
+        File archive = new File(args[0]);
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        File work = new File(System.getProperty("java.io.tmpdir"), "tar-extraction-benchmark");
+
+        String[] names = { "legacy", "nio", "nio, " + threads + " threads" };
+        Extraction[] extractions = {
+            new Extraction() {
+                @Override
+                public void extract(File archive, File destination) throws Exception {
+                    extractLegacy(archive, destination);
+                }
+            },
+            new Extraction() {
+                @Override
+                public void extract(File archive, File destination) throws Exception {
+                    new DefaultArchiveExtractor(1).extract(archive.getPath(), destination.getPath());
+                }
+            },
+            new Extraction() {
+                @Override
+                public void extract(File archive, File destination) throws Exception {
+                    new DefaultArchiveExtractor(threads).extract(archive.getPath(), destination.getPath());
+                }
+            }
+        };
+
+        try {
+            // One run to warm up the JIT and the page cache, then the extractions take turns so that none of them
+            // gets a file system that is more or less busy cleaning up after the previous runs
+            for (Extraction extraction : extractions) {
+                time(archive, work, extraction);
+            }
+            long[][] millis = new long[extractions.length][runs];
+            for (int run = 0; run < runs; run++) {
+                for (int i = 0; i < extractions.length; i++) {
+                    millis[i][run] = time(archive, work, extractions[i]);
+                }
+            }
+            for (int i = 0; i < extractions.length; i++) {
+                Arrays.sort(millis[i]);
+                System.out.println(String.format("%-20s median %5d ms, min %5d ms, max %5d ms", names[i],
+                    millis[i][runs / 2], millis[i][0], millis[i][runs - 1]));
+            }
+        } finally {
+            FileUtils.deleteDirectory(work);
+        }
+    }
+
+    private static long time(File archive, File work, Extraction extraction) throws Exception {
+        FileUtils.deleteDirectory(work);
+        work.mkdirs();
+        long start = System.nanoTime();
+        extraction.extract(archive, work);
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * The tar branch of {@code DefaultArchiveExtractor} before {@link NioTarExtractor}.
+     */
+    private static void extractLegacy(File archive, File destination) throws IOException {
+        try (TarArchiveInputStream tarIn = new TarArchiveInputStream(
+            new GzipCompressorInputStream(new BufferedInputStream(new FileInputStream(archive))))) {
+            TarArchiveEntry tarEntry = tarIn.getNextTarEntry();
+            while (tarEntry != null) {
+                File destPath = new File(destination, tarEntry.getName());
+                if (tarEntry.isDirectory()) {
+                    destPath.mkdirs();
+                } else {
+                    if (!destPath.getParentFile().exists()) {
+                        destPath.getParentFile().mkdirs();
+                    }
+                    if (!destPath.getParentFile().canWrite()) {
+                        throw new IOException("Could not get write permissions for " + destPath.getParentFile());
+                    }
+                    destPath.createNewFile();
+                    destPath.setExecutable((tarEntry.getMode() & 0100) > 0);
+                    OutputStream out = null;
+                    try {
+                        out = new FileOutputStream(destPath);
+                        IOUtils.copy(tarIn, out);
+                    } finally {
+                        IOUtils.closeQuietly(out);
+                    }
+                }
+                tarEntry = tarIn.getNextTarEntry();
+            }
+        }
+    }
+
+    private interface Extraction {
+        void extract(File archive, File destination) throws Exception;
+    }
+}
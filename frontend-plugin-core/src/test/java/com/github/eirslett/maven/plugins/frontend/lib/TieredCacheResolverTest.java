@@ -0,0 +1,94 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TieredCacheResolverTest {
+
+    private static final CacheDescriptor NODE = new CacheDescriptor("node", "v6.9.1", "linux-x64", "tar.gz");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File shared;
+
+    private File local;
+
+    private TieredCacheResolver resolver;
+
+    @Before
+    public void setUp() throws IOException {
+        this.shared = this.temporaryFolder.newFolder("shared");
+        this.local = this.temporaryFolder.newFolder("local");
+        this.resolver = new TieredCacheResolver(Arrays.asList(this.shared),
+            new DirectoryCacheResolver(this.local));
+    }
+
+    @Test
+    public void resolvesArchivesInTheSharedCacheWhereTheyAre() throws IOException {
+        File archive = write(new File(this.shared, "node-v6.9.1-linux-x64.tar.gz"));
+
+        assertEquals(archive, this.resolver.resolve(NODE));
+        assertTrue(this.resolver.isShared(archive));
+    }
+
+    @Test
+    public void resolvesArchivesInASharedRepository() throws IOException {
+        File archive = write(new File(this.shared,
+            "com/github/eirslett/node/6.9.1/node-6.9.1-linux-x64.tar.gz"));
+
+        assertEquals(archive, this.resolver.resolve(NODE));
+    }
+
+    @Test
+    public void resolvesArchivesThatAreNotSharedInTheLocalCache() {
+        File archive = this.resolver.resolve(NODE);
+
+        assertEquals(new File(this.local, "node-v6.9.1-linux-x64.tar.gz"), archive);
+        assertFalse(this.resolver.isShared(archive));
+    }
+
+    @Test
+    public void passesOverSharedArchivesThatChangedSinceTheyWereVerified() throws IOException {
+        File archive = write(new File(this.shared, "node-v6.9.1-linux-x64.tar.gz"));
+        Checksum.sha256("0000000000000000000000000000000000000000000000000000000000000000").writeStamp(archive);
+        Files.write(archive.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(new File(this.local, "node-v6.9.1-linux-x64.tar.gz"), this.resolver.resolve(NODE));
+    }
+
+    @Test
+    public void resolvesTheLocalArchiveToReplaceASharedOne() throws IOException {
+        File archive = write(new File(this.shared, "node-v6.9.1-linux-x64.tar.gz"));
+
+        File replacement = Utils.writableArchive(this.resolver, NODE, archive);
+
+        assertEquals(new File(this.local, "node-v6.9.1-linux-x64.tar.gz"), replacement);
+        assertEquals(replacement, Utils.writableArchive(this.resolver, NODE, replacement));
+    }
+
+    @Test
+    public void doesNotTakeFilesNextToASharedCacheForShared() {
+        File sibling = new File(this.shared.getPath() + "-other", "node-v6.9.1-linux-x64.tar.gz");
+
+        assertFalse(this.resolver.isShared(sibling));
+    }
+
+    private static File write(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), "archive".getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.eirslett.maven.plugins.frontend.lib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ToolchainStoreTest {
+
+    private static final byte[] ARCHIVE = "archive".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private File archive;
+
+    private File storeDirectory;
+
+    private ToolchainStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        // Hard links and read-only files are only made where there are POSIX permissions
+        assumeFalse(Platform.guess().isWindows());
+        this.archive = this.temporaryFolder.newFile("node.tar.gz");
+        Files.write(this.archive.toPath(), ARCHIVE);
+        this.storeDirectory = this.temporaryFolder.newFolder("store");
+        this.store = new ToolchainStore(this.storeDirectory, 30);
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void copiesTheFilesThatTheInstallerChangesAfterwards() throws Exception {
+        File destination = this.temporaryFolder.newFolder("install");
+
+        this.store.install(this.archive, "node", destination, EXTRACTION, "node");
+
+        File entry = entry("node");
+        assertEquals(fileKey(new File(entry, "lib/npm.js")), fileKey(new File(destination, "lib/npm.js")));
+        File binary = new File(destination, "node");
+        assertNotEquals(fileKey(new File(entry, "node")), fileKey(binary));
+
+        binary.setExecutable(true, false);
+        assertFalse(new File(entry, "node").canExecute());
+    }
+
+    @Test(timeout = 10000)
+    public void linksUnderTheLockOfTheEntry() throws Exception {
+        final File destination = this.temporaryFolder.newFolder("install");
+        // What the garbage collection of another build holds while it deletes the entry
+        CacheEntryLock lock = CacheEntryLock.acquire(entry("node"));
+        Future<Void> install;
+        try {
+            install = this.executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    ToolchainStoreTest.this.store.install(ToolchainStoreTest.this.archive, "node", destination,
+                        EXTRACTION);
+                    return null;
+                }
+            });
+            Thread.sleep(300);
+            assertFalse(install.isDone());
+            assertFalse(new File(destination, "node").exists());
+        } finally {
+            lock.close();
+        }
+
+        install.get(5, TimeUnit.SECONDS);
+        assertEquals("node", new String(Files.readAllBytes(new File(destination, "node").toPath()),
+            StandardCharsets.UTF_8));
+    }
+
+    private File entry(String layout) {
+        // Unstamped archives are named after their SHA-256
+        return new File(this.storeDirectory, DigestUtils.sha256Hex(ARCHIVE).substring(0, 32) + "-" + layout);
+    }
+
+    private static Object fileKey(File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    }
+
+    private static final ToolchainStore.Extraction EXTRACTION = new ToolchainStore.Extraction() {
+        @Override
+        public void extractInto(File directory) {
+            try {
+                new File(directory, "lib").mkdirs();
+                Files.write(new File(directory, "node").toPath(), "node".getBytes(StandardCharsets.UTF_8));
+                Files.write(new File(directory, "lib/npm.js").toPath(), "npm".getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+}